@@ -0,0 +1,43 @@
+#!/bin/sh
+# Turns the Spring Boot fat jar into a CDS-friendly layout and records an AppCDS archive.
+#
+#   scripts/build-cds.sh <fat-jar> <out-dir> [train=true|false]
+#
+# Output: <out-dir>/app.jar (application classes, Class-Path manifest), <out-dir>/lib/*.jar
+# and, when training, <out-dir>/app.jsa. CDS cannot archive classes from nested jars or
+# class directories, hence the unpacking. Run the result with
+#
+#   java -XX:SharedArchiveFile=app.jsa -Dspring.aot.enabled=true -jar app.jar
+#
+# The archive is only valid for the JVM that wrote it; the Dockerfile re-runs the
+# training step with the runtime image's JVM.
+set -eu
+
+FAT_JAR=$(cd "$(dirname "$1")" && pwd)/$(basename "$1")
+OUT=$2
+TRAIN=${3:-true}
+
+rm -rf "$OUT"
+mkdir -p "$OUT/lib" "$OUT/unpacked"
+(cd "$OUT/unpacked" && jar xf "$FAT_JAR")
+
+mv "$OUT"/unpacked/BOOT-INF/lib/*.jar "$OUT/lib/"
+
+# Keep the launcher's classpath order (BOOT-INF/classpath.idx lists '- "BOOT-INF/lib/x.jar"')
+START_CLASS=$(sed -n 's/^Start-Class: *//p' "$OUT/unpacked/META-INF/MANIFEST.MF" | tr -d '\r')
+CLASS_PATH=$(sed -n 's|^- "BOOT-INF/lib/\(.*\)"$|lib/\1|p' "$OUT/unpacked/BOOT-INF/classpath.idx" | tr '\n' ' ')
+{
+    echo "Main-Class: $START_CLASS"
+    # Manifest lines are limited to 72 bytes; continuation lines start with a space
+    echo "Class-Path: $CLASS_PATH" | fold -w 70 | sed '2,$s/^/ /'
+} > "$OUT/MANIFEST.MF"
+
+jar cfm "$OUT/app.jar" "$OUT/MANIFEST.MF" -C "$OUT/unpacked/BOOT-INF/classes" .
+rm -rf "$OUT/unpacked" "$OUT/MANIFEST.MF"
+
+if [ "$TRAIN" = "true" ]; then
+    # spring.context.exit=onRefresh: create every bean, then exit before the web server starts
+    (cd "$OUT" && java -XX:ArchiveClassesAtExit=app.jsa -Dspring.aot.enabled=true \
+        -Dspring.context.exit=onRefresh -Dvoidweaver.history.dir="$OUT/training-data" -jar app.jar)
+    rm -rf "$OUT/training-data"
+fi
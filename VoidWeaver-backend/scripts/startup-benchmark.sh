@@ -0,0 +1,84 @@
+#!/usr/bin/env bash
+# Cold start comparison: plain fat jar vs Spring AOT + AppCDS vs GraalVM native image.
+#
+#   mvn -Paot-cds clean package -DskipTests      # target/voidweaver-1.0.0.jar + target/cds/
+#   mvn -Pnative native:compile -DskipTests      # target/voidweaver (optional, needs GraalVM)
+#   scripts/startup-benchmark.sh [runs=5] [port=18080]
+#
+# For each available variant, per run: time from exec until /actuator/health/readiness
+# answers UP (after the warm-up), latency of the first GET /api/history and the first
+# POST /api/generate (rejected by validation, so no upstream is needed), and resident
+# memory afterwards. Medians are printed.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+RUNS=${1:-5}
+PORT=${2:-18080}
+BASE="http://localhost:$PORT"
+DATA_DIR=$(mktemp -d)
+trap 'rm -rf "$DATA_DIR"' EXIT
+
+now_ms() { date +%s%3N; }
+
+median() { sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }'; }
+
+launch() {
+    local variant=$1 run_dir=$2
+    local args=(--server.port="$PORT" --voidweaver.history.dir="$run_dir")
+    case $variant in
+        jar) java -jar target/voidweaver-1.0.0.jar "${args[@]}" ;;
+        aot-cds) cd target/cds && java -XX:SharedArchiveFile=app.jsa -Dspring.aot.enabled=true -jar app.jar "${args[@]}" ;;
+        native) target/voidweaver "${args[@]}" ;;
+    esac
+}
+
+run_once() {
+    local variant=$1 run_dir start pid server ready history generate rss
+    run_dir=$(mktemp -d -p "$DATA_DIR")
+    start=$(now_ms)
+    launch "$variant" "$run_dir" > "$DATA_DIR/$variant.log" 2>&1 &
+    pid=$!
+
+    until curl -sf "$BASE/actuator/health/readiness" > /dev/null 2>&1; do
+        if ! kill -0 "$pid" 2> /dev/null; then
+            echo "$variant exited during startup:" >&2
+            cat "$DATA_DIR/$variant.log" >&2
+            exit 1
+        fi
+        sleep 0.02
+    done
+    ready=$(( $(now_ms) - start ))
+
+    history=$(curl -s -o /dev/null -w '%{time_total}' "$BASE/api/history?limit=1")
+    generate=$(curl -s -o /dev/null -w '%{time_total}' -X POST "$BASE/api/generate" \
+        -H 'Content-Type: application/json' -d '{"prompt":""}')
+
+    # $! is the background subshell; find the server itself by its unique data directory
+    server=$(pgrep -f -- "--voidweaver.history.dir=$run_dir")
+    rss=$(awk '/VmRSS/ { print int($2 / 1024) }' "/proc/$server/status")
+
+    kill "$server"
+    wait "$pid" 2> /dev/null || true
+
+    awk -v r="$ready" -v h="$history" -v g="$generate" -v m="$rss" \
+        'BEGIN { printf "%d %d %d %d\n", r, h * 1000, g * 1000, m }'
+}
+
+variants=(jar)
+[ -f target/cds/app.jsa ] && variants+=(aot-cds)
+[ -x target/voidweaver ] && variants+=(native)
+
+printf '%-8s %12s %16s %18s %8s\n' variant "ready (ms)" "1st history (ms)" "1st generate (ms)" "RSS MB"
+for variant in "${variants[@]}"; do
+    launch_results=()
+    for ((i = 0; i < RUNS; i++)); do
+        launch_results+=("$(run_once "$variant")")
+    done
+    printf '%-8s' "$variant"
+    for column in 1 2 3 4; do
+        value=$(printf '%s\n' "${launch_results[@]}" | awk -v c=$column '{ print $c }' | median)
+        width=$([ $column -eq 1 ] && echo 13 || ([ $column -eq 4 ] && echo 9 || echo 17))
+        printf "%${width}s" "$value"
+    done
+    echo
+done
@@ -1,5 +1,6 @@
 package com.codex.voidweaver.config;
 
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,7 +15,14 @@ public class HttpClientConfig {
 
     @Bean
     public OkHttpClient okHttpClient() {
+        // Hedged calls go through enqueue(); the default dispatcher allows only 5 per host
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(64);
+        dispatcher.setMaxRequestsPerHost(32);
+
+        // Outer limits only: each upstream call also gets its own deadline from TimeoutPolicy
         return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
                 .connectTimeout(Duration.ofSeconds(30))
                 .readTimeout(Duration.ofSeconds(300)) // Deep Thinking需要更长时间
                 .writeTimeout(Duration.ofSeconds(60))
@@ -0,0 +1,33 @@
+package com.codex.voidweaver.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for CPU-bound image work (decode, resize, encode)
+ */
+@Configuration
+public class ImageProcessingConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolExecutor imageProcessingExecutor(
+            @Value("${voidweaver.imaging.threads:0}") int threads,
+            @Value("${voidweaver.imaging.queue-capacity:64}") int queueCapacity) {
+        // Decoding a 1216px PNG holds several MB of pixels; bound both the workers and the
+        // backlog so a burst of gallery requests cannot exhaust the heap
+        int workers = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "image-processing-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
@@ -0,0 +1,32 @@
+package com.codex.voidweaver.config;
+
+import com.codex.voidweaver.model.json.DtoSerializationModule;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.NativeDetector;
+
+/**
+ * Jackson modules picked up by Spring Boot's ObjectMapper auto-configuration
+ *
+ * Pretty-printing is off by default; run with the "debug" profile to turn it back on.
+ */
+@Configuration
+public class JacksonConfig {
+
+    /**
+     * Replaces reflective getter calls with generated lambdas for the remaining bean (de)serializers.
+     * A native image cannot define classes at runtime, so there it falls back to plain reflection.
+     */
+    @Bean
+    public Module blackbirdModule() {
+        return NativeDetector.inNativeImage() ? new SimpleModule("blackbird-disabled") : new BlackbirdModule();
+    }
+
+    @Bean
+    public Module dtoSerializationModule() {
+        return new DtoSerializationModule();
+    }
+}
@@ -0,0 +1,61 @@
+package com.codex.voidweaver.config;
+
+import com.codex.voidweaver.model.dto.AnalyzeBatchRequest;
+import com.codex.voidweaver.model.dto.AnalyzeRequest;
+import com.codex.voidweaver.model.dto.AnalyzeResponse;
+import com.codex.voidweaver.model.dto.BatchImageDto;
+import com.codex.voidweaver.model.dto.BatchResultDto;
+import com.codex.voidweaver.model.dto.ErrorResponse;
+import com.codex.voidweaver.model.dto.GenerateRequest;
+import com.codex.voidweaver.model.dto.GenerateResponse;
+import com.codex.voidweaver.model.dto.HistoryEntryDto;
+import com.codex.voidweaver.model.dto.HistoryPageDto;
+import com.codex.voidweaver.model.dto.JobDto;
+import com.codex.voidweaver.model.dto.KeyUsageDto;
+import com.codex.voidweaver.model.dto.ModuleDto;
+import com.codex.voidweaver.model.dto.RefinePatchDto;
+import com.codex.voidweaver.model.dto.RefineRequest;
+import com.codex.voidweaver.model.dto.RefineResponse;
+import com.codex.voidweaver.model.dto.SketchCritiqueDto;
+import com.codex.voidweaver.model.dto.TagDto;
+import com.codex.voidweaver.model.dto.TagOperationDto;
+import com.codex.voidweaver.model.enums.BatchMode;
+import com.codex.voidweaver.model.enums.EngineType;
+import com.codex.voidweaver.model.enums.JobStatus;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+/**
+ * Reachability metadata for the AOT / native image build
+ *
+ * Controller bodies are registered by Spring AOT automatically; the DTOs are listed
+ * anyway because GeminiService and the history index also (de)serialize them
+ * through the ObjectMapper directly (module JSON, patch operations, SSE events).
+ */
+@Configuration
+@ImportRuntimeHints(NativeHintsConfig.ResourceHints.class)
+@RegisterReflectionForBinding({
+        AnalyzeRequest.class, AnalyzeResponse.class, ErrorResponse.class,
+        AnalyzeBatchRequest.class, BatchImageDto.class, BatchResultDto.class,
+        GenerateRequest.class, GenerateResponse.class,
+        HistoryEntryDto.class, HistoryPageDto.class, KeyUsageDto.class,
+        ModuleDto.class, TagDto.class,
+        RefineRequest.class, RefineResponse.class, RefinePatchDto.class, TagOperationDto.class,
+        SketchCritiqueDto.class, JobDto.class,
+        EngineType.class, BatchMode.class, JobStatus.class })
+public class NativeHintsConfig {
+
+    static class ResourceHints implements RuntimeHintsRegistrar {
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            // OkHttp loads its public suffix list lazily for cookie / host checks
+            hints.resources().registerPattern("okhttp3/internal/publicsuffix/publicsuffixes.gz");
+            // Bundled frontend, scanned by StaticAssetManifest at startup
+            hints.resources().registerPattern("static/**");
+        }
+    }
+}
@@ -1,40 +1,25 @@
 package com.codex.voidweaver.config;
 
+import com.codex.voidweaver.web.StaticAssetFilter;
+import com.codex.voidweaver.web.StaticAssetManifest;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
-import org.springframework.lang.NonNull;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
-import org.springframework.web.servlet.resource.PathResourceResolver;
-
-import java.io.IOException;
+import org.springframework.core.Ordered;
 
+/**
+ * Serves the bundled SPA from memory; non-API paths without a matching file get index.html
+ */
 @Configuration
-public class SpaRedirectFilterConfig implements WebMvcConfigurer {
-
-    @Override
-    public void addResourceHandlers(@NonNull ResourceHandlerRegistry registry) {
-        registry.addResourceHandler("/**")
-                .addResourceLocations("classpath:/static/")
-                .resourceChain(true)
-                .addResolver(new PathResourceResolver() {
-                    @Override
-                    protected Resource getResource(@NonNull String resourcePath, @NonNull Resource location) throws IOException {
-                        Resource requestedResource = location.createRelative(resourcePath);
-
-                        if (requestedResource.exists() && requestedResource.isReadable()) {
-                            return requestedResource;
-                        }
-
-                        // Do not redirect API requests to index.html
-                        if (resourcePath.startsWith("api")) {
-                            return null;
-                        }
+public class SpaRedirectFilterConfig {
 
-                        // For SPA routes, return index.html
-                        return new ClassPathResource("/static/index.html");
-                    }
-                });
+    @Bean
+    public FilterRegistrationBean<StaticAssetFilter> staticAssetFilter(StaticAssetManifest manifest) {
+        FilterRegistrationBean<StaticAssetFilter> registration = new FilterRegistrationBean<>(
+                new StaticAssetFilter(manifest));
+        registration.addUrlPatterns("/*");
+        // After CORS and the other framework filters, but before the DispatcherServlet
+        registration.setOrder(Ordered.LOWEST_PRECEDENCE - 10);
+        return registration;
     }
 }
@@ -0,0 +1,44 @@
+package com.codex.voidweaver.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Upstream AI API endpoints
+ * Overridable so the backend can be pointed at a local fake upstream for load tests
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "voidweaver.upstream")
+public class UpstreamProperties {
+
+    /** Gemini API base URL (without /v1beta) */
+    private String geminiBaseUrl = "https://generativelanguage.googleapis.com";
+
+    /** Model used for analyze / refine / critique / tag suggestion */
+    private String geminiTextModel = "gemini-3-flash-preview";
+
+    /** NovelAI image API base URL */
+    private String novelaiBaseUrl = "https://image.novelai.net";
+
+    /**
+     * e.g. geminiModelUrl("gemini-3-flash-preview", "generateContent")
+     */
+    public String geminiModelUrl(String model, String method) {
+        return geminiBaseUrl + "/v1beta/models/" + model + ":" + method;
+    }
+
+    /** Gemini context cache collection; entries are addressed as {base}/v1beta/{name} */
+    public String geminiCachedContentsUrl() {
+        return geminiBaseUrl + "/v1beta/cachedContents";
+    }
+
+    public String geminiResourceUrl(String name) {
+        return geminiBaseUrl + "/v1beta/" + name;
+    }
+
+    public String novelaiGenerateUrl() {
+        return novelaiBaseUrl + "/ai/generate-image";
+    }
+}
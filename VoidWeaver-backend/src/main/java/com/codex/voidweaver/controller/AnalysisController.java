@@ -1,13 +1,24 @@
 package com.codex.voidweaver.controller;
 
+import com.codex.voidweaver.model.dto.AnalyzeBatchRequest;
 import com.codex.voidweaver.model.dto.AnalyzeRequest;
 import com.codex.voidweaver.model.dto.AnalyzeResponse;
+import com.codex.voidweaver.scheduling.Lane;
+import com.codex.voidweaver.scheduling.RequestScheduler;
+import com.codex.voidweaver.service.BatchAnalysisService;
 import com.codex.voidweaver.service.GeminiService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 图片分析控制器
@@ -20,16 +31,70 @@ import org.springframework.web.bind.annotation.*;
 public class AnalysisController {
 
     private final GeminiService geminiService;
+    private final RequestScheduler requestScheduler;
+    private final BatchAnalysisService batchAnalysisService;
 
     /**
      * 分析图片并提取8个模块
      * POST /api/analyze
      */
     @PostMapping("/analyze")
-    public ResponseEntity<AnalyzeResponse> analyzeImage(@Valid @RequestBody AnalyzeRequest request) {
+    public CompletableFuture<ResponseEntity<AnalyzeResponse>> analyzeImage(@Valid @RequestBody AnalyzeRequest request,
+            HttpServletRequest httpRequest) {
         log.info("Received analyze request");
-        AnalyzeResponse response = geminiService.analyzeImage(request);
-        log.info("Analysis completed successfully");
-        return ResponseEntity.ok(response);
+        return requestScheduler.submit(Lane.INTERACTIVE, tenant(request, httpRequest), RequestScheduler.COST_TEXT,
+                () -> {
+                    AnalyzeResponse response = geminiService.analyzeImage(request);
+                    log.info("Analysis completed successfully");
+                    return ResponseEntity.ok(response);
+                });
+    }
+
+    /**
+     * 分析图片 (流式) - 每个模块完成即推送
+     * POST /api/analyze/stream
+     */
+    @PostMapping("/analyze/stream")
+    public SseEmitter analyzeImageStream(@Valid @RequestBody AnalyzeRequest request,
+            HttpServletRequest httpRequest) {
+        log.info("Received streaming analyze request");
+        SseEmitter emitter = new SseEmitter(120000L);
+
+        // Runs on the interactive lane so queued image generations never delay it
+        requestScheduler.execute(Lane.INTERACTIVE, tenant(request, httpRequest), RequestScheduler.COST_TEXT,
+                () -> geminiService.analyzeImageStream(request, emitter));
+
+        return emitter;
+    }
+
+    /**
+     * 批量分析 - 每张图片完成即输出一行 NDJSON
+     * POST /api/analyze/batch
+     */
+    @PostMapping("/analyze/batch")
+    public WebAsyncTask<Void> analyzeBatch(@Valid @RequestBody AnalyzeBatchRequest request,
+            HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+        String batchId = batchAnalysisService.begin(request);
+        log.info("Received batch analyze request {} with {} images", batchId, request.getImages().size());
+        String tenant = RequestScheduler.tenantOf(request.getGeminiApiKey(), httpRequest);
+
+        httpResponse.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        httpResponse.setHeader("X-Batch-Id", batchId);
+
+        // Streamed from our own async task: a StreamingResponseBody would be cut off by the global
+        // async request timeout, which is sized for single requests rather than whole batches
+        WebAsyncTask<Void> task = new WebAsyncTask<>(batchAnalysisService.getTimeoutMs(), () -> {
+            batchAnalysisService.run(request, batchId, tenant, httpResponse.getOutputStream());
+            return null;
+        });
+        task.onTimeout(() -> {
+            log.warn("Batch {} hit voidweaver.batch.timeout-ms; resubmit the batchId to resume", batchId);
+            return null;
+        });
+        return task;
+    }
+
+    private static String tenant(AnalyzeRequest request, HttpServletRequest httpRequest) {
+        return RequestScheduler.tenantOf(request.getGeminiApiKey(), httpRequest);
     }
 }
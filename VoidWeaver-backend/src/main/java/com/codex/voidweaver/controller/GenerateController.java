@@ -1,14 +1,22 @@
 package com.codex.voidweaver.controller;
 
+import com.codex.voidweaver.jobs.SseEmitterSink;
 import com.codex.voidweaver.model.dto.GenerateRequest;
 import com.codex.voidweaver.model.dto.GenerateResponse;
+import com.codex.voidweaver.model.enums.EngineType;
+import com.codex.voidweaver.scheduling.Lane;
+import com.codex.voidweaver.scheduling.RequestScheduler;
 import com.codex.voidweaver.service.ImageService;
+import com.codex.voidweaver.upstream.CancellationToken;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 图片生成控制器
  * Handles image generation with NovelAI or Google Imagen
@@ -20,17 +28,21 @@ import org.springframework.web.bind.annotation.*;
 public class GenerateController {
 
     private final ImageService imageService;
+    private final RequestScheduler requestScheduler;
 
     /**
      * 生成图片
      * POST /api/generate
      */
     @PostMapping("/generate")
-    public ResponseEntity<GenerateResponse> generateImage(@Valid @RequestBody GenerateRequest request) {
+    public CompletableFuture<ResponseEntity<GenerateResponse>> generateImage(@Valid @RequestBody GenerateRequest request,
+            HttpServletRequest httpRequest) {
         log.info("Received generate request for engine: {}", request.getEngine());
-        GenerateResponse response = imageService.generateImage(request);
-        log.info("Image generation process initiated or completed");
-        return ResponseEntity.ok(response);
+        return requestScheduler.submit(Lane.BULK, tenant(request, httpRequest), cost(request), () -> {
+            GenerateResponse response = imageService.generateImage(request);
+            log.info("Image generation process initiated or completed");
+            return ResponseEntity.ok(response);
+        });
     }
 
     /**
@@ -39,18 +51,39 @@ public class GenerateController {
      */
     @PostMapping("/generate/stream")
     public org.springframework.web.servlet.mvc.method.annotation.SseEmitter generateImageStream(
-            @Valid @RequestBody GenerateRequest request) {
+            @Valid @RequestBody GenerateRequest request, HttpServletRequest httpRequest) {
         log.info("Received streaming generate request for engine: {}", request.getEngine());
 
         // Time out 5 minutes for long generation
         org.springframework.web.servlet.mvc.method.annotation.SseEmitter emitter = new org.springframework.web.servlet.mvc.method.annotation.SseEmitter(
                 300000L);
 
-        // Execute in a separate thread to not block the servlet thread
-        java.util.concurrent.CompletableFuture.runAsync(() -> {
-            imageService.generateImageStream(request, emitter);
-        });
+        // Stop upstream work as soon as nobody is listening any more; registered before
+        // queueing so a client that leaves while waiting in the lane is noticed too
+        CancellationToken token = new CancellationToken();
+        emitter.onCompletion(token::cancel);
+        emitter.onTimeout(token::cancel);
+        emitter.onError(e -> token.cancel());
+
+        // Execute on the bulk lane, fair-queued against other users' generations
+        requestScheduler.execute(Lane.BULK, tenant(request, httpRequest), cost(request),
+                () -> imageService.generateImageStream(request, new SseEmitterSink(emitter), token));
 
         return emitter;
     }
+
+    static String tenant(GenerateRequest request, HttpServletRequest httpRequest) {
+        String apiKey = request.getEngine() == EngineType.NOVELAI ? request.getNovelaiApiKey()
+                : request.getGoogleCredentials();
+        return RequestScheduler.tenantOf(apiKey, httpRequest);
+    }
+
+    static int cost(GenerateRequest request) {
+        if (!Boolean.TRUE.equals(request.getDeepThinking())) {
+            return RequestScheduler.COST_IMAGE;
+        }
+        // Every extra sketch candidate is another image render running alongside
+        int extraSketches = request.getSketchCount() != null ? request.getSketchCount() - 1 : 0;
+        return RequestScheduler.COST_DEEP_THINKING + extraSketches * RequestScheduler.COST_IMAGE;
+    }
 }
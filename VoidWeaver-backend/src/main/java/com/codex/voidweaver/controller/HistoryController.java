@@ -0,0 +1,121 @@
+package com.codex.voidweaver.controller;
+
+import com.codex.voidweaver.exception.ApiException;
+import com.codex.voidweaver.history.HistoryService;
+import com.codex.voidweaver.history.ImageStore;
+import com.codex.voidweaver.history.ThumbnailService;
+import com.codex.voidweaver.model.dto.HistoryPageDto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生成历史控制器
+ * Paged history metadata, content-addressed image download and thumbnails
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/history")
+@RequiredArgsConstructor
+public class HistoryController {
+
+    private final HistoryService historyService;
+    private final ImageStore imageStore;
+    private final ThumbnailService thumbnailService;
+
+    /**
+     * 分页查询历史 (最新在前)
+     * GET /api/history?before={cursor}&limit=50
+     */
+    @GetMapping
+    public ResponseEntity<HistoryPageDto> listHistory(@RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(historyService.listHistory(before, limit));
+    }
+
+    /**
+     * 获取历史图片 / 缩略图
+     * GET /api/history/images/{hash}?size=256
+     *
+     * Without size the original PNG is returned. With size a cached thumbnail is
+     * returned, as JPEG unless the Accept header prefers PNG.
+     */
+    @GetMapping("/images/{hash}")
+    public ResponseEntity<Resource> getImage(@PathVariable String hash,
+            @RequestParam(required = false) Integer size,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            WebRequest webRequest) {
+        if (size == null) {
+            // Content-addressed: the bytes behind a hash never change
+            return imageStore.get(hash)
+                    .map(path -> imageResponse(path, MediaType.IMAGE_PNG, hash))
+                    .orElseThrow(() -> new ApiException("Image not found: " + hash, "NOT_FOUND"));
+        }
+        if (size <= 0) {
+            throw new ApiException("size must be positive", "INVALID_REQUEST");
+        }
+
+        int resolved = thumbnailService.resolveSize(size);
+        ThumbnailService.Format format = negotiateFormat(accept);
+        String eTag = hash + "-" + resolved + "." + format.getExtension();
+        // Answer revalidations before touching the disk or the render queue
+        if (ImageStore.isValidHash(hash) && webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+
+        return thumbnailService.getThumbnail(hash, resolved, format)
+                .map(path -> imageResponse(path, format.getMediaType(), eTag))
+                .orElseThrow(() -> new ApiException("Image not found: " + hash, "NOT_FOUND"));
+    }
+
+    private static ResponseEntity<Resource> imageResponse(Path path, MediaType mediaType, String eTag) {
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                .eTag(eTag)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(new FileSystemResource(path));
+    }
+
+    /**
+     * JPEG unless the client rates PNG strictly higher (or does not accept JPEG at all).
+     * Browsers send a wildcard Accept for img tags, which resolves to JPEG.
+     */
+    private static ThumbnailService.Format negotiateFormat(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return ThumbnailService.Format.JPEG;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return ThumbnailService.Format.JPEG;
+        }
+        double jpeg = quality(accepted, MediaType.IMAGE_JPEG);
+        double png = quality(accepted, MediaType.IMAGE_PNG);
+        return png > jpeg ? ThumbnailService.Format.PNG : ThumbnailService.Format.JPEG;
+    }
+
+    /** q-value of the most specific Accept entry matching the type, 0 if none */
+    private static double quality(List<MediaType> accepted, MediaType type) {
+        MediaType best = null;
+        for (MediaType candidate : accepted) {
+            if (candidate.includes(type) && (best == null || candidate.isMoreSpecific(best))) {
+                best = candidate;
+            }
+        }
+        return best != null ? best.getQualityValue() : 0;
+    }
+}
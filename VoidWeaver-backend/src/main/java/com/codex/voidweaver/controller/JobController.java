@@ -0,0 +1,95 @@
+package com.codex.voidweaver.controller;
+
+import com.codex.voidweaver.exception.ApiException;
+import com.codex.voidweaver.jobs.GenerationJob;
+import com.codex.voidweaver.jobs.JobRegistry;
+import com.codex.voidweaver.model.dto.GenerateRequest;
+import com.codex.voidweaver.model.dto.JobDto;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.net.URI;
+
+/**
+ * 异步生成任务控制器
+ * Detached generations with resumable SSE event streams
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api")
+@RequiredArgsConstructor
+public class JobController {
+
+    private final JobRegistry jobRegistry;
+
+    /**
+     * 创建生成任务
+     * POST /api/jobs
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<JobDto> createJob(@Valid @RequestBody GenerateRequest request,
+            HttpServletRequest httpRequest) {
+        log.info("Received job request for engine: {}", request.getEngine());
+        GenerationJob job = jobRegistry.create(request, GenerateController.tenant(request, httpRequest),
+                GenerateController.cost(request));
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + job.getId()))
+                .body(toDto(job));
+    }
+
+    /**
+     * 查询任务状态
+     * GET /api/jobs/{id}
+     */
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<JobDto> getJob(@PathVariable String id) {
+        return ResponseEntity.ok(toDto(jobRegistry.find(id)));
+    }
+
+    /**
+     * 订阅任务事件 (断线后用 Last-Event-ID 续传)
+     * GET /api/jobs/{id}/events
+     *
+     * EventSource sends Last-Event-ID by itself on reconnect; clients that cannot set
+     * headers pass it as the lastEventId query parameter instead.
+     */
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJobEvents(@PathVariable String id,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        String lastEventId = lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam;
+        return jobRegistry.attach(id, parseEventId(lastEventId));
+    }
+
+    /**
+     * 取消任务
+     * DELETE /api/jobs/{id}
+     */
+    @DeleteMapping("/jobs/{id}")
+    public ResponseEntity<JobDto> cancelJob(@PathVariable String id) {
+        return ResponseEntity.ok(toDto(jobRegistry.cancel(id)));
+    }
+
+    private static Long parseEventId(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiException("Invalid Last-Event-ID: " + value, "INVALID_REQUEST");
+        }
+    }
+
+    private static JobDto toDto(GenerationJob job) {
+        JobDto dto = job.toDto();
+        dto.setEventsUrl("/api/jobs/" + job.getId() + "/events");
+        return dto;
+    }
+}
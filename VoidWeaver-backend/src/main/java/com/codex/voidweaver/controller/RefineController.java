@@ -2,12 +2,19 @@ package com.codex.voidweaver.controller;
 
 import com.codex.voidweaver.model.dto.RefineRequest;
 import com.codex.voidweaver.model.dto.RefineResponse;
+import com.codex.voidweaver.scheduling.Lane;
+import com.codex.voidweaver.scheduling.RequestScheduler;
 import com.codex.voidweaver.service.GeminiService;
+import com.codex.voidweaver.upstream.PayloadLogger;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 模块精炼控制器
@@ -20,16 +27,56 @@ import org.springframework.web.bind.annotation.*;
 public class RefineController {
 
     private final GeminiService geminiService;
+    private final RequestScheduler requestScheduler;
+    private final PayloadLogger payloadLogger;
 
     /**
      * 精炼模块
      * POST /api/refine
      */
     @PostMapping("/refine")
-    public ResponseEntity<RefineResponse> refineModules(@Valid @RequestBody RefineRequest request) {
-        log.info("Received refine request with instruction: {}", request.getInstruction());
-        RefineResponse response = geminiService.refineModules(request);
-        log.info("Module refinement completed successfully");
-        return ResponseEntity.ok(response);
+    public CompletableFuture<ResponseEntity<RefineResponse>> refineModules(@Valid @RequestBody RefineRequest request,
+            HttpServletRequest httpRequest) {
+        // Metadata only at INFO; the prompt text itself goes through the payload logger
+        log.info("Received refine request: {} modules, instruction length {}", moduleCount(request),
+                instructionLength(request));
+        payloadLogger.debug(log, "Refine request instruction", request.getInstruction());
+        return requestScheduler.submit(Lane.INTERACTIVE, tenant(request, httpRequest), RequestScheduler.COST_TEXT,
+                () -> {
+                    RefineResponse response = geminiService.refineModules(request);
+                    log.info("Module refinement completed successfully");
+                    return ResponseEntity.ok(response);
+                });
+    }
+
+    /**
+     * 精炼模块 (流式) - 每个模块完成即推送
+     * POST /api/refine/stream
+     */
+    @PostMapping("/refine/stream")
+    public SseEmitter refineModulesStream(@Valid @RequestBody RefineRequest request,
+            HttpServletRequest httpRequest) {
+        log.info("Received streaming refine request: {} modules, instruction length {}", moduleCount(request),
+                instructionLength(request));
+        payloadLogger.debug(log, "Refine request instruction", request.getInstruction());
+        SseEmitter emitter = new SseEmitter(120000L);
+
+        // Runs on the interactive lane so queued image generations never delay it
+        requestScheduler.execute(Lane.INTERACTIVE, tenant(request, httpRequest), RequestScheduler.COST_TEXT,
+                () -> geminiService.refineModulesStream(request, emitter));
+
+        return emitter;
+    }
+
+    private static int moduleCount(RefineRequest request) {
+        return request.getModules() != null ? request.getModules().size() : 0;
+    }
+
+    private static int instructionLength(RefineRequest request) {
+        return request.getInstruction() != null ? request.getInstruction().length() : 0;
+    }
+
+    private static String tenant(RefineRequest request, HttpServletRequest httpRequest) {
+        return RequestScheduler.tenantOf(request.getGeminiApiKey(), httpRequest);
     }
 }
@@ -36,8 +36,17 @@ public class GlobalExceptionHandler {
             status = HttpStatus.UNAUTHORIZED;
         } else if ("INVALID_REQUEST".equals(e.getCode())) {
             status = HttpStatus.BAD_REQUEST;
+        } else if ("NOT_FOUND".equals(e.getCode())) {
+            status = HttpStatus.NOT_FOUND;
+        } else if ("BATCH_IN_PROGRESS".equals(e.getCode())) {
+            status = HttpStatus.CONFLICT;
         } else if ("RATE_LIMITED".equals(e.getCode())) {
             status = HttpStatus.TOO_MANY_REQUESTS;
+        } else if ("UPSTREAM_UNAVAILABLE".equals(e.getCode()) || "UPSTREAM_BUSY".equals(e.getCode())
+                || "SERVER_BUSY".equals(e.getCode())) {
+            status = HttpStatus.SERVICE_UNAVAILABLE;
+        } else if ("UPSTREAM_TIMEOUT".equals(e.getCode())) {
+            status = HttpStatus.GATEWAY_TIMEOUT;
         }
 
         return new ResponseEntity<>(response, status);
@@ -0,0 +1,158 @@
+package com.codex.voidweaver.history;
+
+import com.codex.voidweaver.imaging.ImageDecoding;
+import com.codex.voidweaver.imaging.MultiIndexHashTable;
+import com.codex.voidweaver.imaging.PerceptualHash;
+import com.codex.voidweaver.model.dto.AnalyzeResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reuse of analyses for near-duplicate images
+ *
+ * Every analyzed image is fingerprinted with a 64-bit dHash plus a coarse colour
+ * signature, and its AnalyzeResponse stored in H2. The fingerprints are held in a
+ * multi-index hash table, so an upload within max-distance bits of an earlier one (the
+ * same artwork resized, re-compressed or screenshotted) and with about the same colours
+ * is answered with the earlier modules instead of a Gemini call. A recoloured image has
+ * the same dHash but not the same colours, and gets its own analysis.
+ *
+ * Entries are tied to the analyze version (a digest of the instruction and model they
+ * were produced with) and expire after ttl-hours: a prompt or model change, or age,
+ * never serves modules in an old format. Stale rows are deleted when the cache opens.
+ */
+@Slf4j
+@Component
+public class AnalysisCache {
+
+    /** dHash and colour signature of one image */
+    public record Fingerprint(long dHash, long colorSignature) {
+    }
+
+    private final AnalysisCacheRepository repository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int maxColorDistance;
+    private final Duration ttl;
+    private final MultiIndexHashTable index;
+    private volatile String version;
+
+    public AnalysisCache(AnalysisCacheRepository repository, ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${voidweaver.analysis-cache.enabled:true}") boolean enabled,
+            @Value("${voidweaver.analysis-cache.max-distance:5}") int maxDistance,
+            @Value("${voidweaver.analysis-cache.max-color-distance:24}") int maxColorDistance,
+            @Value("${voidweaver.analysis-cache.ttl-hours:168}") long ttlHours) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxColorDistance = maxColorDistance;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.index = new MultiIndexHashTable(maxDistance);
+        Gauge.builder("voidweaver.analysis-cache.size", index, MultiIndexHashTable::size).register(meterRegistry);
+    }
+
+    /**
+     * Load the entries produced by this analyze instruction and model; until then the
+     * cache neither answers nor stores
+     */
+    public void open(String instruction, String model) {
+        if (!enabled) {
+            return;
+        }
+        String current = digest(instruction + "\n" + model);
+        long start = System.nanoTime();
+        Instant notBefore = Instant.now().minus(ttl);
+        int deleted = repository.deleteStale(current, notBefore);
+        repository.forEachHash(current, notBefore,
+                (id, dHash, colorSignature) -> index.add(dHash, colorSignature, id));
+        version = current;
+        log.info("Loaded {} analysis fingerprints (version {}, {} stale removed) in {} ms", index.size(), current,
+                deleted, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Fingerprint of a base64 image, or empty if caching is off or the image cannot be decoded
+     */
+    public Optional<Fingerprint> fingerprint(String imageData) {
+        if (!enabled || version == null || imageData == null) {
+            return Optional.empty();
+        }
+        try {
+            BufferedImage image = ImageDecoding.decodeBase64(imageData);
+            return Optional.of(new Fingerprint(PerceptualHash.dHash(image), PerceptualHash.colorSignature(image)));
+        } catch (Exception e) {
+            log.debug("Could not fingerprint image: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Analysis of the closest previously analyzed image with similar colours, if one is
+     * within range and has not expired
+     */
+    public Optional<AnalyzeResponse> lookup(Fingerprint fingerprint) {
+        long start = System.nanoTime();
+        long id = index.findNearest(fingerprint.dHash(),
+                colors -> PerceptualHash.colorDistance(colors, fingerprint.colorSignature()) <= maxColorDistance);
+        Optional<String> json = Optional.empty();
+        if (id >= 0) {
+            try {
+                json = repository.findResponse(id, Instant.now().minus(ttl));
+            } catch (Exception e) {
+                log.warn("Failed to load cached analysis {}: {}", id, e.getMessage());
+            }
+        }
+        Timer.builder("voidweaver.analysis-cache.lookup")
+                .tag("result", json.isPresent() ? "hit" : "miss")
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (json.isEmpty()) {
+            return Optional.empty();
+        }
+
+        try {
+            log.info("Reusing analysis {} for a near-duplicate image", id);
+            return Optional.of(objectMapper.readValue(json.get(), AnalyzeResponse.class));
+        } catch (Exception e) {
+            log.warn("Failed to load cached analysis {}: {}", id, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public void store(Fingerprint fingerprint, AnalyzeResponse response) {
+        try {
+            long id = repository.insert(fingerprint.dHash(), fingerprint.colorSignature(), version,
+                    objectMapper.writeValueAsString(response));
+            index.add(fingerprint.dHash(), fingerprint.colorSignature(), id);
+        } catch (Exception e) {
+            log.warn("Failed to store analysis fingerprint: {}", e.getMessage());
+        }
+    }
+
+    private static String digest(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.codex.voidweaver.history;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Stored analyses keyed by perceptual hash, colour signature and analyze version (H2)
+ */
+@Repository
+@RequiredArgsConstructor
+public class AnalysisCacheRepository {
+
+    /** Receives (id, dHash, colour signature) while the index is rebuilt */
+    @FunctionalInterface
+    public interface HashConsumer {
+        void accept(long id, long dHash, long colorSignature);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @return the generated id
+     */
+    public long insert(long dHash, long colorSignature, String version, String responseJson) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO analysis_cache (created_at, dhash, color_signature, version, response)"
+                            + " VALUES (?, ?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            statement.setTimestamp(1, Timestamp.from(Instant.now()));
+            statement.setLong(2, dHash);
+            statement.setLong(3, colorSignature);
+            statement.setString(4, version);
+            statement.setString(5, responseJson);
+            return statement;
+        }, keyHolder);
+        return Objects.requireNonNull(keyHolder.getKey()).longValue();
+    }
+
+    /** Empty if the entry is gone or was written before notBefore */
+    public Optional<String> findResponse(long id, Instant notBefore) {
+        return jdbcTemplate.query("SELECT response FROM analysis_cache WHERE id = ? AND created_at >= ?",
+                (rs, rowNum) -> rs.getString(1), id, Timestamp.from(notBefore)).stream().findFirst();
+    }
+
+    /** Streams the entries of one version written since notBefore, in insertion order */
+    public void forEachHash(String version, Instant notBefore, HashConsumer consumer) {
+        RowCallbackHandler handler = rs -> consumer.accept(rs.getLong(1), rs.getLong(2), rs.getLong(3));
+        jdbcTemplate.query("SELECT id, dhash, color_signature FROM analysis_cache"
+                + " WHERE version = ? AND created_at >= ? ORDER BY id", handler, version, Timestamp.from(notBefore));
+    }
+
+    /**
+     * Delete entries of other versions (or from before versions were recorded) and
+     * entries written before notBefore
+     *
+     * @return the number of rows deleted
+     */
+    public int deleteStale(String version, Instant notBefore) {
+        return jdbcTemplate.update("DELETE FROM analysis_cache WHERE version IS NULL OR version <> ? OR created_at < ?",
+                version, Timestamp.from(notBefore));
+    }
+}
@@ -0,0 +1,87 @@
+package com.codex.voidweaver.history;
+
+import com.codex.voidweaver.model.dto.HistoryEntryDto;
+import com.codex.voidweaver.model.enums.EngineType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Generation history index (H2)
+ * Pages with a keyset on the primary key, so listing cost does not grow with history size
+ */
+@Repository
+@RequiredArgsConstructor
+public class HistoryRepository {
+
+    private static final String COLUMNS = "id, created_at, engine, prompt, resolution, steps, scale, strength, "
+            + "seed, deep_thinking, img2img, image_hash, sketch_hash, image_size";
+
+    private static final RowMapper<HistoryEntryDto> ROW_MAPPER = (rs, rowNum) -> HistoryEntryDto.builder()
+            .id(rs.getLong("id"))
+            .createdAt(rs.getTimestamp("created_at").toInstant().toString())
+            .engine(EngineType.valueOf(rs.getString("engine")))
+            .prompt(rs.getString("prompt"))
+            .resolution(rs.getString("resolution"))
+            .steps(rs.getObject("steps", Integer.class))
+            .scale(rs.getObject("scale", Integer.class))
+            .strength(rs.getObject("strength", Double.class))
+            .seed(rs.getObject("seed", Long.class))
+            .deepThinking(rs.getBoolean("deep_thinking"))
+            .img2img(rs.getBoolean("img2img"))
+            .imageHash(rs.getString("image_hash"))
+            .sketchHash(rs.getString("sketch_hash"))
+            .imageSize(rs.getInt("image_size"))
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param cacheKey result cache key for seeded generations, else null
+     */
+    public void insert(HistoryEntryDto entry, String cacheKey) {
+        jdbcTemplate.update("INSERT INTO generation_history (created_at, engine, prompt, resolution, steps, scale, "
+                + "strength, seed, deep_thinking, img2img, image_hash, sketch_hash, image_size, cache_key) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                Timestamp.from(Instant.parse(entry.getCreatedAt())),
+                entry.getEngine().name(),
+                entry.getPrompt(),
+                entry.getResolution(),
+                entry.getSteps(),
+                entry.getScale(),
+                entry.getStrength(),
+                entry.getSeed(),
+                Boolean.TRUE.equals(entry.getDeepThinking()),
+                Boolean.TRUE.equals(entry.getImg2img()),
+                entry.getImageHash(),
+                entry.getSketchHash(),
+                entry.getImageSize(),
+                cacheKey);
+    }
+
+    /**
+     * Image of the newest generation recorded under this result cache key
+     */
+    public Optional<String> findImageHashByCacheKey(String cacheKey) {
+        return jdbcTemplate.query("SELECT image_hash FROM generation_history WHERE cache_key = ? "
+                + "ORDER BY id DESC LIMIT 1", (rs, rowNum) -> rs.getString(1), cacheKey).stream().findFirst();
+    }
+
+    /**
+     * Newest first; pass the last id of the previous page as beforeId (null for the first page)
+     */
+    public List<HistoryEntryDto> findPage(Long beforeId, int limit) {
+        if (beforeId == null) {
+            return jdbcTemplate.query("SELECT " + COLUMNS + " FROM generation_history ORDER BY id DESC LIMIT ?",
+                    ROW_MAPPER, limit);
+        }
+        return jdbcTemplate.query("SELECT " + COLUMNS
+                + " FROM generation_history WHERE id < ? ORDER BY id DESC LIMIT ?", ROW_MAPPER, beforeId, limit);
+    }
+}
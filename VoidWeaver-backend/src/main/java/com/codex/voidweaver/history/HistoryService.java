@@ -0,0 +1,129 @@
+package com.codex.voidweaver.history;
+
+import com.codex.voidweaver.model.dto.GenerateRequest;
+import com.codex.voidweaver.model.dto.GenerateResponse;
+import com.codex.voidweaver.model.dto.HistoryEntryDto;
+import com.codex.voidweaver.model.dto.HistoryPageDto;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生成历史服务
+ * Records generated images into the image store and index off the request thread
+ */
+@Slf4j
+@Service
+public class HistoryService {
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private final ImageStore imageStore;
+    private final HistoryRepository historyRepository;
+    private final ThumbnailService thumbnailService;
+    private final ResultCache resultCache;
+    private final boolean enabled;
+    private final ThreadPoolExecutor recorder;
+
+    public HistoryService(ImageStore imageStore, HistoryRepository historyRepository,
+            ThumbnailService thumbnailService, ResultCache resultCache,
+            @Value("${voidweaver.history.enabled:true}") boolean enabled,
+            @Value("${voidweaver.history.queue-capacity:256}") int queueCapacity) {
+        this.imageStore = imageStore;
+        this.historyRepository = historyRepository;
+        this.thumbnailService = thumbnailService;
+        this.resultCache = resultCache;
+        this.enabled = enabled;
+        // Single writer keeps disk and H2 contention off the hot path; when the queue is
+        // full we drop the record rather than slow down generation
+        this.recorder = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "history-recorder");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queue a finished generation for recording; returns immediately
+     */
+    public void recordAsync(GenerateRequest request, GenerateResponse response) {
+        recordAsync(request, response, null);
+    }
+
+    /**
+     * @param cacheKey result cache key of a seeded generation; the stored image answers later repeats
+     */
+    public void recordAsync(GenerateRequest request, GenerateResponse response, String cacheKey) {
+        if (!enabled || response == null || (response.getImageBytes() == null && response.getImageData() == null)) {
+            return;
+        }
+        Instant createdAt = Instant.now();
+        try {
+            recorder.execute(() -> record(request, response, cacheKey, createdAt));
+        } catch (RejectedExecutionException e) {
+            log.warn("History queue full, generation not recorded");
+        }
+    }
+
+    public HistoryPageDto listHistory(Long before, int limit) {
+        int pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+        List<HistoryEntryDto> entries = historyRepository.findPage(before, pageSize);
+        Long nextCursor = entries.size() == pageSize ? entries.get(entries.size() - 1).getId() : null;
+        return HistoryPageDto.builder()
+                .entries(entries)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private void record(GenerateRequest request, GenerateResponse response, String cacheKey, Instant createdAt) {
+        try {
+            byte[] image = response.getImageBytes() != null ? response.getImageBytes()
+                    : Base64.getDecoder().decode(response.getImageData());
+            String imageHash = imageStore.put(image);
+            String sketchHash = response.getSketchImage() != null
+                    ? imageStore.put(Base64.getDecoder().decode(response.getSketchImage()))
+                    : null;
+
+            historyRepository.insert(HistoryEntryDto.builder()
+                    .createdAt(createdAt.toString())
+                    .engine(request.getEngine())
+                    .prompt(request.getPrompt())
+                    .resolution(request.getResolution())
+                    .steps(request.getSteps())
+                    .scale(request.getScale())
+                    .strength(request.getStrength())
+                    .seed(response.getSeed())
+                    .deepThinking(Boolean.TRUE.equals(request.getDeepThinking()))
+                    .img2img(request.getImage() != null && !request.getImage().isEmpty())
+                    .imageHash(imageHash)
+                    .sketchHash(sketchHash)
+                    .imageSize(image.length)
+                    .build(), cacheKey);
+            if (cacheKey != null) {
+                resultCache.remember(cacheKey, imageHash);
+            }
+            log.debug("Recorded generation {} in history", imageHash);
+
+            // Galleries ask for thumbnails right after a generation shows up
+            thumbnailService.prefetch(imageHash);
+        } catch (Exception e) {
+            log.error("Failed to record generation history: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        recorder.shutdown();
+        recorder.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
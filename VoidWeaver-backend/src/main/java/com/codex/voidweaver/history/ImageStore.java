@@ -0,0 +1,87 @@
+package com.codex.voidweaver.history;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed image store
+ *
+ * Images are stored once under their SHA-256, sharded two levels deep
+ * (images/ab/cd/abcd....png) so no directory grows beyond a few thousand entries.
+ */
+@Slf4j
+@Component
+public class ImageStore {
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path root;
+
+    public ImageStore(@Value("${voidweaver.history.dir:./data/history}") String dir) {
+        this.root = Path.of(dir, "images");
+    }
+
+    /**
+     * Store the PNG if it is not there yet
+     *
+     * @return its SHA-256 hex digest
+     */
+    public String put(byte[] png) throws IOException {
+        String hash = sha256(png);
+        Path target = pathFor(hash, "png");
+        if (Files.exists(target)) {
+            return hash;
+        }
+
+        writeAtomically(target, png);
+        return hash;
+    }
+
+    public Optional<Path> get(String hash) {
+        if (!isValidHash(hash)) {
+            return Optional.empty();
+        }
+        Path path = pathFor(hash, "png");
+        return Files.exists(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    public static boolean isValidHash(String hash) {
+        return hash != null && HASH.matcher(hash).matches();
+    }
+
+    /** Write to a temp file first so readers never see a partial image */
+    void writeAtomically(Path target, byte[] data) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, data);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** images/ab/cd/abcd...{extension} */
+    Path pathFor(String hash, String extension) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + "." + extension);
+    }
+
+    static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
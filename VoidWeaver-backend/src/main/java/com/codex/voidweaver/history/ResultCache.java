@@ -0,0 +1,143 @@
+package com.codex.voidweaver.history;
+
+import com.codex.voidweaver.imaging.ImageDecoding;
+import com.codex.voidweaver.model.dto.GenerateRequest;
+import com.codex.voidweaver.model.dto.GenerateResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Result cache for fully specified (seeded) generations
+ *
+ * A request with an explicit seed is keyed by the SHA-256 of its canonical parameter
+ * tuple; a repeat of it is answered from the image store instead of rendering again.
+ * The key is persisted with the history entry, so the cache survives restarts and
+ * works for shared links; an in-memory LRU in front of H2 keeps hot keys off the DB.
+ * Deep thinking runs several non-seeded steps and is never cached.
+ */
+@Slf4j
+@Component
+public class ResultCache {
+
+    private final ImageStore imageStore;
+    private final HistoryRepository historyRepository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+
+    /** cache key -> image hash */
+    private final Map<String, String> recent;
+
+    public ResultCache(ImageStore imageStore, HistoryRepository historyRepository, ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${voidweaver.history.enabled:true}") boolean enabled,
+            @Value("${voidweaver.result-cache.memory-entries:1024}") int memoryEntries) {
+        this.imageStore = imageStore;
+        this.historyRepository = historyRepository;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.recent = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > memoryEntries;
+            }
+        });
+    }
+
+    /**
+     * Cache key for a request with resolved parameters, or null if it is not cacheable
+     *
+     * @param model upstream model the request is rendered with
+     * @param steps steps actually sent (after defaults)
+     * @param scale scale actually sent (after defaults)
+     */
+    public String keyFor(GenerateRequest request, String model, Integer steps, Integer scale) {
+        if (!enabled || request.getSeed() == null || Boolean.TRUE.equals(request.getDeepThinking())) {
+            return null;
+        }
+        String image = request.getImage();
+        boolean img2img = image != null && !image.isEmpty();
+        Object[] tuple = {
+                request.getEngine().name(),
+                model,
+                request.getPrompt(),
+                request.getResolution(),
+                steps,
+                scale,
+                request.getSeed(),
+                img2img ? request.getStrength() : null,
+                img2img ? inputImageHash(image) : null
+        };
+        try {
+            // A JSON array is unambiguous regardless of what the prompt contains
+            return ImageStore.sha256(objectMapper.writeValueAsString(Arrays.asList(tuple))
+                    .getBytes(StandardCharsets.UTF_8));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stored result for this key, if any
+     */
+    public Optional<GenerateResponse> lookup(String cacheKey, Long seed) {
+        if (cacheKey == null) {
+            return Optional.empty();
+        }
+        String imageHash = recent.get(cacheKey);
+        if (imageHash == null) {
+            imageHash = historyRepository.findImageHashByCacheKey(cacheKey).orElse(null);
+        }
+        Optional<Path> path = imageHash != null ? imageStore.get(imageHash) : Optional.empty();
+        if (path.isEmpty()) {
+            meterRegistry.counter("voidweaver.result-cache.lookups", "result", "miss").increment();
+            return Optional.empty();
+        }
+
+        try {
+            byte[] image = Files.readAllBytes(path.get());
+            recent.put(cacheKey, imageHash);
+            meterRegistry.counter("voidweaver.result-cache.lookups", "result", "hit").increment();
+            log.info("Serving generation from result cache ({})", imageHash);
+            return Optional.of(GenerateResponse.builder()
+                    .imageBytes(image)
+                    .seed(seed)
+                    .cached(true)
+                    .build());
+        } catch (IOException e) {
+            log.warn("Failed to read cached image {}: {}", imageHash, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Called once the generation is stored and indexed
+     */
+    void remember(String cacheKey, String imageHash) {
+        recent.put(cacheKey, imageHash);
+    }
+
+    /** Hash of the decoded input, so data-URL prefixes or base64 line breaks do not change the key */
+    private static String inputImageHash(String image) {
+        try {
+            return ImageStore.sha256(ImageDecoding.base64Bytes(image));
+        } catch (IllegalArgumentException e) {
+            return ImageStore.sha256(image.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
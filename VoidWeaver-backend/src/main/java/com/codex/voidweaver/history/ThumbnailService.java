@@ -0,0 +1,236 @@
+package com.codex.voidweaver.history;
+
+import com.codex.voidweaver.exception.ApiException;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Thumbnail pipeline over the content-addressed image store
+ *
+ * Thumbnails are rendered on the bounded image-processing executor the first time
+ * they are asked for and cached next to the original (images/ab/cd/{hash}.{size}.jpg),
+ * so every later request is a plain file read. Concurrent requests for the same
+ * thumbnail share one render.
+ */
+@Slf4j
+@Service
+public class ThumbnailService {
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Format {
+        JPEG("jpg", MediaType.IMAGE_JPEG),
+        PNG("png", MediaType.IMAGE_PNG);
+
+        private final String extension;
+        private final MediaType mediaType;
+    }
+
+    private static final long RENDER_TIMEOUT_SECONDS = 30;
+
+    private final ImageStore imageStore;
+    private final ThreadPoolExecutor executor;
+    private final int[] sizes;
+    private final float jpegQuality;
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    public ThumbnailService(ImageStore imageStore,
+            @Qualifier("imageProcessingExecutor") ThreadPoolExecutor executor,
+            @Value("${voidweaver.thumbnails.sizes:128,256,512}") int[] sizes,
+            @Value("${voidweaver.thumbnails.jpeg-quality:0.82}") float jpegQuality) {
+        this.imageStore = imageStore;
+        this.executor = executor;
+        this.sizes = Arrays.stream(sizes).sorted().toArray();
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Snap a requested edge length to the smallest configured size that covers it
+     */
+    public int resolveSize(int requested) {
+        for (int size : sizes) {
+            if (size >= requested) {
+                return size;
+            }
+        }
+        return sizes[sizes.length - 1];
+    }
+
+    /**
+     * Cached thumbnail for the image, rendering it first if needed
+     *
+     * @param size one of the configured sizes (see {@link #resolveSize(int)})
+     * @return empty if the original image does not exist
+     */
+    public Optional<Path> getThumbnail(String hash, int size, Format format) {
+        Optional<Path> original = imageStore.get(hash);
+        if (original.isEmpty()) {
+            return Optional.empty();
+        }
+        Path target = imageStore.pathFor(hash, size + "." + format.getExtension());
+        if (Files.exists(target)) {
+            return Optional.of(target);
+        }
+
+        CompletableFuture<Path> render = submit(original.get(), target);
+        if (render == null) {
+            throw new ApiException("Image processing is busy, please retry shortly", "SERVER_BUSY");
+        }
+        try {
+            return Optional.of(render.get(RENDER_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException("Interrupted while rendering thumbnail", "INTERNAL_ERROR");
+        } catch (TimeoutException e) {
+            throw new ApiException("Timed out rendering thumbnail", "SERVER_BUSY");
+        } catch (ExecutionException e) {
+            log.error("Failed to render thumbnail {}: {}", target.getFileName(), e.getCause().getMessage());
+            throw new ApiException("Failed to render thumbnail: " + e.getCause().getMessage(), "INTERNAL_ERROR");
+        }
+    }
+
+    /**
+     * Render the JPEG thumbnails of a freshly stored image in the background;
+     * skipped silently when the executor is saturated
+     */
+    public void prefetch(String hash) {
+        imageStore.get(hash).ifPresent(original -> {
+            for (int size : sizes) {
+                Path target = imageStore.pathFor(hash, size + "." + Format.JPEG.getExtension());
+                if (!Files.exists(target)) {
+                    submit(original, target);
+                }
+            }
+        });
+    }
+
+    /** Start (or join) the render of one thumbnail; null if the executor rejected it */
+    private CompletableFuture<Path> submit(Path original, Path target) {
+        String key = target.getFileName().toString();
+        CompletableFuture<Path> created = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    created.complete(render(original, target));
+                } catch (Throwable t) {
+                    created.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(key, created);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, created);
+            log.warn("Image processing queue full, thumbnail {} not rendered", key);
+            return null;
+        }
+        return created;
+    }
+
+    private Path render(Path original, Path target) throws IOException {
+        long start = System.nanoTime();
+        BufferedImage source = ImageIO.read(original.toFile());
+        if (source == null) {
+            throw new IOException("Unreadable image " + original.getFileName());
+        }
+
+        String name = target.getFileName().toString();
+        int size = Integer.parseInt(name.substring(name.indexOf('.') + 1, name.lastIndexOf('.')));
+        boolean jpeg = name.endsWith("." + Format.JPEG.getExtension());
+
+        BufferedImage thumbnail = resize(source, size, jpeg ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        imageStore.writeAtomically(target, jpeg ? encodeJpeg(thumbnail) : encodePng(thumbnail));
+
+        log.debug("Rendered thumbnail {} ({}x{}) in {} ms", name, thumbnail.getWidth(), thumbnail.getHeight(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return target;
+    }
+
+    /**
+     * Fit the image inside size x size, never upscaling. Halves in steps before the
+     * final bilinear pass; a single bilinear step from 1216px to 128px would alias badly.
+     */
+    private static BufferedImage resize(BufferedImage source, int size, int imageType) {
+        double scale = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage current = source;
+        while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+            current = draw(current, current.getWidth() / 2, current.getHeight() / 2, imageType);
+        }
+        return draw(current, width, height, imageType);
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, int imageType) {
+        BufferedImage target = new BufferedImage(width, height, imageType);
+        Graphics2D g = target.createGraphics();
+        try {
+            if (imageType == BufferedImage.TYPE_INT_RGB) {
+                // JPEG has no alpha channel; flatten onto white
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+            }
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
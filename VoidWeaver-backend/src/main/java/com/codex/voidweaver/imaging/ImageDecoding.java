@@ -0,0 +1,77 @@
+package com.codex.voidweaver.imaging;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Iterator;
+
+/**
+ * Decoding of client-supplied images (base64, optionally as a data URL)
+ */
+public final class ImageDecoding {
+
+    private ImageDecoding() {
+    }
+
+    /**
+     * Raw bytes of a base64 image; a "data:image/...;base64," prefix and line breaks are accepted
+     *
+     * @throws IllegalArgumentException if the payload is not valid base64
+     */
+    public static byte[] base64Bytes(String image) {
+        String base64 = image.startsWith("data:") ? image.substring(image.indexOf(',') + 1) : image;
+        return Base64.getMimeDecoder().decode(base64);
+    }
+
+    /**
+     * @throws IOException if the bytes are not an image format ImageIO can read
+     */
+    public static BufferedImage decode(byte[] bytes) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+        if (image == null) {
+            throw new IOException("Unsupported image format");
+        }
+        return image;
+    }
+
+    /**
+     * Decode at reduced resolution: only every n-th pixel is read, with n chosen so the
+     * result still covers twice minWidth x minHeight (the caller's filtered downscale then
+     * removes the point-sampling aliasing). A 4000px phone photo headed for an 832px
+     * target never has its full raster in memory.
+     *
+     * @throws IOException if the bytes are not an image format ImageIO can read
+     */
+    public static BufferedImage decode(byte[] bytes, int minWidth, int minHeight) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int subsampling = Math.max(1, Math.min(reader.getWidth(0) / Math.max(1, 2 * minWidth),
+                        reader.getHeight(0) / Math.max(1, 2 * minHeight)));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    public static BufferedImage decodeBase64(String image) throws IOException {
+        try {
+            return decode(base64Bytes(image));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid base64 image", e);
+        }
+    }
+}
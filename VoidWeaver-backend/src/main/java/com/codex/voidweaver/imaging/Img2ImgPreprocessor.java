@@ -0,0 +1,232 @@
+package com.codex.voidweaver.imaging;
+
+import com.codex.voidweaver.exception.ApiException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Img2img input preprocessing
+ *
+ * Uploads are decoded once (subsampled when far larger than needed), scaled to cover
+ * the target resolution, center-cropped to exactly that size and re-encoded in the
+ * format the upstream wants. The work runs on the bounded image-processing executor,
+ * so callers can start it and build the rest of the upstream request meanwhile.
+ */
+@Slf4j
+@Component
+public class Img2ImgPreprocessor {
+
+    @Getter
+    @RequiredArgsConstructor
+    public enum Format {
+        /** NovelAI expects a PNG of exactly the target size */
+        PNG("png", "image/png"),
+        /** Gemini accepts JPEG, a fraction of the PNG upload size for photos */
+        JPEG("jpeg", "image/jpeg");
+
+        private final String writerName;
+        private final String mimeType;
+    }
+
+    /**
+     * @param data base64 image without data-URL prefix
+     */
+    public record PreparedImage(String data, String mimeType) {
+    }
+
+    private static final long PREPARE_TIMEOUT_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final float jpegQuality;
+
+    public Img2ImgPreprocessor(@Qualifier("imageProcessingExecutor") ThreadPoolExecutor executor,
+            MeterRegistry meterRegistry,
+            @Value("${voidweaver.img2img.preprocess:true}") boolean enabled,
+            @Value("${voidweaver.img2img.jpeg-quality:0.9}") float jpegQuality) {
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Start preparing the image for a width x height generation; collect the result with
+     * {@link #await(CompletableFuture)}
+     *
+     * @throws ApiException SERVER_BUSY if the image-processing queue is full
+     */
+    public CompletableFuture<PreparedImage> prepareAsync(String image, int width, int height, Format format) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(passThrough(image));
+        }
+        CompletableFuture<PreparedImage> prepared = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    prepared.complete(prepare(image, width, height, format));
+                } catch (Throwable t) {
+                    prepared.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Image processing queue full, img2img input not prepared");
+            throw new ApiException("Image processing is busy, please retry shortly", "SERVER_BUSY");
+        }
+        return prepared;
+    }
+
+    public PreparedImage await(CompletableFuture<PreparedImage> prepared) {
+        try {
+            return prepared.get(PREPARE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            prepared.cancel(false);
+            throw new ApiException("Interrupted while preparing input image", "INTERNAL_ERROR");
+        } catch (TimeoutException e) {
+            prepared.cancel(false);
+            throw new ApiException("Timed out preparing input image", "SERVER_BUSY");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ApiException api) {
+                throw api;
+            }
+            throw new ApiException("Failed to prepare input image: " + e.getCause().getMessage(), "INTERNAL_ERROR");
+        }
+    }
+
+    private PreparedImage prepare(String image, int width, int height, Format format) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes;
+        BufferedImage source;
+        try {
+            bytes = ImageDecoding.base64Bytes(image);
+            source = ImageDecoding.decode(bytes, width, height);
+        } catch (IllegalArgumentException | IOException e) {
+            throw new ApiException("Invalid input image: " + e.getMessage(), "INVALID_REQUEST");
+        }
+
+        // Already the right size and format: forward the upload untouched
+        if (source.getWidth() == width && source.getHeight() == height && mimeTypeOf(bytes).equals(format.getMimeType())) {
+            return new PreparedImage(Base64.getEncoder().encodeToString(bytes), format.getMimeType());
+        }
+
+        byte[] encoded = encode(coverCrop(source, width, height), format);
+        long elapsed = System.nanoTime() - start;
+        Timer.builder("voidweaver.img2img.preprocess")
+                .tag("format", format.getWriterName())
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        log.debug("Prepared img2img input {}x{} -> {}x{} {} ({} KB -> {} KB) in {} ms",
+                source.getWidth(), source.getHeight(), width, height, format.getWriterName(),
+                bytes.length / 1024, encoded.length / 1024, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return new PreparedImage(Base64.getEncoder().encodeToString(encoded), format.getMimeType());
+    }
+
+    /**
+     * Scale so the image covers width x height, then keep the centered width x height window.
+     * Halves in steps first, as the thumbnail pipeline does, so large reductions do not alias.
+     */
+    private static BufferedImage coverCrop(BufferedImage source, int width, int height) {
+        double scale = Math.max((double) width / source.getWidth(), (double) height / source.getHeight());
+        int scaledWidth = (int) Math.ceil(source.getWidth() * scale);
+        int scaledHeight = (int) Math.ceil(source.getHeight() * scale);
+
+        BufferedImage current = source;
+        while (current.getWidth() / 2 >= scaledWidth && current.getHeight() / 2 >= scaledHeight) {
+            current = draw(current, current.getWidth() / 2, current.getHeight() / 2,
+                    0, 0, current.getWidth(), current.getHeight());
+        }
+
+        // Source window with the target aspect ratio, centered
+        double ratio = Math.min((double) current.getWidth() / width, (double) current.getHeight() / height);
+        int cropWidth = (int) Math.round(width * ratio);
+        int cropHeight = (int) Math.round(height * ratio);
+        int x = (current.getWidth() - cropWidth) / 2;
+        int y = (current.getHeight() - cropHeight) / 2;
+        return draw(current, width, height, x, y, x + cropWidth, y + cropHeight);
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, int sx1, int sy1, int sx2, int sy2) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            // Neither upstream uses the alpha channel; flatten onto white
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, sx1, sy1, sx2, sy2, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encode(BufferedImage image, Format format) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format.getWriterName()).next();
+        // Sized for a typical encode so the buffer does not regrow several times
+        ByteArrayOutputStream out = new ByteArrayOutputStream(image.getWidth() * image.getHeight()
+                / (format == Format.JPEG ? 8 : 2));
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (format == Format.JPEG) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static PreparedImage passThrough(String image) {
+        String base64 = image.startsWith("data:") ? image.substring(image.indexOf(',') + 1) : image;
+        String mimeType;
+        try {
+            // 16 base64 chars cover the 12 bytes of magic needed
+            mimeType = mimeTypeOf(Base64.getDecoder().decode(base64.substring(0, Math.min(16, base64.length() & ~3))));
+        } catch (IllegalArgumentException e) {
+            mimeType = Format.PNG.getMimeType();
+        }
+        return new PreparedImage(base64, mimeType);
+    }
+
+    /** MIME type from the magic bytes; PNG unless the upload is recognisably JPEG or WebP */
+    private static String mimeTypeOf(byte[] bytes) {
+        if (bytes.length > 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xD8) {
+            return Format.JPEG.getMimeType();
+        }
+        if (bytes.length > 12 && bytes[8] == 'W' && bytes[9] == 'E' && bytes[10] == 'B' && bytes[11] == 'P') {
+            return "image/webp";
+        }
+        return Format.PNG.getMimeType();
+    }
+}
@@ -0,0 +1,252 @@
+package com.codex.voidweaver.imaging;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Dominant colours by median cut
+ *
+ * Pixels are sampled on a grid and counted into a 15-bit (5 bits per channel)
+ * histogram that also sums the exact channel values of each bin. It is built
+ * sequentially on the calling thread: callers run this on the bounded image-processing
+ * executor, on images decoded to about 256 px. Median cut then works on the at most
+ * 32768 occupied bins instead of the pixels: the box with the largest pixel count times
+ * colour range is split at the weighted median of its widest channel until there are
+ * enough boxes. Boxes spanning only a couple of bins are one
+ * colour plus noise and are not split further, so a flat area does not come back as
+ * several near-identical swatches. Each box's colour is the exact mean of its pixels;
+ * a median that falls inside one colour still cuts it in two, so boxes whose means end
+ * up within a just-noticeable distance are merged back.
+ */
+public final class MedianCut {
+
+    /** One palette entry; share is the fraction of sampled pixels it stands for */
+    public record Swatch(int rgb, double share) {
+
+        public String hex() {
+            return String.format("#%06X", rgb & 0xFFFFFF);
+        }
+    }
+
+    private static final int BITS = 5;
+    private static final int SHIFT = 8 - BITS;
+    private static final int SIDE = 1 << BITS;
+    private static final int BINS = SIDE * SIDE * SIDE;
+
+    /** Boxes narrower than this many bins on every channel (16 levels) stay whole */
+    private static final int MIN_SPLIT_RANGE = 2;
+
+    /** Swatches closer than this (Euclidean, 0-255 RGB) are the same colour */
+    private static final int MERGE_DISTANCE = 24;
+
+    /** Pixels sampled at most; a grid this dense finds every colour that covers 1% of the image */
+    private static final int MAX_SAMPLES = 1 << 18;
+
+    private MedianCut() {
+    }
+
+    /**
+     * @param maxColors upper bound on the palette size
+     * @param minShare  swatches covering less of the image than this are dropped
+     * @return swatches, largest share first
+     */
+    public static List<Swatch> palette(BufferedImage image, int maxColors, double minShare) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int stride = Math.max(1, (int) Math.ceil(Math.sqrt((double) width * height / MAX_SAMPLES)));
+        int sampledRows = (height + stride - 1) / stride;
+
+        // counts[bin], then r, g, b sums per bin; int is enough for MAX_SAMPLES * 255
+        int[] histogram = histogram(image, stride, 0, sampledRows);
+
+        int[] occupied = IntStream.range(0, BINS).filter(bin -> histogram[bin] > 0).toArray();
+        if (occupied.length == 0) {
+            return List.of();
+        }
+        long total = 0;
+        for (int bin : occupied) {
+            total += histogram[bin];
+        }
+
+        List<Box> boxes = new ArrayList<>();
+        boxes.add(new Box(occupied, 0, occupied.length, histogram));
+        while (boxes.size() < maxColors) {
+            Box largest = null;
+            for (Box box : boxes) {
+                if (box.splittable() && (largest == null || box.priority() > largest.priority())) {
+                    largest = box;
+                }
+            }
+            if (largest == null) {
+                break;
+            }
+            boxes.remove(largest);
+            boxes.addAll(largest.split(histogram));
+        }
+
+        List<Swatch> swatches = new ArrayList<>(boxes.size());
+        for (Box box : boxes) {
+            swatches.add(new Swatch(box.meanRgb(histogram), (double) box.pixels / total));
+        }
+        swatches.sort(Comparator.comparingDouble(Swatch::share).reversed());
+        List<Swatch> merged = merge(swatches);
+        merged.removeIf(swatch -> swatch.share() < minShare);
+        return merged;
+    }
+
+    /** Fold each swatch into an earlier (larger) one within MERGE_DISTANCE, share-weighted */
+    private static List<Swatch> merge(List<Swatch> swatches) {
+        List<Swatch> merged = new ArrayList<>(swatches.size());
+        for (Swatch swatch : swatches) {
+            int match = -1;
+            for (int i = 0; i < merged.size() && match < 0; i++) {
+                if (distanceSquared(merged.get(i).rgb(), swatch.rgb()) < MERGE_DISTANCE * MERGE_DISTANCE) {
+                    match = i;
+                }
+            }
+            if (match < 0) {
+                merged.add(swatch);
+                continue;
+            }
+            Swatch into = merged.get(match);
+            double share = into.share() + swatch.share();
+            int rgb = 0;
+            for (int shift = 16; shift >= 0; shift -= 8) {
+                double value = (((into.rgb() >> shift) & 0xFF) * into.share()
+                        + ((swatch.rgb() >> shift) & 0xFF) * swatch.share()) / share;
+                rgb |= (int) Math.round(value) << shift;
+            }
+            merged.set(match, new Swatch(rgb, share));
+        }
+        return merged;
+    }
+
+    private static int distanceSquared(int a, int b) {
+        int sum = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int delta = ((a >> shift) & 0xFF) - ((b >> shift) & 0xFF);
+            sum += delta * delta;
+        }
+        return sum;
+    }
+
+    /** Histogram of sampled rows [fromRow, toRow) (in sample coordinates) */
+    private static int[] histogram(BufferedImage image, int stride, int fromRow, int toRow) {
+        int width = image.getWidth();
+        int[] histogram = new int[BINS * 4];
+        int[] row = new int[width];
+        for (int sampledRow = fromRow; sampledRow < toRow; sampledRow++) {
+            image.getRGB(0, sampledRow * stride, width, 1, row, 0, width);
+            for (int x = 0; x < width; x += stride) {
+                int argb = row[x];
+                if ((argb >>> 24) < 128) {
+                    // Transparent pixels are not part of the picture
+                    continue;
+                }
+                int r = (argb >> 16) & 0xFF;
+                int g = (argb >> 8) & 0xFF;
+                int b = argb & 0xFF;
+                int bin = ((r >> SHIFT) << (2 * BITS)) | ((g >> SHIFT) << BITS) | (b >> SHIFT);
+                histogram[bin]++;
+                histogram[BINS + bin] += r;
+                histogram[2 * BINS + bin] += g;
+                histogram[3 * BINS + bin] += b;
+            }
+        }
+        return histogram;
+    }
+
+    private static int channel(int bin, int channel) {
+        return (bin >> ((2 - channel) * BITS)) & (SIDE - 1);
+    }
+
+    /** A range of the shared occupied-bin array */
+    private static final class Box {
+        private final int[] bins;
+        private final int from;
+        private final int to;
+        private final long pixels;
+        private final int widest;
+        private final int range;
+
+        Box(int[] bins, int from, int to, int[] histogram) {
+            this.bins = bins;
+            this.from = from;
+            this.to = to;
+            long count = 0;
+            for (int i = from; i < to; i++) {
+                count += histogram[bins[i]];
+            }
+            this.pixels = count;
+
+            int widestChannel = 0;
+            int widestRange = -1;
+            for (int channel = 0; channel < 3; channel++) {
+                int min = SIDE;
+                int max = -1;
+                for (int i = from; i < to; i++) {
+                    int value = channel(bins[i], channel);
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                if (max - min > widestRange) {
+                    widestRange = max - min;
+                    widestChannel = channel;
+                }
+            }
+            this.widest = widestChannel;
+            this.range = widestRange;
+        }
+
+        boolean splittable() {
+            return to - from > 1 && range >= MIN_SPLIT_RANGE;
+        }
+
+        long priority() {
+            return pixels * range;
+        }
+
+        /** Split at the weighted median of the widest channel */
+        List<Box> split(int[] histogram) {
+
+            // Sort by the channel value packed above the bin index, without boxing
+            for (int i = from; i < to; i++) {
+                bins[i] |= channel(bins[i], widest) << (3 * BITS);
+            }
+            Arrays.sort(bins, from, to);
+            for (int i = from; i < to; i++) {
+                bins[i] &= BINS - 1;
+            }
+
+            long half = pixels / 2;
+            long running = 0;
+            int cut = from + 1;
+            for (int i = from; i < to - 1; i++) {
+                running += histogram[bins[i]];
+                cut = i + 1;
+                if (running >= half) {
+                    break;
+                }
+            }
+            return List.of(new Box(bins, from, cut, histogram), new Box(bins, cut, to, histogram));
+        }
+
+        int meanRgb(int[] histogram) {
+            long r = 0;
+            long g = 0;
+            long b = 0;
+            for (int i = from; i < to; i++) {
+                int bin = bins[i];
+                r += histogram[BINS + bin];
+                g += histogram[2 * BINS + bin];
+                b += histogram[3 * BINS + bin];
+            }
+            return (int) (Math.round((double) r / pixels) << 16 | Math.round((double) g / pixels) << 8
+                    | Math.round((double) b / pixels));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.codex.voidweaver.imaging;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+
+/**
+ * Nearest-neighbour index over 64-bit hashes in Hamming space
+ *
+ * The hash is split into three disjoint bit ranges (22 + 21 + 21 bits), each indexed
+ * by an exact-match table. By the pigeonhole principle two hashes within k bits
+ * differ by at most k / 3 bits in at least one range, so a query probes, per table,
+ * every range value within k / 3 bits of its own and verifies the few entries found
+ * there. Entries live in parallel primitive arrays with per-table bucket chains;
+ * bucket arrays grow with the entry count so chains stay about one entry long. Each
+ * entry may carry a tag (any 64-bit side data) that a query can filter candidates on.
+ */
+public final class MultiIndexHashTable {
+
+    private static final int TABLES = 3;
+    private static final int[] SHIFTS = { 0, 22, 43 };
+    private static final int[] WIDTHS = { 22, 21, 21 };
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maxDistance;
+    private final int probeRadius;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    private long[] tags = new long[INITIAL_CAPACITY];
+    /** heads[table][bucket]: newest entry in the bucket, or -1 */
+    private int[][] heads = new int[TABLES][];
+    /** next[table][entry]: the following entry in the same bucket, or -1 */
+    private int[][] next = new int[TABLES][];
+    private int bucketBits;
+    private int size;
+
+    /**
+     * @param maxDistance largest Hamming distance still considered a match (0 - 11)
+     */
+    public MultiIndexHashTable(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > 11) {
+            throw new IllegalArgumentException("maxDistance must be between 0 and 11");
+        }
+        this.maxDistance = maxDistance;
+        this.probeRadius = maxDistance / TABLES;
+        rebuild(INITIAL_CAPACITY);
+    }
+
+    public void add(long hash, long value) {
+        add(hash, 0, value);
+    }
+
+    public void add(long hash, long tag, long value) {
+        lock.writeLock().lock();
+        try {
+            if (size == hashes.length) {
+                int capacity = hashes.length * 2;
+                hashes = Arrays.copyOf(hashes, capacity);
+                values = Arrays.copyOf(values, capacity);
+                tags = Arrays.copyOf(tags, capacity);
+                rebuild(capacity);
+            }
+            int entry = size++;
+            hashes[entry] = hash;
+            values[entry] = value;
+            tags[entry] = tag;
+            link(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Value of the closest entry within maxDistance bits, or -1 if there is none;
+     * ties go to the most recently added entry
+     */
+    public long findNearest(long hash) {
+        return findNearest(hash, tag -> true);
+    }
+
+    /**
+     * Same, among entries whose tag the filter accepts
+     */
+    public long findNearest(long hash, LongPredicate tagFilter) {
+        lock.readLock().lock();
+        try {
+            Search search = new Search(hash, tagFilter);
+            for (int t = 0; t < TABLES && search.bestDistance > 0; t++) {
+                probe(search, t, part(hash, t), 0, probeRadius);
+            }
+            return search.best >= 0 ? values[search.best] : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private final class Search {
+        final long hash;
+        final LongPredicate tagFilter;
+        int best = -1;
+        int bestDistance = maxDistance + 1;
+
+        Search(long hash, LongPredicate tagFilter) {
+            this.hash = hash;
+            this.tagFilter = tagFilter;
+        }
+    }
+
+    /** Visit the bucket of rangeValue, then every value that flips up to radius more bits from lowestBit on */
+    private void probe(Search search, int table, long rangeValue, int lowestBit, int radius) {
+        for (int entry = heads[table][bucket(rangeValue)]; entry >= 0; entry = next[table][entry]) {
+            int distance = Long.bitCount(hashes[entry] ^ search.hash);
+            if (distance <= maxDistance
+                    && (distance < search.bestDistance || (distance == search.bestDistance && entry > search.best))
+                    && search.tagFilter.test(tags[entry])) {
+                search.best = entry;
+                search.bestDistance = distance;
+            }
+        }
+        if (radius == 0) {
+            return;
+        }
+        for (int bit = lowestBit; bit < WIDTHS[table]; bit++) {
+            probe(search, table, rangeValue ^ (1L << bit), bit + 1, radius - 1);
+        }
+    }
+
+    private static long part(long hash, int table) {
+        return (hash >>> SHIFTS[table]) & ((1L << WIDTHS[table]) - 1);
+    }
+
+    private int bucket(long rangeValue) {
+        return (int) ((rangeValue * 0x9E3779B97F4A7C15L) >>> (64 - bucketBits));
+    }
+
+    private void link(int entry) {
+        for (int t = 0; t < TABLES; t++) {
+            int bucket = bucket(part(hashes[entry], t));
+            next[t][entry] = heads[t][bucket];
+            heads[t][bucket] = entry;
+        }
+    }
+
+    /** One bucket per entry slot; re-links existing entries (in order, so newest stays first) */
+    private void rebuild(int capacity) {
+        bucketBits = Integer.numberOfTrailingZeros(capacity);
+        for (int t = 0; t < TABLES; t++) {
+            heads[t] = new int[capacity];
+            Arrays.fill(heads[t], -1);
+            next[t] = new int[capacity];
+        }
+        for (int entry = 0; entry < size; entry++) {
+            link(entry);
+        }
+    }
+}
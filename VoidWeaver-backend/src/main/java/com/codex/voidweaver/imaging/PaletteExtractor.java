@@ -0,0 +1,157 @@
+package com.codex.voidweaver.imaging;
+
+import com.codex.voidweaver.model.dto.AnalyzeResponse;
+import com.codex.voidweaver.model.dto.ModuleDto;
+import com.codex.voidweaver.model.dto.TagDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Exact colour palettes for analyzed images
+ *
+ * The palette is computed locally ({@link MedianCut}) on the image-processing
+ * executor while Gemini analyzes the same image, and merged into the atmosphere
+ * module as hidden hex tags. A palette is a nice-to-have: if it fails, is late or the
+ * executor is busy, the analysis is returned without it.
+ */
+@Slf4j
+@Component
+public class PaletteExtractor {
+
+    public static final String ATMOSPHERE = "atmosphere";
+
+    /** Decode at least this many pixels per axis; more adds time, not colours */
+    private static final int DECODE_SIZE = 256;
+
+    private final ThreadPoolExecutor executor;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int maxColors;
+    private final double minShare;
+    private final long awaitMs;
+
+    public PaletteExtractor(@Qualifier("imageProcessingExecutor") ThreadPoolExecutor executor,
+            MeterRegistry meterRegistry,
+            @Value("${voidweaver.palette.enabled:true}") boolean enabled,
+            @Value("${voidweaver.palette.max-colors:6}") int maxColors,
+            @Value("${voidweaver.palette.min-share:0.02}") double minShare,
+            @Value("${voidweaver.palette.await-ms:2000}") long awaitMs) {
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxColors = maxColors;
+        this.minShare = minShare;
+        this.awaitMs = awaitMs;
+    }
+
+    /**
+     * Start extracting the palette of a base64 image as hidden tags; never fails, an
+     * unavailable palette completes empty
+     */
+    public CompletableFuture<List<TagDto>> extractAsync(String imageData) {
+        if (!enabled || imageData == null) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        CompletableFuture<List<TagDto>> palette = new CompletableFuture<>();
+        try {
+            executor.execute(() -> palette.complete(extract(imageData)));
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("voidweaver.palette.skipped", "reason", "busy").increment();
+            log.debug("Image processing queue full, analyzing without palette");
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return palette;
+    }
+
+    /**
+     * Result of {@link #extractAsync}; by the time Gemini has answered it is normally
+     * long done, so this only waits briefly
+     */
+    public List<TagDto> await(CompletableFuture<List<TagDto>> palette) {
+        try {
+            return palette.get(awaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
+        } catch (TimeoutException | ExecutionException e) {
+            meterRegistry.counter("voidweaver.palette.skipped", "reason", "late").increment();
+            return List.of();
+        }
+    }
+
+    /**
+     * Put the palette into the atmosphere module (created if Gemini returned none),
+     * replacing any hidden tags already there
+     */
+    public static void merge(AnalyzeResponse response, List<TagDto> palette) {
+        if (response == null || palette.isEmpty()) {
+            return;
+        }
+        if (response.getModules() == null) {
+            response.setModules(new ArrayList<>());
+        }
+        ModuleDto atmosphere = response.getModules().stream()
+                .filter(module -> ATMOSPHERE.equals(module.getName()))
+                .findFirst()
+                .orElse(null);
+        if (atmosphere == null) {
+            atmosphere = ModuleDto.builder().name(ATMOSPHERE).displayName("Atmosphere").tags(new ArrayList<>())
+                    .build();
+            response.setModules(new ArrayList<>(response.getModules()));
+            response.getModules().add(atmosphere);
+        }
+        merge(atmosphere, palette);
+    }
+
+    /** Same, for a single atmosphere module (streamed analyze) */
+    public static void merge(ModuleDto atmosphere, List<TagDto> palette) {
+        if (palette.isEmpty()) {
+            return;
+        }
+        List<TagDto> tags = new ArrayList<>();
+        if (atmosphere.getTags() != null) {
+            atmosphere.getTags().stream().filter(tag -> !Boolean.TRUE.equals(tag.getHidden())).forEach(tags::add);
+        }
+        tags.addAll(palette);
+        atmosphere.setTags(tags);
+    }
+
+    private List<TagDto> extract(String imageData) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            BufferedImage image = ImageDecoding.decode(ImageDecoding.base64Bytes(imageData), DECODE_SIZE,
+                    DECODE_SIZE);
+            List<TagDto> tags = new ArrayList<>();
+            for (MedianCut.Swatch swatch : MedianCut.palette(image, maxColors, minShare)) {
+                tags.add(TagDto.builder()
+                        .id(UUID.randomUUID().toString())
+                        .text(swatch.hex())
+                        .weight(1.0)
+                        .hidden(true)
+                        .build());
+            }
+            return tags;
+        } catch (Exception e) {
+            meterRegistry.counter("voidweaver.palette.skipped", "reason", "unreadable").increment();
+            log.debug("Could not extract palette: {}", e.getMessage());
+            return List.of();
+        } finally {
+            sample.stop(meterRegistry.timer("voidweaver.palette.extract"));
+        }
+    }
+}
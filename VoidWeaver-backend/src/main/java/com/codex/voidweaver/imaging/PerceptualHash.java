@@ -0,0 +1,104 @@
+package com.codex.voidweaver.imaging;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 64-bit difference hash (dHash)
+ *
+ * The image is reduced to 9x8 cells of average luminance; each bit says whether a
+ * cell is brighter than its right neighbour. Resizing, re-compression and mild
+ * colour shifts barely change it, so near-duplicates end up a few bits apart.
+ *
+ * Being luminance only, it cannot tell a recoloured image (red hair vs blue hair) from
+ * the original, so it is paired with a coarse colour signature: the mean colour of each
+ * image quadrant, 5 bits per channel.
+ */
+public final class PerceptualHash {
+
+    private static final int COLUMNS = 9;
+    private static final int ROWS = 8;
+    /** Sample at most about this many pixels per axis; box averages do not need every pixel */
+    private static final int MAX_SAMPLES_PER_AXIS = 256;
+
+    private static final int COLOR_GRID = 2;
+    private static final int COLOR_BITS = 5;
+
+    private PerceptualHash() {
+    }
+
+    public static long dHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int stride = Math.max(1, Math.min(width, height) / MAX_SAMPLES_PER_AXIS);
+
+        long[] sums = new long[COLUMNS * ROWS];
+        int[] counts = new int[COLUMNS * ROWS];
+        for (int y = 0; y < height; y += stride) {
+            int row = y * ROWS / height;
+            for (int x = 0; x < width; x += stride) {
+                int rgb = image.getRGB(x, y);
+                int luma = (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                int cell = row * COLUMNS + x * COLUMNS / width;
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+
+        long hash = 0;
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS - 1; column++) {
+                int cell = row * COLUMNS + column;
+                // Compare averages without dividing: a/b > c/d  <=>  a*d > c*b
+                boolean brighter = sums[cell] * Math.max(1, counts[cell + 1])
+                        > sums[cell + 1] * Math.max(1, counts[cell]);
+                hash = (hash << 1) | (brighter ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /** Mean RGB of the 2x2 quadrants, packed into 60 bits */
+    public static long colorSignature(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int stride = Math.max(1, Math.min(width, height) / MAX_SAMPLES_PER_AXIS);
+
+        int cells = COLOR_GRID * COLOR_GRID;
+        long[] sums = new long[cells * 3];
+        long[] counts = new long[cells];
+        for (int y = 0; y < height; y += stride) {
+            int row = y * COLOR_GRID / height;
+            for (int x = 0; x < width; x += stride) {
+                int rgb = image.getRGB(x, y);
+                int cell = row * COLOR_GRID + x * COLOR_GRID / width;
+                sums[cell * 3] += (rgb >> 16) & 0xFF;
+                sums[cell * 3 + 1] += (rgb >> 8) & 0xFF;
+                sums[cell * 3 + 2] += rgb & 0xFF;
+                counts[cell]++;
+            }
+        }
+
+        long signature = 0;
+        for (int i = 0; i < cells * 3; i++) {
+            long mean = sums[i] / Math.max(1, counts[i / 3]);
+            signature = (signature << COLOR_BITS) | (mean >> (8 - COLOR_BITS));
+        }
+        return signature;
+    }
+
+    /** Largest channel difference between corresponding quadrants, on the 0-255 scale */
+    public static int colorDistance(long a, long b) {
+        int mask = (1 << COLOR_BITS) - 1;
+        int max = 0;
+        for (int i = 0; i < COLOR_GRID * COLOR_GRID * 3; i++) {
+            int shift = i * COLOR_BITS;
+            int delta = Math.abs((int) ((a >>> shift) & mask) - (int) ((b >>> shift) & mask));
+            max = Math.max(max, delta);
+        }
+        return max << (8 - COLOR_BITS);
+    }
+}
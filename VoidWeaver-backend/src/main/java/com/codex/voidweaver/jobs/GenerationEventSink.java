@@ -0,0 +1,19 @@
+package com.codex.voidweaver.jobs;
+
+import java.io.IOException;
+
+/**
+ * Receiver of the named events a streaming generation produces
+ * ("log", "sketch", "result", "error")
+ */
+public interface GenerationEventSink {
+
+    /**
+     * @throws IOException if the event can no longer be delivered (e.g. the client went away)
+     */
+    void send(String name, Object data) throws IOException;
+
+    void complete();
+
+    void completeWithError(Throwable error);
+}
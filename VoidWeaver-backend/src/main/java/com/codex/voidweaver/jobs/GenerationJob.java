@@ -0,0 +1,258 @@
+package com.codex.voidweaver.jobs;
+
+import com.codex.voidweaver.model.dto.JobDto;
+import com.codex.voidweaver.model.enums.JobStatus;
+import com.codex.voidweaver.upstream.CancellationToken;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * One detached generation and the events it has produced
+ *
+ * The generation writes into the job as its sink and never waits on a client. Every
+ * event gets the next sequence number and is kept in a bounded replay buffer (oldest
+ * dropped first; the final event is always the newest, so it is never lost). SSE
+ * connections subscribe from a sequence number and are pumped on the delivery
+ * executor, one pump per subscriber, so a slow client only delays itself. A subscriber
+ * whose next event has already been dropped first gets a "gap" event (without an id)
+ * naming the missed range, so it knows to refetch state instead of assuming it has
+ * seen everything.
+ */
+@Slf4j
+public class GenerationJob implements GenerationEventSink {
+
+    private record Event(long id, String name, Object data) {
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private long cursor;
+        private boolean scheduled;
+        private boolean closed;
+
+        Subscriber(SseEmitter emitter, long cursor) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+        }
+    }
+
+    private final String id;
+    private final Instant createdAt = Instant.now();
+    private final CancellationToken token = new CancellationToken();
+    private final int replayCapacity;
+    private final Executor delivery;
+
+    private final ArrayDeque<Event> events = new ArrayDeque<>();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private long lastEventId = 0;
+    private JobStatus status = JobStatus.RUNNING;
+    private Instant finishedAt;
+
+    GenerationJob(String id, int replayCapacity, Executor delivery) {
+        this.id = id;
+        this.replayCapacity = replayCapacity;
+        this.delivery = delivery;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public CancellationToken getToken() {
+        return token;
+    }
+
+    @Override
+    public void send(String name, Object data) {
+        synchronized (this) {
+            if (status != JobStatus.RUNNING) {
+                return;
+            }
+            append(name, data);
+        }
+    }
+
+    @Override
+    public void complete() {
+        finish(JobStatus.SUCCEEDED);
+    }
+
+    @Override
+    public void completeWithError(Throwable error) {
+        finish(JobStatus.FAILED);
+    }
+
+    /**
+     * Stop the generation; subscribers get a final "cancelled" event
+     *
+     * @return false if the job had already finished
+     */
+    public boolean cancel() {
+        synchronized (this) {
+            if (status != JobStatus.RUNNING) {
+                return false;
+            }
+            append("cancelled", "Generation cancelled");
+            status = JobStatus.CANCELLED;
+            finishedAt = Instant.now();
+            wakeAll();
+        }
+        token.cancel();
+        return true;
+    }
+
+    /**
+     * Stream events after lastEventId (all retained ones if null), then live events
+     * until the job finishes
+     */
+    public void subscribe(SseEmitter emitter, Long lastEventId) {
+        Subscriber subscriber = new Subscriber(emitter, lastEventId != null ? lastEventId : 0);
+        emitter.onCompletion(() -> close(subscriber));
+        emitter.onTimeout(() -> close(subscriber));
+        emitter.onError(e -> close(subscriber));
+        synchronized (this) {
+            subscribers.add(subscriber);
+            wake(subscriber);
+        }
+    }
+
+    /** Complete every open connection, e.g. before shutdown */
+    public void disconnectAll() {
+        List<Subscriber> open;
+        synchronized (this) {
+            open = new ArrayList<>(subscribers);
+        }
+        open.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    public synchronized boolean isFinished() {
+        return status != JobStatus.RUNNING;
+    }
+
+    /** Null while running */
+    public synchronized Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    /** Finished before the given instant (running jobs never are) */
+    public synchronized boolean finishedBefore(Instant instant) {
+        return finishedAt != null && finishedAt.isBefore(instant);
+    }
+
+    public synchronized JobDto toDto() {
+        return JobDto.builder()
+                .id(id)
+                .status(status)
+                .createdAt(createdAt.toString())
+                .finishedAt(finishedAt != null ? finishedAt.toString() : null)
+                .lastEventId(lastEventId)
+                .build();
+    }
+
+    private void finish(JobStatus outcome) {
+        synchronized (this) {
+            if (status != JobStatus.RUNNING) {
+                return;
+            }
+            status = outcome;
+            finishedAt = Instant.now();
+            wakeAll();
+        }
+    }
+
+    /** Caller holds the lock */
+    private void append(String name, Object data) {
+        events.addLast(new Event(++lastEventId, name, data));
+        if (events.size() > replayCapacity) {
+            events.removeFirst();
+        }
+        wakeAll();
+    }
+
+    /** Caller holds the lock */
+    private void wakeAll() {
+        subscribers.forEach(this::wake);
+    }
+
+    /** Caller holds the lock */
+    private void wake(Subscriber subscriber) {
+        if (subscriber.scheduled || subscriber.closed) {
+            return;
+        }
+        subscriber.scheduled = true;
+        try {
+            delivery.execute(() -> pump(subscriber));
+        } catch (RejectedExecutionException e) {
+            // No delivery thread free: drop the connection, the client resumes from its last event id
+            subscriber.scheduled = false;
+            subscriber.closed = true;
+            subscribers.remove(subscriber);
+            subscriber.emitter.complete();
+        }
+    }
+
+    private void pump(Subscriber subscriber) {
+        while (true) {
+            List<Event> batch = new ArrayList<>();
+            boolean finished;
+            long missedTo = 0;
+            synchronized (this) {
+                for (Event event : events) {
+                    if (event.id() > subscriber.cursor) {
+                        batch.add(event);
+                    }
+                }
+                if (!batch.isEmpty() && batch.get(0).id() > subscriber.cursor + 1) {
+                    missedTo = batch.get(0).id() - 1;
+                }
+                finished = status != JobStatus.RUNNING;
+                if (batch.isEmpty() || subscriber.closed) {
+                    subscriber.scheduled = false;
+                    if (finished && !subscriber.closed) {
+                        subscriber.closed = true;
+                        subscribers.remove(subscriber);
+                    } else {
+                        return;
+                    }
+                }
+            }
+            if (batch.isEmpty()) {
+                subscriber.emitter.complete();
+                return;
+            }
+
+            try {
+                if (missedTo > 0) {
+                    // No id: the client's Last-Event-ID stays where it was until real events follow
+                    subscriber.emitter.send(SseEmitter.event()
+                            .name("gap")
+                            .data(Map.of("missedFrom", subscriber.cursor + 1, "missedTo", missedTo)));
+                }
+                for (Event event : batch) {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(Long.toString(event.id()))
+                            .name(event.name())
+                            .data(event.data()));
+                    subscriber.cursor = event.id();
+                }
+            } catch (Exception e) {
+                log.debug("Job {} subscriber dropped: {}", id, e.getMessage());
+                close(subscriber);
+                return;
+            }
+        }
+    }
+
+    private synchronized void close(Subscriber subscriber) {
+        subscriber.closed = true;
+        subscribers.remove(subscriber);
+    }
+}
@@ -0,0 +1,163 @@
+package com.codex.voidweaver.jobs;
+
+import com.codex.voidweaver.exception.ApiException;
+import com.codex.voidweaver.model.dto.GenerateRequest;
+import com.codex.voidweaver.scheduling.Lane;
+import com.codex.voidweaver.scheduling.RequestScheduler;
+import com.codex.voidweaver.service.ImageService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Detached generations that outlive the connection that started them
+ *
+ * A job runs on the bulk lane like a streaming generation, but writes its events into
+ * the job instead of a socket. Clients attach and re-attach to the event stream with
+ * Last-Event-ID; a dropped connection no longer loses the generation. Finished jobs are
+ * kept for a TTL so a late client still gets the result, then expire; a background sweep
+ * removes them even when no new jobs arrive, since each holds its image payloads.
+ *
+ * Jobs live in this instance's memory only: a reconnect must reach the same instance
+ * (sticky routing), and a restart or deploy loses every job, running or finished. The
+ * finished image itself is still recorded in generation history.
+ */
+@Slf4j
+@Component
+public class JobRegistry {
+
+    private final ImageService imageService;
+    private final RequestScheduler requestScheduler;
+    private final int replayCapacity;
+    private final int maxJobs;
+    private final Duration ttl;
+    private final long streamTimeoutMs;
+    private final ThreadPoolExecutor delivery;
+    private final ScheduledExecutorService expiry;
+    private final Map<String, GenerationJob> jobs = new ConcurrentHashMap<>();
+
+    public JobRegistry(ImageService imageService, RequestScheduler requestScheduler, MeterRegistry meterRegistry,
+            @Value("${voidweaver.jobs.replay-capacity:256}") int replayCapacity,
+            @Value("${voidweaver.jobs.max-jobs:200}") int maxJobs,
+            @Value("${voidweaver.jobs.ttl-minutes:30}") long ttlMinutes,
+            @Value("${voidweaver.jobs.stream-timeout-ms:300000}") long streamTimeoutMs,
+            @Value("${voidweaver.jobs.delivery-threads:256}") int deliveryThreads) {
+        this.imageService = imageService;
+        this.requestScheduler = requestScheduler;
+        this.replayCapacity = replayCapacity;
+        this.maxJobs = maxJobs;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.streamTimeoutMs = streamTimeoutMs;
+        // Pumps only block on client sockets; idle subscribers hold no thread
+        AtomicInteger counter = new AtomicInteger();
+        this.delivery = new ThreadPoolExecutor(0, deliveryThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "job-delivery-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        this.expiry = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "job-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepSeconds = Math.max(1, Math.min(ttl.toSeconds(), 60));
+        expiry.scheduleWithFixedDelay(this::expire, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+
+        Gauge.builder("voidweaver.jobs.retained", jobs, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Queue a detached generation
+     *
+     * @throws ApiException SERVER_BUSY if the registry is full of running jobs or the lane is full
+     */
+    public GenerationJob create(GenerateRequest request, String tenant, int cost) {
+        makeRoom();
+        GenerationJob job = new GenerationJob(UUID.randomUUID().toString(), replayCapacity, delivery);
+        jobs.put(job.getId(), job);
+        try {
+            requestScheduler.execute(Lane.BULK, tenant, cost,
+                    () -> imageService.generateImageStream(request, job, job.getToken()));
+        } catch (ApiException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        log.info("Job {} queued for engine {}", job.getId(), request.getEngine());
+        return job;
+    }
+
+    /**
+     * @throws ApiException NOT_FOUND if the job never existed or has expired
+     */
+    public GenerationJob find(String id) {
+        GenerationJob job = jobs.get(id);
+        if (job == null) {
+            throw new ApiException("Job not found or expired: " + id, "NOT_FOUND");
+        }
+        return job;
+    }
+
+    /**
+     * Event stream of the job, resuming after lastEventId (from the start if null)
+     */
+    public SseEmitter attach(String id, Long lastEventId) {
+        GenerationJob job = find(id);
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        job.subscribe(emitter, lastEventId);
+        return emitter;
+    }
+
+    public GenerationJob cancel(String id) {
+        GenerationJob job = find(id);
+        if (job.cancel()) {
+            log.info("Job {} cancelled", id);
+        }
+        return job;
+    }
+
+    /** Drop finished jobs past their TTL */
+    private void expire() {
+        Instant cutoff = Instant.now().minus(ttl);
+        jobs.values().removeIf(job -> job.finishedBefore(cutoff));
+    }
+
+    /** Expire finished jobs past their TTL, then evict the oldest finished one if still full */
+    private void makeRoom() {
+        expire();
+        if (jobs.size() < maxJobs) {
+            return;
+        }
+        GenerationJob oldest = jobs.values().stream()
+                .filter(GenerationJob::isFinished)
+                .min(Comparator.comparing(GenerationJob::getFinishedAt))
+                .orElseThrow(() -> new ApiException("Too many running jobs, please retry shortly", "SERVER_BUSY"));
+        jobs.remove(oldest.getId());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Close the streams cleanly; the jobs themselves do not survive the shutdown
+        jobs.values().forEach(GenerationJob::disconnectAll);
+        expiry.shutdownNow();
+        delivery.shutdown();
+    }
+}
@@ -0,0 +1,33 @@
+package com.codex.voidweaver.jobs;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Sink writing straight to one SSE connection; events are lost if it drops
+ */
+public class SseEmitterSink implements GenerationEventSink {
+
+    private final SseEmitter emitter;
+
+    public SseEmitterSink(SseEmitter emitter) {
+        this.emitter = emitter;
+    }
+
+    @Override
+    public void send(String name, Object data) throws IOException {
+        emitter.send(SseEmitter.event().name(name).data(Objects.requireNonNull(data)));
+    }
+
+    @Override
+    public void complete() {
+        emitter.complete();
+    }
+
+    @Override
+    public void completeWithError(Throwable error) {
+        emitter.completeWithError(error);
+    }
+}
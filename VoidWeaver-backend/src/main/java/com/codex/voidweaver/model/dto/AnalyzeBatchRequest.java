@@ -0,0 +1,49 @@
+package com.codex.voidweaver.model.dto;
+
+import com.codex.voidweaver.model.enums.BatchMode;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量分析请求
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnalyzeBatchRequest {
+
+    /** 批次 ID (可选)；中断后用相同 ID 重新提交即可跳过已完成的图片 */
+    @Pattern(regexp = "[A-Za-z0-9_-]{1,64}", message = "batchId may only contain letters, digits, '-' and '_'")
+    private String batchId;
+
+    /** 待分析图片 */
+    @NotEmpty(message = "Images are required")
+    @Valid
+    private List<BatchImageDto> images;
+
+    /** Gemini API Key (留空则使用服务端密钥池) */
+    private String geminiApiKey;
+
+    /** 分析模式，默认 parallel */
+    private BatchMode mode;
+
+    /** parallel 模式下同时进行的请求数，默认 4 */
+    @Min(1)
+    @Max(8)
+    private Integer concurrency;
+
+    /** packed 模式下每次请求包含的图片数，默认 4 */
+    @Min(1)
+    @Max(8)
+    private Integer packSize;
+}
@@ -0,0 +1,25 @@
+package com.codex.voidweaver.model.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量分析中的单张图片
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchImageDto {
+
+    /** 客户端图片标识 (批次内唯一，用于断点续传) */
+    @NotBlank(message = "Image id is required")
+    private String id;
+
+    /** Base64 图片数据 */
+    @NotBlank(message = "Image data is required")
+    private String imageData;
+}
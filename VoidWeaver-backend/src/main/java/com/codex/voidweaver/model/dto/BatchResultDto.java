@@ -0,0 +1,33 @@
+package com.codex.voidweaver.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量分析结果 (NDJSON 每行一条)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchResultDto {
+
+    private String batchId;
+
+    /** 对应 BatchImageDto.id */
+    private String imageId;
+
+    /** ok / error */
+    private String status;
+
+    /** 分析结果 (status=ok) */
+    private AnalyzeResponse result;
+
+    /** 错误信息 (status=error) */
+    private String error;
+
+    /** 结果来自此前中断批次的检查点 */
+    private Boolean resumed;
+}
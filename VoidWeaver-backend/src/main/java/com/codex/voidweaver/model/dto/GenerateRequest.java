@@ -55,4 +55,14 @@ public class GenerateRequest {
 
     /** 是否开启深度思考模式 */
     private Boolean deepThinking;
+
+    /** 深度思考草图候选数 (1 - 4)；大于 1 时并行生成并选出评分最高的草图 */
+    @Min(value = 1, message = "Sketch count must be at least 1")
+    @Max(value = 4, message = "Sketch count must not exceed 4")
+    private Integer sketchCount;
+
+    /** 随机种子 (0 - 4294967295)；指定后相同参数的请求直接命中结果缓存 */
+    @Min(value = 0, message = "Seed must not be negative")
+    @Max(value = 4294967295L, message = "Seed must not exceed 4294967295")
+    private Long seed;
 }
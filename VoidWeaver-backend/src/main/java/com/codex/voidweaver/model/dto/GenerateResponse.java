@@ -1,5 +1,6 @@
 package com.codex.voidweaver.model.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -17,9 +18,19 @@ public class GenerateResponse {
     /** Base64编码的生成图片 */
     private String imageData;
 
+    /** 生成图片原始字节 (优先于 imageData，序列化时直接写为 Base64) */
+    @JsonIgnore
+    private byte[] imageBytes;
+
     /** 深度思考：草图 (Base64) */
     private String sketchImage;
 
     /** 深度思考：思考过程日志 */
     private java.util.List<String> thinkingLog;
+
+    /** 实际使用的随机种子 (未指定时由服务端生成)，传回即可复现 */
+    private Long seed;
+
+    /** 结果来自缓存，未消耗生成次数 */
+    private Boolean cached;
 }
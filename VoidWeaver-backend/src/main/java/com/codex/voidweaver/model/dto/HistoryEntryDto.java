@@ -0,0 +1,51 @@
+package com.codex.voidweaver.model.dto;
+
+import com.codex.voidweaver.model.enums.EngineType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 生成历史条目 (仅元数据，图片通过 imageHash 单独获取)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistoryEntryDto {
+
+    private Long id;
+
+    /** ISO-8601 生成时间 */
+    private String createdAt;
+
+    private EngineType engine;
+
+    private String prompt;
+
+    private String resolution;
+
+    private Integer steps;
+
+    private Integer scale;
+
+    private Double strength;
+
+    /** 随机种子 */
+    private Long seed;
+
+    private Boolean deepThinking;
+
+    /** 是否为 Img2Img */
+    private Boolean img2img;
+
+    /** 生成图片的 SHA-256 (GET /api/history/images/{hash}) */
+    private String imageHash;
+
+    /** 深度思考草图的 SHA-256 */
+    private String sketchHash;
+
+    /** 图片字节数 */
+    private Integer imageSize;
+}
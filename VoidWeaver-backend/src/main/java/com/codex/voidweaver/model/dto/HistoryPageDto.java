@@ -0,0 +1,23 @@
+package com.codex.voidweaver.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 生成历史分页
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistoryPageDto {
+
+    private List<HistoryEntryDto> entries;
+
+    /** 下一页游标 (传给 before 参数)，没有更多时为 null */
+    private Long nextCursor;
+}
@@ -0,0 +1,35 @@
+package com.codex.voidweaver.model.dto;
+
+import com.codex.voidweaver.model.enums.JobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 异步生成任务
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobDto {
+
+    /** 任务 ID */
+    private String id;
+
+    /** 任务状态 */
+    private JobStatus status;
+
+    /** 创建时间 (ISO-8601) */
+    private String createdAt;
+
+    /** 结束时间 (ISO-8601)，运行中为空 */
+    private String finishedAt;
+
+    /** 最新事件序号，可作为 Last-Event-ID 续传 */
+    private Long lastEventId;
+
+    /** SSE 事件流地址 */
+    private String eventsUrl;
+}
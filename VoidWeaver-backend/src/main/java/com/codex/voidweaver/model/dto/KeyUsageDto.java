@@ -0,0 +1,34 @@
+package com.codex.voidweaver.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 密钥池单个密钥的使用情况
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeyUsageDto {
+
+    /** 池内标识 (如 gemini-0) */
+    private String id;
+
+    /** 密钥末四位 */
+    private String hint;
+
+    /** 当前进行中的调用数 */
+    private Integer inFlight;
+
+    /** 累计调用数 */
+    private Long requests;
+
+    /** 累计 429 次数 */
+    private Long rateLimited;
+
+    /** 剩余隔离时间 (毫秒)，0 表示可用 */
+    private Long quarantinedForMs;
+}
@@ -0,0 +1,19 @@
+package com.codex.voidweaver.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 精炼增量结果 (patch mode)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefinePatchDto {
+    private List<TagOperationDto> operations;
+}
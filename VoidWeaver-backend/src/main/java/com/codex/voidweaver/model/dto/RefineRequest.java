@@ -26,7 +26,9 @@ public class RefineRequest {
     @NotBlank(message = "Instruction is required")
     private String instruction;
 
-    /** Gemini API Key */
-    @NotBlank(message = "Gemini API Key is required")
+    /** Gemini API Key (留空则使用服务端密钥池) */
     private String geminiApiKey;
+
+    /** 增量模式：Gemini 仅返回 add/remove/reweight 操作，由后端合并回完整模块列表 */
+    private Boolean patch;
 }
@@ -6,6 +6,13 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import java.util.List;
 
+/**
+ * 精炼结果
+ *
+ * modules 始终是请求中提交的完整模块列表 (同样顺序，含锁定与未改动的模块)，
+ * 被精炼的模块已替换为新版本；无论走全量、增量 (patch) 还是按模块路由的精炼都一样。
+ * 流式接口的 "module" 事件只是过程中的进度，最终 "result" 事件遵循同一约定。
+ */
 @Data
 @Builder
 @NoArgsConstructor
@@ -0,0 +1,24 @@
+package com.codex.voidweaver.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 草图结构化评审结果 (Deep Thinking best-of-N)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SketchCritiqueDto {
+
+    /** 质量评分 (0 - 10) */
+    private Integer score;
+
+    /** 最终生成时需要修正的问题 */
+    private List<String> fixes;
+}
@@ -0,0 +1,39 @@
+package com.codex.voidweaver.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 标签增量操作
+ * A single add / remove / reweight operation returned by Gemini in patch mode
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TagOperationDto {
+
+    public static final String ADD = "add";
+    public static final String REMOVE = "remove";
+    public static final String REWEIGHT = "reweight";
+
+    /** 操作类型 (add, remove, reweight) */
+    private String op;
+
+    /** 目标模块名称 (add 时必填) */
+    private String module;
+
+    /** 目标标签 ID (remove / reweight 时必填) */
+    private String tagId;
+
+    /** 新标签文本 (add 时必填) */
+    private String text;
+
+    /** 新权重 (add / reweight) */
+    private Double weight;
+
+    /** 是否隐藏 (add 时可选) */
+    private Boolean hidden;
+}
@@ -0,0 +1,16 @@
+package com.codex.voidweaver.model.enums;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 批量分析模式
+ */
+public enum BatchMode {
+    /** One analyze call per image, several in flight */
+    @JsonProperty("parallel")
+    PARALLEL,
+
+    /** Several images per Gemini call, modules split back out per image */
+    @JsonProperty("packed")
+    PACKED
+}
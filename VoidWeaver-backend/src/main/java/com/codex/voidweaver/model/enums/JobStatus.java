@@ -0,0 +1,20 @@
+package com.codex.voidweaver.model.enums;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 异步生成任务状态
+ */
+public enum JobStatus {
+    @JsonProperty("running")
+    RUNNING,
+
+    @JsonProperty("succeeded")
+    SUCCEEDED,
+
+    @JsonProperty("failed")
+    FAILED,
+
+    @JsonProperty("cancelled")
+    CANCELLED
+}
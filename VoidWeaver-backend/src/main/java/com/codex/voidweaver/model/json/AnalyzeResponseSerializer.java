@@ -0,0 +1,36 @@
+package com.codex.voidweaver.model.json;
+
+import com.codex.voidweaver.model.dto.AnalyzeResponse;
+import com.codex.voidweaver.model.dto.ModuleDto;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+public class AnalyzeResponseSerializer extends StdSerializer<AnalyzeResponse> {
+
+    public AnalyzeResponseSerializer() {
+        super(AnalyzeResponse.class);
+    }
+
+    @Override
+    public void serialize(AnalyzeResponse value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject(value);
+        if (value.getModules() != null) {
+            gen.writeArrayFieldStart("modules");
+            for (ModuleDto module : value.getModules()) {
+                if (module == null) {
+                    gen.writeNull();
+                } else {
+                    ModuleDtoSerializer.write(module, gen);
+                }
+            }
+            gen.writeEndArray();
+        }
+        if (value.getRawPrompt() != null) {
+            gen.writeStringField("rawPrompt", value.getRawPrompt());
+        }
+        gen.writeEndObject();
+    }
+}
@@ -0,0 +1,22 @@
+package com.codex.voidweaver.model.json;
+
+import com.codex.voidweaver.model.dto.AnalyzeResponse;
+import com.codex.voidweaver.model.dto.GenerateResponse;
+import com.codex.voidweaver.model.dto.ModuleDto;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * Dedicated serializers for the largest / most frequent response DTOs
+ *
+ * Registered as a bean so Spring Boot adds it to the shared ObjectMapper
+ * (controllers, SSE events and the Gemini request bodies alike).
+ */
+public class DtoSerializationModule extends SimpleModule {
+
+    public DtoSerializationModule() {
+        super("voidweaver-dto");
+        addSerializer(GenerateResponse.class, new GenerateResponseSerializer());
+        addSerializer(AnalyzeResponse.class, new AnalyzeResponseSerializer());
+        addSerializer(ModuleDto.class, new ModuleDtoSerializer());
+    }
+}
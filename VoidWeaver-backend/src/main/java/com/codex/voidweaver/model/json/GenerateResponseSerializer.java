@@ -0,0 +1,47 @@
+package com.codex.voidweaver.model.json;
+
+import com.codex.voidweaver.model.dto.GenerateResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes the (multi-megabyte) image straight from bytes with {@link JsonGenerator#writeBinary(byte[])},
+ * which base64-encodes into the output buffer instead of building an intermediate String
+ */
+public class GenerateResponseSerializer extends StdSerializer<GenerateResponse> {
+
+    public GenerateResponseSerializer() {
+        super(GenerateResponse.class);
+    }
+
+    @Override
+    public void serialize(GenerateResponse value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject(value);
+        if (value.getImageBytes() != null) {
+            gen.writeFieldName("imageData");
+            gen.writeBinary(value.getImageBytes());
+        } else if (value.getImageData() != null) {
+            gen.writeStringField("imageData", value.getImageData());
+        }
+        if (value.getSketchImage() != null) {
+            gen.writeStringField("sketchImage", value.getSketchImage());
+        }
+        if (value.getThinkingLog() != null) {
+            gen.writeArrayFieldStart("thinkingLog");
+            for (String line : value.getThinkingLog()) {
+                gen.writeString(line);
+            }
+            gen.writeEndArray();
+        }
+        if (value.getSeed() != null) {
+            gen.writeNumberField("seed", value.getSeed());
+        }
+        if (value.getCached() != null) {
+            gen.writeBooleanField("cached", value.getCached());
+        }
+        gen.writeEndObject();
+    }
+}
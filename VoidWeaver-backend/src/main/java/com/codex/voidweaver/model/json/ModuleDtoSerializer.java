@@ -0,0 +1,66 @@
+package com.codex.voidweaver.model.json;
+
+import com.codex.voidweaver.model.dto.ModuleDto;
+import com.codex.voidweaver.model.dto.TagDto;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Hand-written ModuleDto / TagDto writer; same field names, order and null handling as bean serialization
+ */
+public class ModuleDtoSerializer extends StdSerializer<ModuleDto> {
+
+    public ModuleDtoSerializer() {
+        super(ModuleDto.class);
+    }
+
+    @Override
+    public void serialize(ModuleDto value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        write(value, gen);
+    }
+
+    static void write(ModuleDto module, JsonGenerator gen) throws IOException {
+        gen.writeStartObject(module);
+        if (module.getName() != null) {
+            gen.writeStringField("name", module.getName());
+        }
+        if (module.getDisplayName() != null) {
+            gen.writeStringField("displayName", module.getDisplayName());
+        }
+        if (module.getLocked() != null) {
+            gen.writeBooleanField("locked", module.getLocked());
+        }
+        if (module.getTags() != null) {
+            gen.writeArrayFieldStart("tags");
+            for (TagDto tag : module.getTags()) {
+                writeTag(tag, gen);
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeTag(TagDto tag, JsonGenerator gen) throws IOException {
+        if (tag == null) {
+            gen.writeNull();
+            return;
+        }
+        gen.writeStartObject(tag);
+        if (tag.getText() != null) {
+            gen.writeStringField("text", tag.getText());
+        }
+        if (tag.getWeight() != null) {
+            gen.writeNumberField("weight", tag.getWeight());
+        }
+        if (tag.getId() != null) {
+            gen.writeStringField("id", tag.getId());
+        }
+        if (tag.getHidden() != null) {
+            gen.writeBooleanField("hidden", tag.getHidden());
+        }
+        gen.writeEndObject();
+    }
+}
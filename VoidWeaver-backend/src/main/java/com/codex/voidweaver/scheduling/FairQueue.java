@@ -0,0 +1,129 @@
+package com.codex.voidweaver.scheduling;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Deficit round robin over per-tenant FIFO queues
+ *
+ * Every tenant with queued work is visited in turn and credited a quantum; it may
+ * dequeue tasks while its credit covers their cost. A tenant with ten queued
+ * deep-thinking runs therefore gets its fair share of workers, not all of them.
+ */
+final class FairQueue {
+
+    static final class Task {
+        final String tenant;
+        final int cost;
+        final Runnable work;
+        final long enqueuedAt = System.nanoTime();
+
+        Task(String tenant, int cost, Runnable work) {
+            this.tenant = tenant;
+            this.cost = cost;
+            this.work = work;
+        }
+    }
+
+    private static final class TenantQueue {
+        final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        int deficit;
+    }
+
+    private final int quantum;
+    private final int capacity;
+    private final int perTenantCapacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<String, TenantQueue> tenants = new HashMap<>();
+    /** Tenants with queued work, in visiting order */
+    private final ArrayDeque<String> active = new ArrayDeque<>();
+    private int size;
+
+    /**
+     * @param quantum credit per visit; at least the largest task cost so every visit can make progress
+     */
+    FairQueue(int quantum, int capacity, int perTenantCapacity) {
+        this.quantum = quantum;
+        this.capacity = capacity;
+        this.perTenantCapacity = perTenantCapacity;
+    }
+
+    /**
+     * @return false if the lane or the tenant's share of it is full
+     */
+    boolean offer(Task task) {
+        lock.lock();
+        try {
+            TenantQueue queue = tenants.get(task.tenant);
+            if (size >= capacity || (queue != null && queue.tasks.size() >= perTenantCapacity)) {
+                return false;
+            }
+            if (queue == null) {
+                queue = new TenantQueue();
+                tenants.put(task.tenant, queue);
+                active.addLast(task.tenant);
+            }
+            queue.tasks.addLast(task);
+            size++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Next task in fair order, waiting up to the timeout; null on timeout
+     */
+    Task poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (size == 0) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            while (true) {
+                String tenant = active.pollFirst();
+                TenantQueue queue = tenants.get(tenant);
+                Task head = queue.tasks.peekFirst();
+                if (queue.deficit < head.cost) {
+                    queue.deficit += quantum;
+                    active.addLast(tenant);
+                    continue;
+                }
+
+                queue.tasks.pollFirst();
+                queue.deficit -= head.cost;
+                size--;
+                if (queue.tasks.isEmpty()) {
+                    // Idle tenants do not bank credit
+                    tenants.remove(tenant);
+                } else {
+                    // Keep the turn while the credit lasts
+                    active.addFirst(tenant);
+                }
+                return head;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.codex.voidweaver.scheduling;
+
+/**
+ * Priority lanes; each has its own workers and queue so one kind of work never waits behind the other
+ */
+public enum Lane {
+    /** Analyze / refine: a few seconds of Gemini text, someone is waiting at the screen */
+    INTERACTIVE("interactive"),
+    /** Image generation, including minute-long deep-thinking runs */
+    BULK("bulk");
+
+    private final String key;
+
+    Lane(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,155 @@
+package com.codex.voidweaver.scheduling;
+
+import com.codex.voidweaver.exception.ApiException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs API work on per-lane worker pools with per-tenant fair queuing
+ *
+ * Interactive text calls and image generations have separate workers, so a
+ * burst of minute-long generations cannot delay a refine. Within a lane, tenants
+ * (API key, or client address for pooled-key requests) are served by deficit
+ * round robin weighted by task cost.
+ */
+@Slf4j
+@Component
+public class RequestScheduler {
+
+    /** Task costs: roughly the upstream time each kind of request holds a worker */
+    public static final int COST_TEXT = 1;
+    public static final int COST_IMAGE = 2;
+    public static final int COST_DEEP_THINKING = 4;
+    /** Largest cost any task has: deep thinking with four sketch candidates (GenerateController.cost) */
+    public static final int COST_MAX = COST_DEEP_THINKING + 3 * COST_IMAGE;
+
+    private final Map<Lane, FairQueue> queues = new EnumMap<>(Lane.class);
+    private final Map<Lane, Timer> waitTimers = new EnumMap<>(Lane.class);
+    private final MeterRegistry meterRegistry;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public RequestScheduler(MeterRegistry meterRegistry,
+            @Value("${voidweaver.scheduler.interactive.workers:16}") int interactiveWorkers,
+            @Value("${voidweaver.scheduler.interactive.queue-capacity:256}") int interactiveCapacity,
+            @Value("${voidweaver.scheduler.bulk.workers:4}") int bulkWorkers,
+            @Value("${voidweaver.scheduler.bulk.queue-capacity:64}") int bulkCapacity,
+            @Value("${voidweaver.scheduler.max-queued-per-tenant:8}") int maxQueuedPerTenant) {
+        this.meterRegistry = meterRegistry;
+        startLane(Lane.INTERACTIVE, interactiveWorkers, interactiveCapacity, maxQueuedPerTenant);
+        startLane(Lane.BULK, bulkWorkers, bulkCapacity, maxQueuedPerTenant);
+    }
+
+    /**
+     * Queue work on a lane
+     *
+     * @throws ApiException SERVER_BUSY if the lane or the tenant's share of it is full
+     */
+    public <T> CompletableFuture<T> submit(Lane lane, String tenant, int cost, Supplier<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        FairQueue.Task task = new FairQueue.Task(tenant, cost, () -> {
+            try {
+                future.complete(work.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        if (!queues.get(lane).offer(task)) {
+            meterRegistry.counter("voidweaver.scheduler.rejected", "lane", lane.getKey()).increment();
+            throw new ApiException("Too many queued " + lane.getKey() + " requests, please retry shortly",
+                    "SERVER_BUSY");
+        }
+        return future;
+    }
+
+    /** Fire-and-forget variant for SSE endpoints that report through the emitter */
+    public void execute(Lane lane, String tenant, int cost, Runnable work) {
+        submit(lane, tenant, cost, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Fair-queuing identity: a digest of the caller's API key, else the client address
+     * (requests served from the server-side key pool). The address is the one the
+     * container resolved: X-Forwarded-For is applied by server.forward-headers-strategy
+     * only when the request came through a trusted proxy, so a client cannot pick a new
+     * tenant per request.
+     */
+    public static String tenantOf(String apiKey, HttpServletRequest request) {
+        if (apiKey != null && !apiKey.isBlank()) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+                return "key:" + HexFormat.of().formatHex(digest, 0, 8);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private void startLane(Lane lane, int workerCount, int capacity, int maxQueuedPerTenant) {
+        FairQueue queue = new FairQueue(COST_MAX, capacity, maxQueuedPerTenant);
+        queues.put(lane, queue);
+        Timer waitTimer = Timer.builder("voidweaver.scheduler.queue.wait")
+                .tag("lane", lane.getKey())
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        waitTimers.put(lane, waitTimer);
+        Gauge.builder("voidweaver.scheduler.queue.size", queue, FairQueue::size)
+                .tag("lane", lane.getKey())
+                .register(meterRegistry);
+
+        for (int i = 1; i <= workerCount; i++) {
+            Thread worker = new Thread(() -> work(queue, waitTimer), "lane-" + lane.getKey() + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    private void work(FairQueue queue, Timer waitTimer) {
+        while (running) {
+            FairQueue.Task task;
+            try {
+                task = queue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == null) {
+                continue;
+            }
+            waitTimer.record(System.nanoTime() - task.enqueuedAt, TimeUnit.NANOSECONDS);
+            try {
+                task.work.run();
+            } catch (Throwable t) {
+                log.error("Scheduled task failed", t);
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+}
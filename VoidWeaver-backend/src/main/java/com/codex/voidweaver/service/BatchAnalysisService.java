@@ -0,0 +1,325 @@
+package com.codex.voidweaver.service;
+
+import com.codex.voidweaver.exception.ApiException;
+import com.codex.voidweaver.model.dto.AnalyzeBatchRequest;
+import com.codex.voidweaver.model.dto.AnalyzeRequest;
+import com.codex.voidweaver.model.dto.AnalyzeResponse;
+import com.codex.voidweaver.model.dto.BatchImageDto;
+import com.codex.voidweaver.model.dto.BatchResultDto;
+import com.codex.voidweaver.model.enums.BatchMode;
+import com.codex.voidweaver.scheduling.Lane;
+import com.codex.voidweaver.scheduling.RequestScheduler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * 批量图片分析服务
+ * Runs a batch of analyses on the bulk lane and writes one NDJSON line per image as
+ * each finishes. Successful results are also appended to a per-batch checkpoint
+ * file, so resubmitting the same batchId skips images that already finished.
+ */
+@Slf4j
+@Service
+public class BatchAnalysisService {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int DEFAULT_PACK_SIZE = 4;
+    private static final long MAX_BUSY_WAIT_MS = 30_000;
+
+    private final GeminiService geminiService;
+    private final RequestScheduler requestScheduler;
+    private final ObjectMapper objectMapper;
+    private final Path checkpointDir;
+    private final Duration checkpointTtl;
+    private final long timeoutMs;
+
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    public BatchAnalysisService(GeminiService geminiService, RequestScheduler requestScheduler,
+            ObjectMapper objectMapper,
+            @Value("${voidweaver.batch.checkpoint-dir:./data/batches}") String checkpointDir,
+            @Value("${voidweaver.batch.checkpoint-ttl-hours:24}") long checkpointTtlHours,
+            @Value("${voidweaver.batch.timeout-ms:14400000}") long timeoutMs) {
+        this.geminiService = geminiService;
+        this.requestScheduler = requestScheduler;
+        this.objectMapper = objectMapper;
+        this.checkpointDir = Path.of(checkpointDir);
+        this.checkpointTtl = Duration.ofHours(checkpointTtlHours);
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Async timeout for one batch stream, in place of the global spring.mvc.async.request-timeout
+     */
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    /**
+     * Claim a batch id; fails if a batch with this id is still running
+     */
+    public String begin(AnalyzeBatchRequest request) {
+        String batchId = request.getBatchId() != null ? request.getBatchId() : UUID.randomUUID().toString();
+        if (!running.add(batchId)) {
+            throw new ApiException("Batch " + batchId + " is already running", "BATCH_IN_PROGRESS");
+        }
+        return batchId;
+    }
+
+    /**
+     * Analyze every image not yet in the checkpoint, streaming results to out.
+     * Must follow {@link #begin}; releases the batch id when done.
+     */
+    public void run(AnalyzeBatchRequest request, String batchId, String tenant, OutputStream out) throws IOException {
+        try {
+            Files.createDirectories(checkpointDir);
+            purgeExpiredCheckpoints();
+            Path checkpoint = checkpointDir.resolve(batchId + ".ndjson");
+
+            try (BatchWriter writer = new BatchWriter(out, checkpoint)) {
+                Map<String, BatchResultDto> finished = readCheckpoint(checkpoint);
+                for (BatchResultDto result : finished.values()) {
+                    result.setResumed(true);
+                    writer.emit(result, false);
+                }
+
+                Map<String, BatchImageDto> pending = new LinkedHashMap<>();
+                for (BatchImageDto image : request.getImages()) {
+                    if (!finished.containsKey(image.getId())) {
+                        pending.putIfAbsent(image.getId(), image);
+                    }
+                }
+                log.info("Batch {}: {} images, {} from checkpoint, mode {}", batchId, request.getImages().size(),
+                        finished.size(), request.getMode());
+
+                dispatch(request, batchId, tenant, new ArrayList<>(pending.values()), writer);
+            }
+        } finally {
+            running.remove(batchId);
+        }
+    }
+
+    /**
+     * Submits work units (one image, or one pack) to the bulk lane, at most
+     * concurrency in flight, and waits for all of them
+     */
+    private void dispatch(AnalyzeBatchRequest request, String batchId, String tenant, List<BatchImageDto> images,
+            BatchWriter writer) {
+        boolean packed = request.getMode() == BatchMode.PACKED;
+        int unitSize = packed ? valueOr(request.getPackSize(), DEFAULT_PACK_SIZE) : 1;
+        int concurrency = valueOr(request.getConcurrency(), DEFAULT_CONCURRENCY);
+        Semaphore inFlight = new Semaphore(concurrency);
+
+        for (int i = 0; i < images.size() && !writer.isClientGone(); i += unitSize) {
+            List<BatchImageDto> unit = images.subList(i, Math.min(images.size(), i + unitSize));
+            inFlight.acquireUninterruptibly();
+            int cost = Math.min(unit.size(), RequestScheduler.COST_DEEP_THINKING);
+            submit(tenant, cost, () -> {
+                if (packed) {
+                    analyzePack(batchId, unit, request.getGeminiApiKey(), writer);
+                } else {
+                    analyzeOne(batchId, unit.get(0), request.getGeminiApiKey(), writer);
+                }
+                return null;
+            }).whenComplete((result, error) -> {
+                if (error != null) {
+                    unit.forEach(image -> writer.emit(failure(batchId, image, error), true));
+                }
+                inFlight.release();
+            });
+        }
+        inFlight.acquireUninterruptibly(concurrency);
+    }
+
+    /**
+     * Queue a unit on the bulk lane, backing off while the lane is full
+     */
+    private CompletableFuture<Void> submit(String tenant, int cost, Supplier<Void> work) {
+        long deadline = System.currentTimeMillis() + MAX_BUSY_WAIT_MS;
+        long backoffMs = 100;
+        while (true) {
+            try {
+                return requestScheduler.submit(Lane.BULK, tenant, cost, work);
+            } catch (ApiException e) {
+                if (!"SERVER_BUSY".equals(e.getCode()) || System.currentTimeMillis() > deadline) {
+                    return CompletableFuture.failedFuture(e);
+                }
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return CompletableFuture.failedFuture(e);
+                }
+                backoffMs = Math.min(2000, backoffMs * 2);
+            }
+        }
+    }
+
+    private void analyzeOne(String batchId, BatchImageDto image, String apiKey, BatchWriter writer) {
+        try {
+            AnalyzeResponse response = geminiService.analyzeImage(AnalyzeRequest.builder()
+                    .imageData(image.getImageData())
+                    .geminiApiKey(apiKey)
+                    .build());
+            writer.emit(success(batchId, image, response), true);
+        } catch (Exception e) {
+            writer.emit(failure(batchId, image, e), true);
+        }
+    }
+
+    /**
+     * One Gemini call for the whole pack; images it returned no result for are
+     * retried individually
+     */
+    private void analyzePack(String batchId, List<BatchImageDto> pack, String apiKey, BatchWriter writer) {
+        List<AnalyzeResponse> results;
+        try {
+            results = geminiService.analyzeImages(pack.stream().map(BatchImageDto::getImageData).toList(), apiKey);
+        } catch (Exception e) {
+            pack.forEach(image -> writer.emit(failure(batchId, image, e), true));
+            return;
+        }
+        for (int i = 0; i < pack.size(); i++) {
+            if (results.get(i) != null) {
+                writer.emit(success(batchId, pack.get(i), results.get(i)), true);
+            } else {
+                log.warn("Batch {}: no packed result for image {}, analyzing it alone", batchId, pack.get(i).getId());
+                analyzeOne(batchId, pack.get(i), apiKey, writer);
+            }
+        }
+    }
+
+    private Map<String, BatchResultDto> readCheckpoint(Path checkpoint) throws IOException {
+        Map<String, BatchResultDto> finished = new LinkedHashMap<>();
+        if (!Files.exists(checkpoint)) {
+            return finished;
+        }
+        for (String line : Files.readAllLines(checkpoint, StandardCharsets.UTF_8)) {
+            try {
+                BatchResultDto result = objectMapper.readValue(line, BatchResultDto.class);
+                finished.put(result.getImageId(), result);
+            } catch (IOException e) {
+                // A torn last line from a crash mid-write; that image is simply redone
+                log.debug("Skipping unreadable checkpoint line in {}", checkpoint);
+            }
+        }
+        return finished;
+    }
+
+    private void purgeExpiredCheckpoints() {
+        Instant cutoff = Instant.now().minus(checkpointTtl);
+        try (Stream<Path> files = Files.list(checkpointDir)) {
+            files.filter(file -> file.toString().endsWith(".ndjson")).forEach(file -> {
+                try {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (IOException e) {
+                    log.debug("Could not purge checkpoint {}: {}", file, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Could not list batch checkpoints: {}", e.getMessage());
+        }
+    }
+
+    private static BatchResultDto success(String batchId, BatchImageDto image, AnalyzeResponse response) {
+        return BatchResultDto.builder()
+                .batchId(batchId)
+                .imageId(image.getId())
+                .status("ok")
+                .result(response)
+                .build();
+    }
+
+    private static BatchResultDto failure(String batchId, BatchImageDto image, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
+        return BatchResultDto.builder()
+                .batchId(batchId)
+                .imageId(image.getId())
+                .status("error")
+                .error(cause.getMessage())
+                .build();
+    }
+
+    private static int valueOr(Integer value, int fallback) {
+        return value != null ? value : fallback;
+    }
+
+    /**
+     * Serializes result lines to the response and successful ones to the checkpoint.
+     * A client that goes away stops new dispatches; in-flight work still lands in the checkpoint.
+     */
+    private final class BatchWriter implements AutoCloseable {
+        private final OutputStream out;
+        private final BufferedWriter checkpoint;
+        private volatile boolean clientGone;
+
+        BatchWriter(OutputStream out, Path checkpointFile) throws IOException {
+            this.out = out;
+            this.checkpoint = Files.newBufferedWriter(checkpointFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        synchronized void emit(BatchResultDto result, boolean record) {
+            try {
+                byte[] line = objectMapper.writeValueAsBytes(result);
+                if (record && "ok".equals(result.getStatus())) {
+                    checkpoint.write(new String(line, StandardCharsets.UTF_8));
+                    checkpoint.newLine();
+                    checkpoint.flush();
+                }
+                if (!clientGone) {
+                    out.write(line);
+                    out.write('\n');
+                    out.flush();
+                }
+            } catch (IOException e) {
+                if (!clientGone) {
+                    log.warn("Batch client disconnected: {}", e.getMessage());
+                    clientGone = true;
+                }
+            }
+        }
+
+        boolean isClientGone() {
+            return clientGone;
+        }
+
+        @Override
+        public synchronized void close() {
+            try {
+                checkpoint.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
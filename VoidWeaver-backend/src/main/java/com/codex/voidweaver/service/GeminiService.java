@@ -1,18 +1,37 @@
 package com.codex.voidweaver.service;
 
+import com.codex.voidweaver.config.UpstreamProperties;
+import com.codex.voidweaver.history.AnalysisCache;
+import com.codex.voidweaver.imaging.PaletteExtractor;
 import com.codex.voidweaver.model.dto.AnalyzeRequest;
 import com.codex.voidweaver.model.dto.AnalyzeResponse;
 import com.codex.voidweaver.model.dto.ModuleDto;
 import com.codex.voidweaver.model.dto.RefineRequest;
+import com.codex.voidweaver.model.dto.RefinePatchDto;
 import com.codex.voidweaver.model.dto.RefineResponse;
+import com.codex.voidweaver.model.dto.SketchCritiqueDto;
+import com.codex.voidweaver.model.dto.TagDto;
+import com.codex.voidweaver.upstream.CancellationToken;
+import com.codex.voidweaver.upstream.GeminiContextCache;
+import com.codex.voidweaver.upstream.HedgedCallExecutor;
+import com.codex.voidweaver.upstream.PayloadLogger;
+import com.codex.voidweaver.upstream.TimeoutPolicy;
+import com.codex.voidweaver.upstream.UpstreamGuard;
+import com.codex.voidweaver.upstream.UpstreamOperation;
+import com.codex.voidweaver.utils.ModulePatcher;
+import com.codex.voidweaver.utils.ModuleStreamParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Gemini AI Service
@@ -26,12 +45,24 @@ public class GeminiService {
 
         private final OkHttpClient httpClient;
         private final ObjectMapper objectMapper;
+        private final HedgedCallExecutor hedgedCallExecutor;
+        private final UpstreamGuard upstreamGuard;
+        private final UpstreamProperties upstreamProperties;
+        private final GeminiContextCache contextCache;
+        private final AnalysisCache analysisCache;
+        private final PayloadLogger payloadLogger;
+        private final TimeoutPolicy timeoutPolicy;
+        private final RefineRouter refineRouter;
+        private final PaletteExtractor paletteExtractor;
 
-        // private static final String GEMINI_API_URL =
-        // "https://generativelanguage.googleapis.com/v1beta/models/gemini-3-pro-preview:generateContent";
-        private static final String GEMINI_API_URL = "https://generativelanguage.googleapis.com/v1beta/models/gemini-3-flash-preview:generateContent";
         private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
+        /** Cached analyses are only valid for the instruction and model that produced them */
+        @PostConstruct
+        void openAnalysisCache() {
+                analysisCache.open(ANALYZE_INSTRUCTION, upstreamProperties.getGeminiTextModel());
+        }
+
         /**
          * Analyze image and extract 8 modules
          * Uses geminiApiKey from frontend
@@ -39,40 +70,83 @@ public class GeminiService {
         public AnalyzeResponse analyzeImage(AnalyzeRequest request) {
                 log.info("Analyzing image with Gemini 2.0 Flash API...");
 
+                // Near-duplicates of an earlier upload reuse its modules
+                Optional<AnalysisCache.Fingerprint> fingerprint = analysisCache.fingerprint(request.getImageData());
+                if (fingerprint.isPresent()) {
+                        Optional<AnalyzeResponse> reused = analysisCache.lookup(fingerprint.get());
+                        if (reused.isPresent()) {
+                                return reused.get();
+                        }
+                }
+
                 try {
-                        Map<String, Object> requestBody = buildAnalyzeRequestBody(request.getImageData());
-                        String jsonBody = objectMapper.writeValueAsString(requestBody);
-
-                        String url = GEMINI_API_URL + "?key=" + request.getGeminiApiKey();
-                        Request httpRequest = new Request.Builder()
-                                        .url(url)
-                                        .post(RequestBody.create(jsonBody, JSON))
-                                        .build();
-
-                        try (Response response = httpClient.newCall(httpRequest).execute()) {
-                                if (!response.isSuccessful()) {
-                                        String errorBody = response.body() != null ? response.body().string() : "null";
-                                        log.error("Gemini API Verification Failed. Code: {}, Body: {}", response.code(),
-                                                        errorBody);
-
-                                        String errorCode = "GEMINI_ERROR";
-                                        if (response.code() == 401 || response.code() == 403)
-                                                errorCode = "INVALID_API_KEY";
-                                        if (response.code() == 429)
-                                                errorCode = "RATE_LIMITED";
-
-                                        throw new com.codex.voidweaver.exception.ApiException(
-                                                        "Gemini API failed: " + response.code(), errorCode);
-                                }
+                        // Exact colours are measured locally while Gemini describes the image
+                        CompletableFuture<List<TagDto>> palette = paletteExtractor
+                                        .extractAsync(request.getImageData());
+                        Map<String, Object> content = buildAnalyzeContent(request.getImageData());
+
+                        AnalyzeResponse analysis = upstreamGuard.execute(UpstreamOperation.GEMINI_ANALYZE, null,
+                                        request.getGeminiApiKey(),
+                                        apiKey -> executePrompt(UpstreamOperation.GEMINI_ANALYZE, ANALYZE_INSTRUCTION,
+                                                        content, apiKey,
+                                                        body -> generateContentRequest(body, apiKey)),
+                                        response -> {
+                                                checkResponse(response, "Gemini API");
+
+                                                String responseBody = response.body().string();
+                                                payloadLogger.debug(log, "Gemini response", responseBody);
+
+                                                return parseAnalyzeResponse(responseBody);
+                                        });
+                        PaletteExtractor.merge(analysis, paletteExtractor.await(palette));
+                        fingerprint.ifPresent(hash -> analysisCache.store(hash, analysis));
+                        return analysis;
+
+                } catch (com.codex.voidweaver.exception.ApiException e) {
+                        throw e;
+                } catch (Exception e) {
+                        log.error("Failed to analyze image with Gemini: {}", e.getMessage(), e);
+                        throw new RuntimeException("Gemini API call failed: " + e.getMessage(), e);
+                }
+        }
 
-                                String responseBody = response.body().string();
-                                log.debug("Gemini response: {}", responseBody);
+        /**
+         * Analyze several images in one Gemini call
+         *
+         * @return one response per input image, in order; null where Gemini returned no
+         *         usable result for that image
+         */
+        public List<AnalyzeResponse> analyzeImages(List<String> imageData, String geminiApiKey) {
+                log.info("Analyzing {} images in one Gemini request...", imageData.size());
 
-                                return parseAnalyzeResponse(responseBody);
+                try {
+                        List<CompletableFuture<List<TagDto>>> palettes = imageData.stream()
+                                        .map(paletteExtractor::extractAsync)
+                                        .toList();
+                        Map<String, Object> content = buildPackedAnalyzeContent(imageData);
+
+                        List<AnalyzeResponse> results = upstreamGuard.execute(
+                                        UpstreamOperation.GEMINI_ANALYZE_BATCH, null, geminiApiKey,
+                                        apiKey -> executePrompt(UpstreamOperation.GEMINI_ANALYZE_BATCH,
+                                                        PACKED_ANALYZE_INSTRUCTION, content, apiKey,
+                                                        body -> generateContentRequest(body, apiKey)),
+                                        response -> {
+                                                checkResponse(response, "Gemini Batch");
+
+                                                String responseBody = response.body().string();
+                                                payloadLogger.debug(log, "Gemini batch response", responseBody);
+
+                                                return parsePackedAnalyzeResponse(responseBody, imageData.size());
+                                        });
+                        for (int i = 0; i < results.size(); i++) {
+                                PaletteExtractor.merge(results.get(i), paletteExtractor.await(palettes.get(i)));
                         }
+                        return results;
 
+                } catch (com.codex.voidweaver.exception.ApiException e) {
+                        throw e;
                 } catch (Exception e) {
-                        log.error("Failed to analyze image with Gemini: {}", e.getMessage(), e);
+                        log.error("Failed to analyze image batch with Gemini: {}", e.getMessage(), e);
                         throw new RuntimeException("Gemini API call failed: " + e.getMessage(), e);
                 }
         }
@@ -81,157 +155,461 @@ public class GeminiService {
          * Refine modules based on natural language instruction
          */
         public RefineResponse refineModules(RefineRequest request) {
-                log.info("Refining modules with instruction: {}", request.getInstruction());
+                log.info("Refining modules...");
 
                 try {
                         List<ModuleDto> unlockedModules = request.getModules().stream()
                                         .filter(module -> !module.getLocked())
                                         .toList();
 
-                        log.info("Found {} unlocked modules to refine", unlockedModules.size());
+                        boolean patchMode = Boolean.TRUE.equals(request.getPatch());
+                        log.info("Found {} unlocked modules to refine (patch mode: {})", unlockedModules.size(),
+                                        patchMode);
 
-                        Map<String, Object> requestBody = buildRefineRequestBody(unlockedModules,
-                                        request.getInstruction());
-                        String jsonBody = objectMapper.writeValueAsString(requestBody);
+                        List<ModuleDto> routed = refineRouter.route(unlockedModules, request.getInstruction());
+                        if (!routed.isEmpty()) {
+                                return refineRouted(request, routed, patchMode);
+                        }
+                        return refineAll(request, unlockedModules, patchMode);
 
-                        String url = GEMINI_API_URL + "?key=" + request.getGeminiApiKey();
-                        Request httpRequest = new Request.Builder()
-                                        .url(url)
-                                        .post(RequestBody.create(jsonBody, JSON))
-                                        .build();
+                } catch (com.codex.voidweaver.exception.ApiException e) {
+                        throw e;
+                } catch (Exception e) {
+                        log.error("Failed to refine modules with Gemini: {}", e.getMessage(), e);
+                        throw new RuntimeException("Gemini Refine failed: " + e.getMessage(), e);
+                }
+        }
+
+        /** All unlocked modules in one Gemini call */
+        private RefineResponse refineAll(RefineRequest request, List<ModuleDto> unlockedModules, boolean patchMode)
+                        throws Exception {
+                String instruction = patchMode ? REFINE_PATCH_INSTRUCTION : REFINE_INSTRUCTION;
+                Map<String, Object> content = buildRefineContent(unlockedModules, request.getInstruction());
+
+                return upstreamGuard.execute(UpstreamOperation.GEMINI_REFINE, null,
+                                request.getGeminiApiKey(),
+                                apiKey -> executePrompt(UpstreamOperation.GEMINI_REFINE, instruction,
+                                                content, apiKey,
+                                                body -> generateContentRequest(body, apiKey)),
+                                response -> {
+                                        checkResponse(response, "Gemini Refine");
+
+                                        String responseBody = response.body().string();
+                                        payloadLogger.debug(log, "Gemini refine response", responseBody);
+
+                                        if (patchMode) {
+                                                return parseRefinePatchResponse(responseBody,
+                                                                request.getModules());
+                                        }
+                                        return mergeRefined(request, parseRefineResponse(responseBody));
+                                });
+        }
+
+        /** Full submitted list with Gemini's modules in place, see {@link RefineResponse} */
+        private RefineResponse mergeRefined(RefineRequest request, RefineResponse refined) {
+                return RefineResponse.builder()
+                                .modules(ModulePatcher.mergeRefined(request.getModules(), refined.getModules()))
+                                .build();
+        }
 
-                        try (Response response = httpClient.newCall(httpRequest).execute()) {
-                                if (!response.isSuccessful()) {
-                                        String errorBody = response.body() != null ? response.body().string() : "null";
-                                        log.error("Gemini Refine Failed. Code: {}, Body: {}", response.code(),
-                                                        errorBody);
+        /**
+         * Refines only the routed modules, one Gemini call each in parallel, and returns
+         * all submitted modules with those replaced
+         */
+        private RefineResponse refineRouted(RefineRequest request, List<ModuleDto> routed, boolean patchMode) {
+                String instruction = patchMode ? REFINE_PATCH_INSTRUCTION : REFINE_INSTRUCTION;
+                List<ModuleDto> refined = refineRouter.refineEach(routed,
+                                module -> refineModule(module, request, instruction, patchMode));
+                return mergeRefined(request, RefineResponse.builder().modules(refined).build());
+        }
 
-                                        String errorCode = "GEMINI_ERROR";
-                                        if (response.code() == 401 || response.code() == 403)
-                                                errorCode = "INVALID_API_KEY";
-                                        if (response.code() == 429)
-                                                errorCode = "RATE_LIMITED";
+        private ModuleDto refineModule(ModuleDto module, RefineRequest request, String instruction,
+                        boolean patchMode) throws Exception {
+                Map<String, Object> content = buildRefineContent(List.of(module), request.getInstruction());
+
+                return upstreamGuard.execute(UpstreamOperation.GEMINI_REFINE, null, request.getGeminiApiKey(),
+                                apiKey -> executePrompt(UpstreamOperation.GEMINI_REFINE, instruction, content,
+                                                apiKey, body -> generateContentRequest(body, apiKey)),
+                                response -> {
+                                        checkResponse(response, "Gemini Refine");
+
+                                        String responseBody = response.body().string();
+                                        payloadLogger.debug(log, "Gemini refine response (" + module.getName() + ")",
+                                                        responseBody);
+
+                                        List<ModuleDto> modules = patchMode
+                                                        ? parseRefinePatchResponse(responseBody, List.of(module))
+                                                                        .getModules()
+                                                        : parseRefineResponse(responseBody).getModules();
+                                        ModuleDto refined = modules == null ? null : modules.stream()
+                                                        .filter(candidate -> module.getName()
+                                                                        .equals(candidate.getName()))
+                                                        .findFirst()
+                                                        .orElse(modules.size() == 1 ? modules.get(0) : null);
+                                        if (refined == null || refined.getTags() == null) {
+                                                throw new com.codex.voidweaver.exception.ApiException(
+                                                                "Gemini Refine returned no " + module.getName()
+                                                                                + " module",
+                                                                "GEMINI_ERROR");
+                                        }
+                                        // Identity stays the submitted module's; only the tags are Gemini's
+                                        refined.setName(module.getName());
+                                        refined.setDisplayName(module.getDisplayName());
+                                        refined.setLocked(false);
+                                        return refined;
+                                });
+        }
 
-                                        throw new com.codex.voidweaver.exception.ApiException(
-                                                        "Gemini Refine failed: " + response.code(), errorCode);
+        /**
+         * Streaming analyze: emits each module as an SSE "module" event as soon as
+         * Gemini has finished writing it, then the full response as "result"
+         */
+        public void analyzeImageStream(AnalyzeRequest request, SseEmitter emitter) {
+                log.info("Streaming image analysis with Gemini...");
+                try {
+                        Optional<AnalysisCache.Fingerprint> fingerprint = analysisCache
+                                        .fingerprint(request.getImageData());
+                        Optional<AnalyzeResponse> reused = fingerprint.isPresent()
+                                        ? analysisCache.lookup(fingerprint.get())
+                                        : Optional.empty();
+                        if (reused.isPresent()) {
+                                for (ModuleDto module : reused.get().getModules()) {
+                                        sendEvent(emitter, "module", module);
                                 }
+                                emitter.send(SseEmitter.event().name("result").data(reused.get()));
+                                emitter.complete();
+                                return;
+                        }
 
-                                String responseBody = response.body().string();
-                                log.debug("Gemini refine response: {}", responseBody);
+                        CompletableFuture<List<TagDto>> palette = paletteExtractor
+                                        .extractAsync(request.getImageData());
+                        Map<String, Object> content = buildAnalyzeContent(request.getImageData());
+                        String jsonContent = streamModules(UpstreamOperation.GEMINI_ANALYZE, ANALYZE_INSTRUCTION,
+                                        content,
+                                        request.getGeminiApiKey(), "Analyze",
+                                        module -> {
+                                                if (PaletteExtractor.ATMOSPHERE.equals(module.getName())) {
+                                                        PaletteExtractor.merge(module,
+                                                                        paletteExtractor.await(palette));
+                                                }
+                                                sendEvent(emitter, "module", module);
+                                        });
+
+                        AnalyzeResponse response = objectMapper.readValue(jsonContent, AnalyzeResponse.class);
+                        PaletteExtractor.merge(response, paletteExtractor.await(palette));
+                        fingerprint.ifPresent(hash -> analysisCache.store(hash, response));
+                        emitter.send(SseEmitter.event().name("result").data(Objects.requireNonNull(response)));
+                        emitter.complete();
+                } catch (Exception e) {
+                        failStream(emitter, "Analysis failed: ", e);
+                }
+        }
 
-                                return parseRefineResponse(responseBody);
+        /**
+         * Streaming refine. Routed refines and patch mode have no single module array to
+         * stream, so they run the blocking refine and emit the modules afterwards
+         */
+        public void refineModulesStream(RefineRequest request, SseEmitter emitter) {
+                log.info("Streaming refine...");
+                try {
+                        RefineResponse response;
+                        List<ModuleDto> unlockedModules = request.getModules().stream()
+                                        .filter(module -> !module.getLocked())
+                                        .toList();
+                        List<ModuleDto> routed = refineRouter.route(unlockedModules, request.getInstruction());
+                        if (!routed.isEmpty()) {
+                                // Per-module calls are small enough that streaming them gains nothing
+                                response = refineRouted(request, routed, Boolean.TRUE.equals(request.getPatch()));
+                                Set<String> routedNames = new HashSet<>();
+                                routed.forEach(module -> routedNames.add(module.getName()));
+                                for (ModuleDto module : response.getModules()) {
+                                        if (routedNames.contains(module.getName())) {
+                                                sendEvent(emitter, "module", module);
+                                        }
+                                }
+                        } else if (Boolean.TRUE.equals(request.getPatch())) {
+                                response = refineAll(request, unlockedModules, true);
+                                for (ModuleDto module : response.getModules()) {
+                                        sendEvent(emitter, "module", module);
+                                }
+                        } else {
+                                Map<String, Object> content = buildRefineContent(unlockedModules,
+                                                request.getInstruction());
+                                String jsonContent = streamModules(UpstreamOperation.GEMINI_REFINE,
+                                                REFINE_INSTRUCTION, content,
+                                                request.getGeminiApiKey(), "Refine",
+                                                module -> sendEvent(emitter, "module", module));
+                                response = mergeRefined(request,
+                                                objectMapper.readValue(jsonContent, RefineResponse.class));
                         }
+                        emitter.send(SseEmitter.event().name("result").data(Objects.requireNonNull(response)));
+                        emitter.complete();
+                } catch (Exception e) {
+                        failStream(emitter, "Refine failed: ", e);
+                }
+        }
 
+        /**
+         * Calls streamGenerateContent and feeds every text fragment into a
+         * {@link ModuleStreamParser}. Returns the complete JSON text once the stream ends.
+         */
+        private String streamModules(UpstreamOperation operation, String instruction, Map<String, Object> content,
+                        String apiKey, String label, Consumer<ModuleDto> onModule) throws Exception {
+                return upstreamGuard.execute(operation, null, apiKey,
+                                key -> executePrompt(operation, instruction, content, key,
+                                                body -> new Request.Builder()
+                                                .url(upstreamProperties.geminiModelUrl(
+                                                                upstreamProperties.getGeminiTextModel(),
+                                                                "streamGenerateContent") + "?alt=sse")
+                                                .addHeader("x-goog-api-key", key)
+                                                .post(body)
+                                                .build()),
+                                response -> {
+                                        checkResponse(response, "Gemini " + label + " stream");
+
+                                        ModuleStreamParser parser = new ModuleStreamParser();
+                                        okio.BufferedSource source = response.body().source();
+                                        String line;
+                                        while ((line = source.readUtf8Line()) != null) {
+                                                if (!line.startsWith("data:")) {
+                                                        continue;
+                                                }
+                                                JsonNode chunk = objectMapper.readTree(line.substring(5).trim());
+                                                String fragment = chunk.path("candidates").path(0)
+                                                                .path("content").path("parts").path(0).path("text")
+                                                                .asText("");
+                                                for (String moduleJson : parser.feed(fragment)) {
+                                                        onModule.accept(objectMapper.readValue(moduleJson,
+                                                                        ModuleDto.class));
+                                                }
+                                        }
+
+                                        payloadLogger.debug(log, "Gemini " + label + " stream content", parser.getText());
+                                        return parser.getText();
+                                });
+        }
+
+        /**
+         * Maps a non-2xx Gemini response to an ApiException with a client-facing code
+         */
+        private void checkResponse(Response response, String label) throws java.io.IOException {
+                if (response.isSuccessful()) {
+                        return;
+                }
+                String errorBody = response.body() != null ? response.body().string() : "null";
+                payloadLogger.error(log, label + " failed with HTTP " + response.code(), errorBody);
+
+                String errorCode = "GEMINI_ERROR";
+                if (response.code() == 401 || response.code() == 403)
+                        errorCode = "INVALID_API_KEY";
+                if (response.code() == 429)
+                        errorCode = "RATE_LIMITED";
+
+                throw new com.codex.voidweaver.exception.ApiException(
+                                label + " failed: " + response.code(), errorCode);
+        }
+
+        private void sendEvent(SseEmitter emitter, String name, Object data) {
+                try {
+                        emitter.send(SseEmitter.event().name(name).data(Objects.requireNonNull(data)));
                 } catch (Exception e) {
-                        log.error("Failed to refine modules with Gemini: {}", e.getMessage(), e);
-                        throw new RuntimeException("Gemini Refine failed: " + e.getMessage(), e);
+                        log.error("Failed to send {} event", name, e);
+                }
+        }
+
+        private void failStream(SseEmitter emitter, String prefix, Exception e) {
+                log.error("Gemini streaming error: {}", e.getMessage(), e);
+                try {
+                        emitter.send(SseEmitter.event().name("error").data(prefix + e.getMessage()));
+                        emitter.completeWithError(e);
+                } catch (Exception ex) {
+                        // Ignore
                 }
         }
 
-        private Map<String, Object> buildAnalyzeRequestBody(String imageData) {
-                String systemPrompt = "You are an expert image analyst. Analyze the given image and extract descriptive tags into 8 categories.\n"
-                                +
-                                "Provide all outputs in English only. Do not use any other language.\n" +
-                                "\n" +
-                                "Return a JSON object with this exact structure:\n" +
-                                "{\n" +
-                                "  \"modules\": [\n" +
-                                "    {\n" +
-                                "      \"name\": \"style\",\n" +
-                                "      \"displayName\": \"Style\",\n" +
-                                "      \"locked\": false,\n" +
-                                "      \"tags\": [\n" +
-                                "        {\"id\": \"uuid-here\", \"text\": \"tag description\", \"weight\": 1.0}\n" +
-                                "      ]\n" +
-                                "    },\n" +
-                                "    // ... 8 modules total\n" +
-                                "  ],\n" +
-                                "  \"rawPrompt\": \"all tags joined as comma-separated string\"\n" +
-                                "}\n" +
-                                "\n" +
-                                "IMPORTANT: Each tag object MUST have exactly these 3 fields:\n" +
-                                "- \"id\": a unique UUID (generate with standard UUID format)\n" +
-                                "- \"text\": the tag content in English (e.g. \"silver hair\", \"dynamic pose\")\n" +
-                                "- \"weight\": a number, default 1.0\n" +
-                                "\n" +
-                                "The 8 modules are:\n" +
-                                "1. style - Art style, artistic references\n" +
-                                "2. subject - Main character/object\n" +
-                                "3. pose - Action, posture, viewing angle\n" +
-                                "4. costume - Clothing, accessories\n" +
-                                "5. background - Scene, location\n" +
-                                "6. composition - Camera angle, framing\n" +
-                                "7. atmosphere - Lighting, mood\n" +
-                                "8. extra - Additional details\n" +
-                                "\n" +
-                                "CRITICAL UPDATE: You must now also extract PRECISE COLORS from the image.\n" +
-                                "For the 'atmosphere' module, allow adding tags with \"hidden\": true.\n" +
-                                "Identify 5-7 dominant specific colors or color palettes (e.g. \"#FF0000\", \"crimson red\", \"midnight blue palette\").\n"
-                                +
-                                "Add these as tags to the 'atmosphere' module with \"hidden\": true.\n" +
-                                "\n" +
-                                "Return ONLY valid JSON, no markdown.\n" +
-                                "Ensure all tag text values are in English.\n";
+        /*
+         * Static system instructions. They are identical on every call, so they go in
+         * systemInstruction (or a context cache, see executePrompt) and only the image or
+         * modules travel in the per-request contents.
+         */
+        private static final String ANALYZE_INSTRUCTION = "You are an expert image analyst. Analyze the given image and extract descriptive tags into 8 categories.\n"
+                        +
+                        "Provide all outputs in English only. Do not use any other language.\n" +
+                        "\n" +
+                        "Return a JSON object with this exact structure:\n" +
+                        "{\n" +
+                        "  \"modules\": [\n" +
+                        "    {\n" +
+                        "      \"name\": \"style\",\n" +
+                        "      \"displayName\": \"Style\",\n" +
+                        "      \"locked\": false,\n" +
+                        "      \"tags\": [\n" +
+                        "        {\"id\": \"uuid-here\", \"text\": \"tag description\", \"weight\": 1.0}\n" +
+                        "      ]\n" +
+                        "    },\n" +
+                        "    // ... 8 modules total\n" +
+                        "  ],\n" +
+                        "  \"rawPrompt\": \"all tags joined as comma-separated string\"\n" +
+                        "}\n" +
+                        "\n" +
+                        "IMPORTANT: Each tag object MUST have exactly these 3 fields:\n" +
+                        "- \"id\": a unique UUID (generate with standard UUID format)\n" +
+                        "- \"text\": the tag content in English (e.g. \"silver hair\", \"dynamic pose\")\n" +
+                        "- \"weight\": a number, default 1.0\n" +
+                        "\n" +
+                        "The 8 modules are:\n" +
+                        "1. style - Art style, artistic references\n" +
+                        "2. subject - Main character/object\n" +
+                        "3. pose - Action, posture, viewing angle\n" +
+                        "4. costume - Clothing, accessories\n" +
+                        "5. background - Scene, location\n" +
+                        "6. composition - Camera angle, framing\n" +
+                        "7. atmosphere - Lighting, mood\n" +
+                        "8. extra - Additional details\n" +
+                        "\n" +
+                        "Return ONLY valid JSON, no markdown.\n" +
+                        "Ensure all tag text values are in English.\n";
+
+        private static final String PACKED_ANALYZE_INSTRUCTION = ANALYZE_INSTRUCTION + "\n" +
+                        "BATCH MODE: The user message contains several images, each preceded by a text part \"Image N\" (N starts at 1).\n"
+                        +
+                        "Analyze every image independently and return a JSON object of this form instead:\n" +
+                        "{\"results\": [{\"image\": 1, \"modules\": [...], \"rawPrompt\": \"...\"}, ...]}\n" +
+                        "with exactly one entry per image, each following the structure above.\n" +
+                        "Return ONLY valid JSON, no markdown.\n";
+
+        private static final String REFINE_INSTRUCTION = "You are an AI prompt editor. Update the modules given in the user message according to the user instruction.\n"
+                        +
+                        "Provide all outputs in English only. Even if the instruction is in Chinese, translate and output the result in English.\n"
+                        +
+                        "\n" +
+                        "Return a JSON object with:\n" +
+                        "{\n" +
+                        "  \"modules\": [ALL modules with updates applied]\n" +
+                        "}\n" +
+                        "\n" +
+                        "IMPORTANT: You MUST return ALL modules that were provided in \"Current modules\", even if you only modified some of them.\n"
+                        +
+                        "- If a module is relevant to the instruction, update its tags accordingly\n" +
+                        "- If a module is NOT relevant to the instruction, return it unchanged with its original tags\n"
+                        +
+                        "- The output \"modules\" array must have the SAME NUMBER of modules as the input\n" +
+                        "\n" +
+                        "CRITICAL: Each tag object MUST have exactly these 3 fields:\n" +
+                        "- \"id\": a unique UUID\n" +
+                        "- \"text\": the tag content in English (NOT \"name\" or \"displayName\"!)\n" +
+                        "- \"weight\": a number, default 1.0\n" +
+                        "\n" +
+                        "Keep the module \"name\" field identifier UNCHANGED (e.g. \"style\", \"pose\").\n" +
+                        "Keep the same structure: name, displayName, locked, tags.\n" +
+                        "Generate new UUIDs for modified tags.\n" +
+                        "Return ONLY valid JSON.\n" +
+                        "Ensure all module displayNames and tag text values are in English.\n";
 
+        /**
+         * Patch mode: ask Gemini only for tag operations keyed by tag id instead of
+         * the full module list, so output tokens scale with the size of the edit
+         */
+        private static final String REFINE_PATCH_INSTRUCTION = "You are an AI prompt editor. Work out the minimal tag edits needed to apply the user instruction to the modules given in the user message.\n"
+                        +
+                        "Provide all outputs in English only. Even if the instruction is in Chinese, translate and output the result in English.\n"
+                        +
+                        "\n" +
+                        "Return a JSON object with:\n" +
+                        "{\n" +
+                        "  \"operations\": [\n" +
+                        "    {\"op\": \"add\", \"module\": \"costume\", \"text\": \"red scarf\", \"weight\": 1.0},\n" +
+                        "    {\"op\": \"remove\", \"tagId\": \"existing-tag-id\"},\n" +
+                        "    {\"op\": \"reweight\", \"tagId\": \"existing-tag-id\", \"weight\": 1.3}\n" +
+                        "  ]\n" +
+                        "}\n" +
+                        "\n" +
+                        "RULES:\n" +
+                        "- Only use the three operations shown: add, remove, reweight\n" +
+                        "- \"tagId\" MUST be the \"id\" of an existing tag from \"Current modules\"\n" +
+                        "- \"module\" MUST be the \"name\" of one of the provided modules\n" +
+                        "- To change a tag's text, remove it and add the replacement\n" +
+                        "- Do NOT output operations for tags that stay unchanged\n" +
+                        "- If nothing needs to change, return an empty operations array\n" +
+                        "Return ONLY valid JSON.\n" +
+                        "Ensure all tag text values are in English.\n";
+
+        private Map<String, Object> buildAnalyzeContent(String imageData) {
                 return Map.of(
                                 "contents", List.of(Map.of(
-                                                "parts", List.of(
-                                                                Map.of("text", systemPrompt),
-                                                                Map.of("inlineData", Map.of(
-                                                                                "mimeType", "image/png",
-                                                                                "data", imageData))))),
+                                                "role", "user",
+                                                "parts", List.of(Map.of("inlineData", Map.of(
+                                                                "mimeType", "image/png",
+                                                                "data", imageData))))),
+                                "generationConfig", Map.of(
+                                                "responseMimeType", "application/json"));
+        }
+
+        private Map<String, Object> buildPackedAnalyzeContent(List<String> imageData) {
+                List<Map<String, Object>> parts = new ArrayList<>();
+                for (int i = 0; i < imageData.size(); i++) {
+                        parts.add(Map.of("text", "Image " + (i + 1)));
+                        parts.add(Map.of("inlineData", Map.of(
+                                        "mimeType", "image/png",
+                                        "data", imageData.get(i))));
+                }
+                return Map.of(
+                                "contents", List.of(Map.of(
+                                                "role", "user",
+                                                "parts", parts)),
                                 "generationConfig", Map.of(
                                                 "responseMimeType", "application/json"));
         }
 
-        private Map<String, Object> buildRefineRequestBody(List<ModuleDto> modules, String instruction)
+        /** Per-request part of both refine modes */
+        private Map<String, Object> buildRefineContent(List<ModuleDto> modules, String instruction)
                         throws Exception {
                 String modulesJson = objectMapper.writeValueAsString(modules);
-                String systemPrompt = String.format(
-                                "You are an AI prompt editor. Update the following modules according to the user instruction.\n"
-                                                +
-                                                "Provide all outputs in English only. Even if the instruction is in Chinese, translate and output the result in English.\n"
-                                                +
-                                                "\n" +
-                                                "User instruction: %s\n" +
-                                                "\n" +
-                                                "Current modules: %s\n" +
-                                                "\n" +
-                                                "Return a JSON object with:\n" +
-                                                "{\n" +
-                                                "  \"modules\": [ALL modules with updates applied]\n" +
-                                                "}\n" +
-                                                "\n" +
-                                                "IMPORTANT: You MUST return ALL modules that were provided in \"Current modules\", even if you only modified some of them.\n"
-                                                +
-                                                "- If a module is relevant to the instruction, update its tags accordingly\n"
-                                                +
-                                                "- If a module is NOT relevant to the instruction, return it unchanged with its original tags\n"
-                                                +
-                                                "- The output \"modules\" array must have the SAME NUMBER of modules as the input\n"
-                                                +
-                                                "\n" +
-                                                "CRITICAL: Each tag object MUST have exactly these 3 fields:\n" +
-                                                "- \"id\": a unique UUID\n" +
-                                                "- \"text\": the tag content in English (NOT \"name\" or \"displayName\"!)\n"
-                                                +
-                                                "- \"weight\": a number, default 1.0\n" +
-                                                "\n" +
-                                                "Keep the module \"name\" field identifier UNCHANGED (e.g. \"style\", \"pose\").\n"
-                                                +
-                                                "Keep the same structure: name, displayName, locked, tags.\n" +
-                                                "Generate new UUIDs for modified tags.\n" +
-                                                "Return ONLY valid JSON.\n" +
-                                                "Ensure all module displayNames and tag text values are in English.\n",
-                                instruction, modulesJson);
+                String userText = String.format("User instruction: %s\n\nCurrent modules: %s\n", instruction,
+                                modulesJson);
 
                 return Map.of(
                                 "contents", List.of(Map.of(
-                                                "parts", List.of(Map.of("text", systemPrompt)))),
+                                                "role", "user",
+                                                "parts", List.of(Map.of("text", userText)))),
                                 "generationConfig", Map.of(
                                                 "responseMimeType", "application/json"));
         }
 
+        /**
+         * Sends the per-request content with the static instruction attached by context
+         * cache reference when one is ready for this key, else inline. A request whose
+         * cache reference is rejected (cache expired or deleted upstream) is resent once inline.
+         */
+        private Response executePrompt(UpstreamOperation operation, String instruction, Map<String, Object> content,
+                        String apiKey, java.util.function.Function<RequestBody, Request> toRequest)
+                        throws java.io.IOException {
+                Optional<String> cached = contextCache.lookup(apiKey, instruction);
+                Response response = timeoutPolicy.newCall(httpClient,
+                                toRequest.apply(promptBody(instruction, content, cached)), operation).execute();
+                if (cached.isPresent() && (response.code() == 400 || response.code() == 403
+                                || response.code() == 404)) {
+                        log.warn("Gemini rejected context cache {} ({}), resending inline", cached.get(),
+                                        response.code());
+                        response.close();
+                        contextCache.invalidate(apiKey, instruction);
+                        response = timeoutPolicy.newCall(httpClient, toRequest.apply(promptBody(instruction, content,
+                                        Optional.empty())), operation).execute();
+                }
+                return response;
+        }
+
+        private RequestBody promptBody(String instruction, Map<String, Object> content, Optional<String> cached)
+                        throws java.io.IOException {
+                Map<String, Object> body = new LinkedHashMap<>(content);
+                if (cached.isPresent()) {
+                        body.put("cachedContent", cached.get());
+                } else {
+                        body.put("systemInstruction", Map.of("parts", List.of(Map.of("text", instruction))));
+                }
+                return RequestBody.create(objectMapper.writeValueAsBytes(body), JSON);
+        }
+
         private AnalyzeResponse parseAnalyzeResponse(String responseBody) throws Exception {
                 JsonNode root = objectMapper.readTree(responseBody);
                 JsonNode candidates = root.path("candidates");
@@ -248,10 +626,27 @@ public class GeminiService {
                                 .path("text")
                                 .asText();
 
-                log.debug("Extracted JSON content: {}", jsonContent);
                 return objectMapper.readValue(jsonContent, AnalyzeResponse.class);
         }
 
+        private List<AnalyzeResponse> parsePackedAnalyzeResponse(String responseBody, int imageCount)
+                        throws Exception {
+                String jsonContent = extractTextFromResponse(responseBody);
+                if (jsonContent.isEmpty()) {
+                        throw new com.codex.voidweaver.exception.ApiException("No candidates in Gemini response",
+                                        "GEMINI_ERROR");
+                }
+
+                List<AnalyzeResponse> results = new ArrayList<>(Collections.nCopies(imageCount, null));
+                for (JsonNode result : objectMapper.readTree(jsonContent).path("results")) {
+                        int index = result.path("image").asInt(0) - 1;
+                        if (index >= 0 && index < imageCount && result.path("modules").isArray()) {
+                                results.set(index, objectMapper.treeToValue(result, AnalyzeResponse.class));
+                        }
+                }
+                return results;
+        }
+
         private RefineResponse parseRefineResponse(String responseBody) throws Exception {
                 JsonNode root = objectMapper.readTree(responseBody);
                 JsonNode candidates = root.path("candidates");
@@ -268,14 +663,42 @@ public class GeminiService {
                                 .path("text")
                                 .asText();
 
-                log.debug("Extracted JSON content: {}", jsonContent);
                 return objectMapper.readValue(jsonContent, RefineResponse.class);
         }
 
+        private RefineResponse parseRefinePatchResponse(String responseBody, List<ModuleDto> originalModules)
+                        throws Exception {
+                JsonNode root = objectMapper.readTree(responseBody);
+                JsonNode candidates = root.path("candidates");
+
+                if (candidates.isEmpty()) {
+                        throw new com.codex.voidweaver.exception.ApiException("No candidates in Gemini response",
+                                        "GEMINI_ERROR");
+                }
+
+                String jsonContent = candidates.get(0)
+                                .path("content")
+                                .path("parts")
+                                .get(0)
+                                .path("text")
+                                .asText();
+
+                RefinePatchDto patch = objectMapper.readValue(jsonContent, RefinePatchDto.class);
+                List<ModuleDto> merged = ModulePatcher.applyPatch(originalModules, patch.getOperations());
+                return RefineResponse.builder().modules(merged).build();
+        }
+
         /**
          * Analyze sketch and provide critique
          */
         public String critiqueImage(String imageData, String prompt, String apiKey) {
+                return critiqueImage(imageData, prompt, apiKey, null);
+        }
+
+        /**
+         * Critique as part of a cancellable generation
+         */
+        public String critiqueImage(String imageData, String prompt, String apiKey, CancellationToken token) {
                 log.info("Critiquing image with Gemini 2.0 Flash...");
                 try {
                         String systemPrompt = String.format(
@@ -296,31 +719,93 @@ public class GeminiService {
                                         "generationConfig", Map.of(
                                                         "responseMimeType", "text/plain"));
 
-                        String jsonBody = objectMapper.writeValueAsString(requestBody);
-                        String url = GEMINI_API_URL + "?key=" + apiKey;
-
-                        Request httpRequest = new Request.Builder()
-                                        .url(url)
-                                        .post(RequestBody.create(jsonBody, JSON))
-                                        .build();
-
-                        try (Response response = httpClient.newCall(httpRequest).execute()) {
-                                if (!response.isSuccessful()) {
-                                        throw new RuntimeException("Gemini Critique failed: " + response.code());
-                                }
-                                String responseBody = response.body().string();
-                                return extractTextFromResponse(responseBody);
-                        }
+                        RequestBody body = RequestBody.create(objectMapper.writeValueAsString(requestBody), JSON);
+
+                        return upstreamGuard.execute(UpstreamOperation.GEMINI_CRITIQUE, token, apiKey,
+                                        key -> hedgedCallExecutor.execute(httpClient,
+                                                        generateContentRequest(body, key),
+                                                        UpstreamOperation.GEMINI_CRITIQUE, token),
+                                        response -> {
+                                                if (!response.isSuccessful()) {
+                                                        throw new RuntimeException(
+                                                                        "Gemini Critique failed: " + response.code());
+                                                }
+                                                String responseBody = response.body().string();
+                                                return extractTextFromResponse(responseBody);
+                                        });
                 } catch (Exception e) {
                         log.error("Critique failed", e);
                         return "Failed to critique image.";
                 }
         }
 
+        /**
+         * Structured critique for choosing between candidate sketches: a 0-10 score plus the
+         * fixes the final render should apply. Unlike {@link #critiqueImage} failures are
+         * thrown, so the caller can drop the candidate.
+         */
+        public SketchCritiqueDto scoreSketch(String imageData, String prompt, String apiKey, CancellationToken token)
+                        throws Exception {
+                String systemPrompt = String.format(
+                                "Act as an expert art director. Analyze the attached sketch which was generated from the prompt: '%s'.\n"
+                                                +
+                                                "Rate how well it works as the base for a final artwork from 0 (unusable) to 10 (flawless) in \"score\", "
+                                                +
+                                                "judging anatomy, structure, lighting, composition and faithfulness to the prompt.\n"
+                                                +
+                                                "In \"fixes\" give 3 short, imperative commands to FIX its major flaws (e.g., 'Fix the distorted hand').",
+                                prompt);
+
+                Map<String, Object> requestBody = Map.of(
+                                "contents", List.of(Map.of(
+                                                "parts", List.of(
+                                                                Map.of("text", systemPrompt),
+                                                                Map.of("inlineData", Map.of(
+                                                                                "mimeType", "image/png",
+                                                                                "data", imageData))))),
+                                "generationConfig", Map.of(
+                                                "responseMimeType", "application/json",
+                                                "responseSchema", Map.of(
+                                                                "type", "OBJECT",
+                                                                "properties", Map.of(
+                                                                                "score", Map.of("type", "INTEGER"),
+                                                                                "fixes", Map.of("type", "ARRAY",
+                                                                                                "items", Map.of("type", "STRING"))),
+                                                                "required", List.of("score", "fixes"))));
+
+                RequestBody body = RequestBody.create(objectMapper.writeValueAsString(requestBody), JSON);
+
+                return upstreamGuard.execute(UpstreamOperation.GEMINI_CRITIQUE, token, apiKey,
+                                key -> hedgedCallExecutor.execute(httpClient,
+                                                generateContentRequest(body, key),
+                                                UpstreamOperation.GEMINI_CRITIQUE, token),
+                                response -> {
+                                        checkResponse(response, "Gemini Sketch Score");
+                                        SketchCritiqueDto critique = objectMapper.readValue(
+                                                        extractTextFromResponse(response.body().string()),
+                                                        SketchCritiqueDto.class);
+                                        if (critique.getScore() == null) {
+                                                throw new com.codex.voidweaver.exception.ApiException(
+                                                                "Sketch score missing", "GEMINI_ERROR");
+                                        }
+                                        if (critique.getFixes() == null) {
+                                                critique.setFixes(List.of());
+                                        }
+                                        return critique;
+                                });
+        }
+
         /**
          * Suggest Danbooru style tags
          */
         public String suggestStyleTags(String prompt, String apiKey) {
+                return suggestStyleTags(prompt, apiKey, null);
+        }
+
+        /**
+         * Tag suggestion as part of a cancellable generation
+         */
+        public String suggestStyleTags(String prompt, String apiKey, CancellationToken token) {
                 log.info("Suggesting Danbooru tags...");
                 try {
                         String systemPrompt = String.format(
@@ -333,27 +818,38 @@ public class GeminiService {
                                         "contents", List.of(Map.of(
                                                         "parts", List.of(Map.of("text", systemPrompt)))));
 
-                        String jsonBody = objectMapper.writeValueAsString(requestBody);
-                        String url = GEMINI_API_URL + "?key=" + apiKey;
-
-                        Request httpRequest = new Request.Builder()
-                                        .url(url)
-                                        .post(RequestBody.create(jsonBody, JSON))
-                                        .build();
-
-                        try (Response response = httpClient.newCall(httpRequest).execute()) {
-                                if (!response.isSuccessful()) {
-                                        throw new RuntimeException("Gemini Tag Suggestion failed: " + response.code());
-                                }
-                                String responseBody = response.body().string();
-                                return extractTextFromResponse(responseBody);
-                        }
+                        RequestBody body = RequestBody.create(objectMapper.writeValueAsString(requestBody), JSON);
+
+                        return upstreamGuard.execute(UpstreamOperation.GEMINI_SUGGEST, token, apiKey,
+                                        key -> hedgedCallExecutor.execute(httpClient,
+                                                        generateContentRequest(body, key),
+                                                        UpstreamOperation.GEMINI_SUGGEST, token),
+                                        response -> {
+                                                if (!response.isSuccessful()) {
+                                                        throw new RuntimeException(
+                                                                        "Gemini Tag Suggestion failed: " + response.code());
+                                                }
+                                                String responseBody = response.body().string();
+                                                return extractTextFromResponse(responseBody);
+                                        });
                 } catch (Exception e) {
                         log.error("Tag suggestion failed", e);
                         return "masterpiece, best quality";
                 }
         }
 
+        private String generateContentUrl() {
+                return upstreamProperties.geminiModelUrl(upstreamProperties.getGeminiTextModel(), "generateContent");
+        }
+
+        private Request generateContentRequest(RequestBody body, String apiKey) {
+                return new Request.Builder()
+                                .url(generateContentUrl())
+                                .addHeader("x-goog-api-key", apiKey)
+                                .post(body)
+                                .build();
+        }
+
         private String extractTextFromResponse(String responseBody) throws Exception {
                 JsonNode root = objectMapper.readTree(responseBody);
                 JsonNode candidates = root.path("candidates");
@@ -1,9 +1,22 @@
 package com.codex.voidweaver.service;
 
+import com.codex.voidweaver.config.UpstreamProperties;
 import com.codex.voidweaver.exception.ApiException;
+import com.codex.voidweaver.history.HistoryService;
+import com.codex.voidweaver.history.ResultCache;
+import com.codex.voidweaver.imaging.Img2ImgPreprocessor;
+import com.codex.voidweaver.jobs.GenerationEventSink;
+import com.codex.voidweaver.imaging.Img2ImgPreprocessor.PreparedImage;
 import com.codex.voidweaver.model.dto.GenerateRequest;
 import com.codex.voidweaver.model.dto.GenerateResponse;
 import com.codex.voidweaver.model.enums.EngineType;
+import com.codex.voidweaver.upstream.ApiKeyPools;
+import com.codex.voidweaver.upstream.CancellationToken;
+import com.codex.voidweaver.upstream.PayloadLogger;
+import com.codex.voidweaver.upstream.TimeoutPolicy;
+import com.codex.voidweaver.upstream.UpstreamGuard;
+import com.codex.voidweaver.upstream.UpstreamOperation;
+import com.codex.voidweaver.utils.PromptFormatter;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -12,11 +25,10 @@ import okhttp3.*;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 图片生成服务 - 真正对接 Google Gemini Image Generation
@@ -27,23 +39,54 @@ import java.util.Map;
 public class ImageService {
 
     private final ObjectMapper objectMapper;
-    private final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(Duration.ofSeconds(30))
-            .readTimeout(Duration.ofSeconds(300)) // Deep Thinking需要更长时间
-            .build();
+    // Shared client: one connection pool, warmed by StartupWarmup, for Gemini and NovelAI
+    private final OkHttpClient httpClient;
 
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
+    private static final String GEMINI_IMAGE_MODEL = "gemini-3-pro-image-preview";
+    private static final String NOVELAI_MODEL = "nai-diffusion-3";
+    private static final int NOVELAI_DEFAULT_STEPS = 28;
+    private static final int NOVELAI_DEFAULT_SCALE = 6;
+
     public GenerateResponse generateImage(GenerateRequest request) {
+        return generateImage(request, null);
+    }
+
+    private GenerateResponse generateImage(GenerateRequest request, CancellationToken token) {
         log.info("Generating image with engine: {}", request.getEngine());
 
+        // Seeded requests are deterministic: a repeat is served from the result cache
+        String cacheKey = cacheKeyFor(request);
+        Optional<GenerateResponse> cached = resultCache.lookup(cacheKey, request.getSeed());
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        GenerateResponse response;
         if (request.getEngine() == EngineType.GOOGLE_IMAGEN) {
-            return generateWithGoogleGemini(request);
+            response = generateWithGoogleGemini(request, token);
         } else if (request.getEngine() == EngineType.NOVELAI) {
-            return generateWithNovelAI(request);
+            response = generateWithNovelAI(request, token);
         } else {
             throw new ApiException("Unsupported engine type: " + request.getEngine(), "INVALID_REQUEST");
         }
+
+        historyService.recordAsync(request, response, cacheKey);
+        return response;
+    }
+
+    /**
+     * Result cache key over the parameters that actually reach the upstream model
+     */
+    private String cacheKeyFor(GenerateRequest request) {
+        if (request.getEngine() == EngineType.NOVELAI) {
+            return resultCache.keyFor(request, NOVELAI_MODEL,
+                    request.getSteps() != null ? request.getSteps() : NOVELAI_DEFAULT_STEPS,
+                    request.getScale() != null ? request.getScale() : NOVELAI_DEFAULT_SCALE);
+        }
+        // Gemini has no steps / scale
+        return resultCache.keyFor(request, GEMINI_IMAGE_MODEL, null, null);
     }
 
     /**
@@ -55,8 +98,9 @@ public class ImageService {
             JsonNode candidates = root.path("candidates");
 
             if (candidates.isEmpty()) {
-                log.error("Gemini returned no candidates. Full response: {}", json);
-                throw new ApiException("Gemini returned no candidates. Response: " + json, "IMAGEN_ERROR");
+                payloadLogger.error(log, "Gemini returned no candidates", json);
+                throw new ApiException("Gemini returned no candidates. Response: " + PayloadLogger.excerpt(json, 500),
+                        "IMAGEN_ERROR");
             }
 
             // 提取 Part 里的 inlineData
@@ -70,118 +114,112 @@ public class ImageService {
                 }
             }
 
-            log.error("No image data in response. Full response: {}", json);
-            throw new ApiException("No image data found. Response: " + json, "IMAGEN_ERROR");
+            payloadLogger.error(log, "No image data in Gemini response", json);
+            throw new ApiException("No image data found. Response: " + PayloadLogger.excerpt(json, 500), "IMAGEN_ERROR");
         } catch (com.fasterxml.jackson.core.JsonParseException e) {
-            log.error("JSON Parse Error. Invalid JSON from Gemini. First 200 chars: {}",
-                    json.substring(0, Math.min(200, json.length())));
+            payloadLogger.error(log, "Invalid JSON from Gemini", json);
             throw new ApiException("Invalid JSON from Gemini API: " + e.getMessage(), "IMAGEN_ERROR");
         }
     }
 
+    private final GeminiService geminiService;
+    private final UpstreamGuard upstreamGuard;
+    private final UpstreamProperties upstreamProperties;
+    private final HistoryService historyService;
+    private final ResultCache resultCache;
+    private final ApiKeyPools apiKeyPools;
+    private final Img2ImgPreprocessor img2ImgPreprocessor;
+    private final PayloadLogger payloadLogger;
+    private final TimeoutPolicy timeoutPolicy;
+    private final SketchExplorer sketchExplorer;
+
     /**
-     * Preprocess the prompt for Gemini:
-     * Convert "weight::text::" format to natural language descriptors.
-     * Example: "1.5::cat::" -> "highly detailed cat"
+     * Start fitting the img2img input to the requested resolution on the image-processing
+     * pool; null when the request has no input image
      */
-    private String processGeminiPrompt(String prompt) {
-        if (prompt == null || prompt.isEmpty()) {
-            return prompt;
+    private CompletableFuture<PreparedImage> prepareInput(GenerateRequest request, Img2ImgPreprocessor.Format format) {
+        if (request.getImage() == null || request.getImage().isEmpty()) {
+            return null;
         }
+        int[] size = parseResolution(request.getResolution());
+        return img2ImgPreprocessor.prepareAsync(request.getImage(), size[0], size[1], format);
+    }
 
-        // Regex to match "weight::text::"
-        // Groups: 1 = weight (number), 2 = text
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("(\\d+(?:\\.\\d+)?)::(.*?)::");
-        java.util.regex.Matcher matcher = pattern.matcher(prompt);
-
-        StringBuilder sb = new StringBuilder();
-        int lastEnd = 0;
-
-        while (matcher.find()) {
-            // Append text before the match
-            sb.append(prompt, lastEnd, matcher.start());
-
-            try {
-                double weight = Double.parseDouble(matcher.group(1));
-                String text = matcher.group(2).trim();
-                String descriptors = "";
-
-                if (weight >= 2.0) {
-                    descriptors = "extremely detailed, emphasized " + text;
-                } else if (weight >= 1.5) {
-                    descriptors = "highly detailed, " + text;
-                } else if (weight >= 1.2) {
-                    descriptors = "detailed, " + text;
-                } else if (weight >= 0.9) {
-                    descriptors = text; // Normal weight
-                } else if (weight >= 0.8) {
-                    descriptors = "subtle " + text;
-                } else {
-                    descriptors = "faint, slightly visible " + text;
-                }
-                sb.append(descriptors);
-
-            } catch (NumberFormatException e) {
-                // If weight parsing fails, just append original text
-                sb.append(matcher.group(0));
-            }
-
-            lastEnd = matcher.end();
+    private static int[] parseResolution(String resolution) {
+        try {
+            String[] dimensions = resolution.split("x");
+            return new int[] { Integer.parseInt(dimensions[0].trim()), Integer.parseInt(dimensions[1].trim()) };
+        } catch (RuntimeException e) {
+            throw new ApiException("Invalid resolution: " + resolution, "INVALID_REQUEST");
         }
-
-        // Append remaining text
-        sb.append(prompt.substring(lastEnd));
-
-        return sb.toString();
     }
 
-    private final GeminiService geminiService;
-
     /**
      * 使用 Google Gemini (Imagen) 进行图片生成
      */
-    private GenerateResponse generateWithGoogleGemini(GenerateRequest request) {
-        log.info("Generating with Google Gemini Image Gen...");
+    private GenerateResponse generateWithGoogleGemini(GenerateRequest request, CancellationToken token) {
+        log.debug("Generating with Google Gemini Image Gen...");
 
         // 从字段中获取 API Key
         String apiKey = request.getGoogleCredentials();
-        if (apiKey == null || apiKey.isEmpty()) {
+        // Blank key: served from the server-side key pool, if one is configured
+        if ((apiKey == null || apiKey.isEmpty()) && !apiKeyPools.hasPool("gemini")) {
             throw new ApiException("Google API Key/Credentials is required", "INVALID_API_KEY");
         }
 
+        // Decoding and resizing the input overlaps with prompt preparation
+        CompletableFuture<PreparedImage> input = prepareInput(request, Img2ImgPreprocessor.Format.JPEG);
+
         // Deep Thinking Logic - Blocking Fallback (deprecated, use stream)
         if (Boolean.TRUE.equals(request.getDeepThinking())) {
-            return generateWithDeepThinking(request, apiKey);
+            return generateWithDeepThinking(request, apiKey, input);
         }
 
         // Standard Generation
         // Preprocess prompt for weighting
         String originalPrompt = request.getPrompt();
-        String processedPrompt = processGeminiPrompt(originalPrompt);
-        log.info("Original Prompt: {}", originalPrompt);
-        log.info("Processed Prompt (Weighted): {}", processedPrompt);
-
-        return internalGenerateGemini(processedPrompt, request.getImage(), apiKey, "gemini-3-pro-image-preview");
+        String processedPrompt = PromptFormatter.processGeminiPrompt(originalPrompt);
+        payloadLogger.debug(log, "Original prompt", originalPrompt);
+        payloadLogger.debug(log, "Processed prompt (weighted)", processedPrompt);
+
+        GenerateResponse response = internalGenerateGemini(processedPrompt,
+                input != null ? img2ImgPreprocessor.await(input) : null, apiKey, GEMINI_IMAGE_MODEL,
+                request.getSeed(), token);
+        response.setSeed(request.getSeed());
+        return response;
     }
 
     /**
      * Deep Thinking Workflow - Blocking Version (Legacy/Fallback)
      */
-    private GenerateResponse generateWithDeepThinking(GenerateRequest request, String apiKey) {
+    private GenerateResponse generateWithDeepThinking(GenerateRequest request, String apiKey,
+            CompletableFuture<PreparedImage> input) {
         log.info("Starting Deep Thinking Mode (Blocking)...");
         List<String> thinkingLog = new ArrayList<>();
 
-        // Step 1: Generate Sketch
-        thinkingLog.add("Phase 1: Manifesting initial concept sketch...");
-        GenerateResponse sketchResponse = internalGenerateGemini(request.getPrompt(), null, apiKey,
-                "gemini-3-pro-image-preview");
-        String sketchImage = sketchResponse.getImageData();
-        thinkingLog.add("Sketch generated.");
-
-        // Step 2: Vision Analysis
-        thinkingLog.add("Phase 2: Analyzing visual structure and composition...");
-        String critique = geminiService.critiqueImage(sketchImage, request.getPrompt(), apiKey);
-        thinkingLog.add("Critique: " + critique);
+        String sketchImage;
+        String critique;
+        if (sketchCount(request) > 1) {
+            // Steps 1 + 2: candidates are sketched and critiqued in parallel
+            thinkingLog.add("Phase 1: Manifesting " + sketchCount(request) + " concept sketches in parallel...");
+            SketchExplorer.Candidate best = exploreSketches(request, apiKey, new CancellationToken(), thinkingLog::add);
+            sketchImage = best.sketch();
+            thinkingLog.add("Phase 2: Selected sketch " + best.index() + " (" + best.critique().getScore() + "/10).");
+            critique = String.join(", ", best.critique().getFixes());
+            thinkingLog.add("Critique: " + critique);
+        } else {
+            // Step 1: Generate Sketch
+            thinkingLog.add("Phase 1: Manifesting initial concept sketch...");
+            GenerateResponse sketchResponse = internalGenerateGemini(request.getPrompt(), null, apiKey,
+                    GEMINI_IMAGE_MODEL, null);
+            sketchImage = sketchResponse.getImageData();
+            thinkingLog.add("Sketch generated.");
+
+            // Step 2: Vision Analysis
+            thinkingLog.add("Phase 2: Analyzing visual structure and composition...");
+            critique = geminiService.critiqueImage(sketchImage, request.getPrompt(), apiKey);
+            thinkingLog.add("Critique: " + critique);
+        }
 
         // Step 3: Style/Concept Expansion
         thinkingLog.add("Phase 3: Consulting Void Archives for artistic styles...");
@@ -198,12 +236,12 @@ public class ImageService {
         String refinedPrompt = String.format("%s, %s, 2::%s::, 1.5::%s::. Avoid: %s",
                 request.getPrompt(), positiveStyle, critique, styleTags, negativeStyle);
 
-        String processedRefinedPrompt = processGeminiPrompt(refinedPrompt);
+        String processedRefinedPrompt = PromptFormatter.processGeminiPrompt(refinedPrompt);
 
         // Step 5: Final Generation
         thinkingLog.add("Phase 5: Final manifestation...");
-        GenerateResponse finalResponse = internalGenerateGemini(processedRefinedPrompt, request.getImage(), apiKey,
-                "gemini-3-pro-image-preview");
+        GenerateResponse finalResponse = internalGenerateGemini(processedRefinedPrompt,
+                input != null ? img2ImgPreprocessor.await(input) : null, apiKey, GEMINI_IMAGE_MODEL, null, null);
 
         finalResponse.setSketchImage(sketchImage);
         finalResponse.setThinkingLog(thinkingLog);
@@ -212,76 +250,114 @@ public class ImageService {
     }
 
     /**
-     * Deep Thinking Workflow
+     * Streaming generation into any event sink (an SSE connection or a detached job)
+     *
+     * The token is created by the caller before the work is queued, so a client that
+     * leaves while waiting in the lane skips the generation entirely.
      */
-    public void generateImageStream(GenerateRequest request, SseEmitter emitter) {
-        log.info("Streaming image generation for engine: {}", request.getEngine());
+    public void generateImageStream(GenerateRequest request, GenerationEventSink sink, CancellationToken token) {
+        if (token.isCancelled()) {
+            log.info("Generation cancelled while queued, skipped");
+            return;
+        }
+        log.debug("Streaming image generation for engine: {}", request.getEngine());
+
         try {
             if (request.getEngine() == EngineType.GOOGLE_IMAGEN) {
                 if (Boolean.TRUE.equals(request.getDeepThinking())) {
-                    generateWithDeepThinkingStream(request, request.getGoogleCredentials(), emitter);
+                    generateWithDeepThinkingStream(request, request.getGoogleCredentials(), sink, token);
                 } else {
                     // Normal generation, just emit one result
-                    GenerateResponse response = generateWithGoogleGemini(request);
-                    emitter.send(SseEmitter.event().name("result").data(java.util.Objects.requireNonNull(response)));
-                    emitter.complete();
+                    GenerateResponse response = generateImage(request, token);
+                    sink.send("result", response);
+                    sink.complete();
                 }
             } else {
                 // NovelAI doesn't support deep thinking stream yet, just return result
-                GenerateResponse response = generateImage(request);
-                emitter.send(SseEmitter.event().name("result").data(java.util.Objects.requireNonNull(response)));
-                emitter.complete();
+                GenerateResponse response = generateImage(request, token);
+                sink.send("result", response);
+                sink.complete();
             }
         } catch (Exception e) {
+            if (token.isCancelled()) {
+                log.info("Generation cancelled (client gone or job cancelled), abandoned");
+                return;
+            }
             log.error("Streaming error: {}", e.getMessage(), e);
             try {
-                emitter.send(SseEmitter.event().name("error").data("Generation failed: " + e.getMessage()));
-                emitter.completeWithError(e);
+                sink.send("error", "Generation failed: " + e.getMessage());
+                sink.completeWithError(e);
             } catch (Exception ex) {
                 // Ignore
             }
         }
     }
 
-    private void generateWithDeepThinkingStream(GenerateRequest request, String apiKey, SseEmitter emitter)
-            throws Exception {
+    private void generateWithDeepThinkingStream(GenerateRequest request, String apiKey, GenerationEventSink sink,
+            CancellationToken token) throws Exception {
         log.info("Starting Deep Thinking Stream...");
         List<String> thinkingLog = new ArrayList<>();
 
-        // Helper to send log events
+        // Helper to send log events; a failed send means the client is gone
         Runnable sendLog = () -> {
+            token.throwIfCancelled();
             try {
                 String lastLog = thinkingLog.get(thinkingLog.size() - 1);
-                emitter.send(SseEmitter.event().name("log").data(java.util.Objects.requireNonNull(lastLog)));
+                sink.send("log", lastLog);
             } catch (Exception e) {
-                log.error("Failed to send log event", e);
+                log.warn("Failed to send log event, cancelling generation: {}", e.getMessage());
+                token.cancel();
+                token.throwIfCancelled();
             }
         };
 
-        // Step 1: Generate Sketch
-        String step1 = "Phase 1: Manifesting initial concept sketch...";
-        thinkingLog.add(step1);
-        sendLog.run();
-        log.info(step1);
+        String sketchImage;
+        String critique;
+        if (sketchCount(request) > 1) {
+            // Steps 1 + 2: candidates are sketched and critiqued in parallel, the best one goes on
+            String step1 = "Phase 1: Manifesting " + sketchCount(request) + " concept sketches in parallel...";
+            thinkingLog.add(step1);
+            sendLog.run();
+            log.info(step1);
 
-        GenerateResponse sketchResponse = internalGenerateGemini(request.getPrompt(), null, apiKey,
-                "gemini-3-pro-image-preview");
-        String sketchImage = sketchResponse.getImageData();
-        thinkingLog.add("Sketch generated.");
-        sendLog.run();
+            SketchExplorer.Candidate best = exploreSketches(request, apiKey, token, line -> {
+                thinkingLog.add(line);
+                sendLog.run();
+            });
+            sketchImage = best.sketch();
+            sink.send("sketch", sketchImage);
 
-        // Send sketch event
-        emitter.send(SseEmitter.event().name("sketch").data(java.util.Objects.requireNonNull(sketchImage)));
+            thinkingLog.add("Phase 2: Selected sketch " + best.index() + " (" + best.critique().getScore() + "/10).");
+            sendLog.run();
+            critique = String.join(", ", best.critique().getFixes());
+            thinkingLog.add("Critique: " + critique);
+            sendLog.run();
+        } else {
+            // Step 1: Generate Sketch
+            String step1 = "Phase 1: Manifesting initial concept sketch...";
+            thinkingLog.add(step1);
+            sendLog.run();
+            log.info(step1);
 
-        // Step 2: Vision Analysis
-        String step2 = "Phase 2: Analyzing visual structure and composition...";
-        thinkingLog.add(step2);
-        sendLog.run();
-        log.info(step2);
+            GenerateResponse sketchResponse = internalGenerateGemini(request.getPrompt(), null, apiKey,
+                    GEMINI_IMAGE_MODEL, token);
+            sketchImage = sketchResponse.getImageData();
+            thinkingLog.add("Sketch generated.");
+            sendLog.run();
 
-        String critique = geminiService.critiqueImage(sketchImage, request.getPrompt(), apiKey);
-        thinkingLog.add("Critique: " + critique);
-        sendLog.run();
+            // Send sketch event
+            sink.send("sketch", sketchImage);
+
+            // Step 2: Vision Analysis
+            String step2 = "Phase 2: Analyzing visual structure and composition...";
+            thinkingLog.add(step2);
+            sendLog.run();
+            log.info(step2);
+
+            critique = geminiService.critiqueImage(sketchImage, request.getPrompt(), apiKey, token);
+            thinkingLog.add("Critique: " + critique);
+            sendLog.run();
+        }
 
         // Step 3: Style/Concept Expansion
         String step3 = "Phase 3: Consulting Void Archives for artistic styles...";
@@ -289,7 +365,7 @@ public class ImageService {
         sendLog.run();
         log.info(step3);
 
-        String styleTags = geminiService.suggestStyleTags(request.getPrompt(), apiKey);
+        String styleTags = geminiService.suggestStyleTags(request.getPrompt(), apiKey, token);
         thinkingLog.add("Identified Style Tags: " + styleTags);
         sendLog.run();
 
@@ -316,7 +392,7 @@ public class ImageService {
                 "Generate a final masterpiece based on the sketch. MANDATORY FIXES: %s. Content: %s, %s, 1.5::%s::. Avoid: %s",
                 critique, request.getPrompt(), positiveStyle, styleTags, negativeStyle);
 
-        String processedRefinedPrompt = processGeminiPrompt(refinedPrompt);
+        String processedRefinedPrompt = PromptFormatter.processGeminiPrompt(refinedPrompt);
         thinkingLog.add("Final Prompt Constructed.");
         sendLog.run();
 
@@ -331,7 +407,7 @@ public class ImageService {
         try {
             log.info("Starting final Img2Img generation with sketch ({} chars)", sketchImage.length());
             GenerateResponse finalResponse = internalGenerateGemini(processedRefinedPrompt, sketchImage, apiKey,
-                    "gemini-3-pro-image-preview");
+                    GEMINI_IMAGE_MODEL, token);
             log.info("Final image generated successfully");
 
             thinkingLog.add("✓ Final image manifestation complete! Image ready.");
@@ -340,29 +416,64 @@ public class ImageService {
             // Store logs and sketch in response
             finalResponse.setSketchImage(sketchImage);
             finalResponse.setThinkingLog(thinkingLog);
+            historyService.recordAsync(request, finalResponse);
 
             // Send final result
             log.info("Sending final result to client");
-            emitter.send(SseEmitter.event().name("result").data(java.util.Objects.requireNonNull(finalResponse)));
-            emitter.complete();
+            sink.send("result", finalResponse);
+            sink.complete();
             log.info("Deep Thinking stream completed successfully");
         } catch (Exception e) {
+            if (token.isCancelled()) {
+                throw e;
+            }
             log.error("Phase 5 failed: {}", e.getMessage(), e);
             thinkingLog.add("ERROR in Phase 5: " + e.getMessage());
             sendLog.run();
-            emitter.send(SseEmitter.event().name("error").data("Phase 5 failed: " + e.getMessage()));
-            emitter.completeWithError(e);
+            sink.send("error", "Phase 5 failed: " + e.getMessage());
+            sink.completeWithError(e);
         }
     }
 
-    private GenerateResponse internalGenerateGemini(String prompt, String inputImage, String apiKey, String model) {
+    private static int sketchCount(GenerateRequest request) {
+        return request.getSketchCount() != null ? request.getSketchCount() : 1;
+    }
+
+    /**
+     * Best-of-N sketch phase: every candidate is sketched and scored under its own branch of the token
+     */
+    private SketchExplorer.Candidate exploreSketches(GenerateRequest request, String apiKey, CancellationToken token,
+            java.util.function.Consumer<String> progress) {
+        return sketchExplorer.explore(sketchCount(request), token,
+                branch -> internalGenerateGemini(request.getPrompt(), null, apiKey, GEMINI_IMAGE_MODEL, branch)
+                        .getImageData(),
+                (sketch, branch) -> geminiService.scoreSketch(sketch, request.getPrompt(), apiKey, branch),
+                progress);
+    }
+
+    private GenerateResponse internalGenerateGemini(String prompt, String inputImage, String apiKey, String model,
+            CancellationToken token) {
+        // Sketches come straight from Gemini and need no preprocessing
+        PreparedImage input = inputImage != null && !inputImage.isEmpty()
+                ? new PreparedImage(inputImage, "image/png")
+                : null;
+        return internalGenerateGemini(prompt, input, apiKey, model, null, token);
+    }
+
+    private GenerateResponse internalGenerateGemini(String prompt, PreparedImage inputImage, String apiKey,
+            String model, Long seed, CancellationToken token) {
         try {
             Map<String, Object> bodyMap;
+            Map<String, Object> generationConfig = new java.util.HashMap<>();
+            generationConfig.put("responseModalities", List.of("IMAGE"));
+            if (seed != null) {
+                generationConfig.put("seed", seed);
+            }
 
             // 判断是否为 Img2Img (图片修改)
-            if (inputImage != null && !inputImage.isEmpty()) {
+            if (inputImage != null) {
                 log.info("Img2Img mode...");
-                model = "gemini-3-pro-image-preview"; // Img2Img usually requires specific model
+                model = GEMINI_IMAGE_MODEL; // Img2Img usually requires specific model
 
                 bodyMap = new java.util.HashMap<>();
                 bodyMap.put("contents", List.of(
@@ -372,48 +483,47 @@ public class ImageService {
                                         Map.of("text", prompt),
                                         Map.of(
                                                 "inline_data", Map.of(
-                                                        "mime_type", "image/png",
-                                                        "data", inputImage))))));
-                bodyMap.put("generationConfig", Map.of(
-                        "responseModalities", List.of("IMAGE")));
+                                                        "mime_type", inputImage.mimeType(),
+                                                        "data", inputImage.data()))))));
+                bodyMap.put("generationConfig", generationConfig);
             } else {
                 // 标准 T2I 生成
                 bodyMap = new java.util.HashMap<>();
                 bodyMap.put("contents", List.of(Map.of(
                         "parts", List.of(Map.of("text", prompt)))));
-                bodyMap.put("generationConfig", Map.of(
-                        "responseModalities", List.of("IMAGE")));
+                bodyMap.put("generationConfig", generationConfig);
             }
 
             String jsonBody = objectMapper.writeValueAsString(bodyMap);
-            String url = "https://generativelanguage.googleapis.com/v1beta/models/" + model + ":generateContent";
-
-            Request httpRequest = new Request.Builder()
-                    .url(url)
-                    .addHeader("x-goog-api-key", apiKey)
-                    .addHeader("Content-Type", "application/json")
-                    .post(RequestBody.create(jsonBody, JSON))
-                    .build();
-
-            try (Response response = httpClient.newCall(httpRequest).execute()) {
-                String responseBody = response.body() != null ? response.body().string() : "";
-
-                if (!response.isSuccessful()) {
-                    log.error("Google Image Gen Failed: {} - {}", response.code(), responseBody);
-                    throw new ApiException("Google Error: " + responseBody, "IMAGEN_ERROR");
-                }
-
-                log.info("Gemini Raw Response (first 500 chars): {}",
-                        responseBody.substring(0, Math.min(500, responseBody.length())));
-
-                // Check if response is valid JSON before parsing
-                if (responseBody.isEmpty() || !responseBody.trim().startsWith("{")) {
-                    log.error("Invalid JSON response from Gemini. Full response: {}", responseBody);
-                    throw new ApiException("Invalid response format from Gemini", "IMAGEN_ERROR");
-                }
-
-                return parseImageResponse(responseBody);
-            }
+            String url = upstreamProperties.geminiModelUrl(model, "generateContent");
+            RequestBody body = RequestBody.create(jsonBody, JSON);
+
+            return upstreamGuard.execute(UpstreamOperation.GEMINI_IMAGE, token, apiKey,
+                    key -> execute(new Request.Builder()
+                            .url(url)
+                            .addHeader("x-goog-api-key", key)
+                            .addHeader("Content-Type", "application/json")
+                            .post(body)
+                            .build(), UpstreamOperation.GEMINI_IMAGE, token),
+                    response -> {
+                        String responseBody = response.body() != null ? response.body().string() : "";
+
+                        if (!response.isSuccessful()) {
+                            payloadLogger.error(log, "Google Image Gen failed with HTTP " + response.code(), responseBody);
+                            throw new ApiException("Google Error: " + PayloadLogger.excerpt(responseBody, 500),
+                                    "IMAGEN_ERROR");
+                        }
+
+                        payloadLogger.debug(log, "Gemini image response", responseBody);
+
+                        // Check if response is valid JSON before parsing
+                        if (responseBody.isEmpty() || !responseBody.trim().startsWith("{")) {
+                            payloadLogger.error(log, "Invalid response from Gemini", responseBody);
+                            throw new ApiException("Invalid response format from Gemini", "IMAGEN_ERROR");
+                        }
+
+                        return parseImageResponse(responseBody);
+                    });
 
         } catch (ApiException e) {
             throw e;
@@ -426,27 +536,35 @@ public class ImageService {
     /**
      * 使用 NovelAI 进行图片生成
      */
-    private GenerateResponse generateWithNovelAI(GenerateRequest request) {
-        log.info("Generating with NovelAI V3...");
+    private GenerateResponse generateWithNovelAI(GenerateRequest request, CancellationToken token) {
+        log.debug("Generating with NovelAI V3...");
 
         String apiKey = request.getNovelaiApiKey();
-        if (apiKey == null || apiKey.isEmpty()) {
+        if ((apiKey == null || apiKey.isEmpty()) && !apiKeyPools.hasPool("novelai")) {
             throw new ApiException("NovelAI API Key is required", "INVALID_API_KEY");
         }
 
+        // NovelAI rejects inputs that do not match the output size; fit it while the body is built
+        CompletableFuture<PreparedImage> input = prepareInput(request, Img2ImgPreprocessor.Format.PNG);
+
         try {
             // 解析分辨率
-            String[] dimensions = request.getResolution().split("x");
-            int width = Integer.parseInt(dimensions[0]);
-            int height = Integer.parseInt(dimensions[1]);
+            int[] size = parseResolution(request.getResolution());
+            int width = size[0];
+            int height = size[1];
 
             // 构建 NovelAI 参数
             Map<String, Object> parameters = new java.util.HashMap<>();
             parameters.put("width", width);
             parameters.put("height", height);
-            parameters.put("scale", request.getScale() != null ? request.getScale() : 6);
+            // Always send a seed so every render can be reproduced; it is echoed in the response
+            long seed = request.getSeed() != null ? request.getSeed()
+                    : java.util.concurrent.ThreadLocalRandom.current().nextLong(4294967296L);
+
+            parameters.put("scale", request.getScale() != null ? request.getScale() : NOVELAI_DEFAULT_SCALE);
             parameters.put("sampler", "k_euler");
-            parameters.put("steps", request.getSteps() != null ? request.getSteps() : 28);
+            parameters.put("steps", request.getSteps() != null ? request.getSteps() : NOVELAI_DEFAULT_STEPS);
+            parameters.put("seed", seed);
             parameters.put("n_samples", 1);
             parameters.put("ucPreset", 0);
             parameters.put("qualityToggle", true);
@@ -460,55 +578,57 @@ public class ImageService {
             parameters.put("noise_schedule", "native");
 
             // Img2Img 特定参数
-            if (request.getImage() != null && !request.getImage().isEmpty()) {
+            if (input != null) {
                 log.info("NovelAI Img2Img mode enabled");
                 // NovelAI V3 使用 generate action 但带上 image 参数即可
-                parameters.put("image", request.getImage());
+                parameters.put("image", img2ImgPreprocessor.await(input).data());
                 parameters.put("strength", request.getStrength() != null ? request.getStrength() : 0.7);
                 parameters.put("noise", 0.0);
-                parameters.put("extra_noise_seed", request.getSteps()); // Optional, just adding some entropy if needed,
-                                                                        // but not required
+                parameters.put("extra_noise_seed", seed);
             }
 
             // 构建 NovelAI 请求体
             Map<String, Object> bodyMap = new java.util.HashMap<>();
             bodyMap.put("input", request.getPrompt());
-            bodyMap.put("model", "nai-diffusion-3");
+            bodyMap.put("model", NOVELAI_MODEL);
             bodyMap.put("action", "generate"); // Always use generate for V3
             bodyMap.put("parameters", parameters);
 
             String jsonBody = objectMapper.writeValueAsString(bodyMap);
-            String url = "https://image.novelai.net/ai/generate-image";
-
-            Request httpRequest = new Request.Builder()
-                    .url(url)
-                    .addHeader("Authorization", "Bearer " + apiKey)
-                    .addHeader("Content-Type", "application/json")
-                    .post(RequestBody.create(jsonBody, JSON))
-                    .build();
-
-            try (Response response = httpClient.newCall(httpRequest).execute()) {
-                if (!response.isSuccessful()) {
-                    String error = response.body() != null ? response.body().string() : "Unknown error";
-                    log.error("NovelAI Gen Failed: {} - {}", response.code(), error);
-
-                    String errorCode = "NOVELAI_ERROR";
-                    if (response.code() == 401 || response.code() == 403)
-                        errorCode = "INVALID_API_KEY";
-                    if (response.code() == 429)
-                        errorCode = "RATE_LIMITED";
-
-                    throw new ApiException("NovelAI Error (" + response.code() + "): " + error, errorCode);
-                }
-
-                // NovelAI 返回 ZIP 文件，需要解压提取第一张图片
-                byte[] zipData = response.body().bytes();
-                String base64Image = extractFirstImageFromZip(zipData);
-
-                return GenerateResponse.builder()
-                        .imageData(base64Image)
-                        .build();
-            }
+            String url = upstreamProperties.novelaiGenerateUrl();
+            RequestBody body = RequestBody.create(jsonBody, JSON);
+
+            return upstreamGuard.execute(UpstreamOperation.NOVELAI_GENERATE, token, apiKey,
+                    key -> execute(new Request.Builder()
+                            .url(url)
+                            .addHeader("Authorization", "Bearer " + key)
+                            .addHeader("Content-Type", "application/json")
+                            .post(body)
+                            .build(), UpstreamOperation.NOVELAI_GENERATE, token),
+                    response -> {
+                        if (!response.isSuccessful()) {
+                            String error = response.body() != null ? response.body().string() : "Unknown error";
+                            payloadLogger.error(log, "NovelAI Gen failed with HTTP " + response.code(), error);
+
+                            String errorCode = "NOVELAI_ERROR";
+                            if (response.code() == 401 || response.code() == 403)
+                                errorCode = "INVALID_API_KEY";
+                            if (response.code() == 429)
+                                errorCode = "RATE_LIMITED";
+
+                            throw new ApiException("NovelAI Error (" + response.code() + "): "
+                                    + PayloadLogger.excerpt(error, 500), errorCode);
+                        }
+
+                        // NovelAI 返回 ZIP 文件，需要解压提取第一张图片
+                        byte[] zipData = response.body().bytes();
+                        byte[] image = extractFirstImageFromZip(zipData);
+
+                        return GenerateResponse.builder()
+                                .imageBytes(image)
+                                .seed(seed)
+                                .build();
+                    });
 
         } catch (ApiException e) {
             throw e;
@@ -519,17 +639,26 @@ public class ImageService {
     }
 
     /**
-     * 从 ZIP 文件中提取第一张图片并转为 Base64
+     * Sends the request under the operation's deadline, keeping the call cancellable
+     * through the token if one is given
+     */
+    private Response execute(Request httpRequest, UpstreamOperation operation, CancellationToken token)
+            throws java.io.IOException {
+        Call call = timeoutPolicy.newCall(httpClient, httpRequest, operation);
+        return token != null ? token.execute(call) : call.execute();
+    }
+
+    /**
+     * 从 ZIP 文件中提取第一张图片
      */
-    private String extractFirstImageFromZip(byte[] zipData) throws Exception {
+    private byte[] extractFirstImageFromZip(byte[] zipData) throws Exception {
         try (java.io.ByteArrayInputStream bis = new java.io.ByteArrayInputStream(zipData);
                 java.util.zip.ZipInputStream zis = new java.util.zip.ZipInputStream(bis)) {
 
             java.util.zip.ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
                 if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".png")) {
-                    byte[] imageBytes = zis.readAllBytes();
-                    return java.util.Base64.getEncoder().encodeToString(imageBytes);
+                    return zis.readAllBytes();
                 }
             }
 
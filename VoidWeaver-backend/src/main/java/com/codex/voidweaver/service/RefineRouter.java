@@ -0,0 +1,268 @@
+package com.codex.voidweaver.service;
+
+import com.codex.voidweaver.exception.ApiException;
+import com.codex.voidweaver.model.dto.ModuleDto;
+import com.codex.voidweaver.model.dto.TagDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Routes a refine instruction to the modules it is about
+ *
+ * A fixed keyword lexicon per module category ("hair" is the subject, "sky" the
+ * background) plus the words of each module's current tags form a small lexical
+ * index. An instruction is routed only when it names at least one category keyword;
+ * the modules scoring at least half of the best one are refined, each in its own small
+ * Gemini call, and everything else is returned untouched. Instructions about the whole
+ * prompt, in a language the lexicon does not cover, or touching too many modules fall
+ * back to the single full refine.
+ */
+@Slf4j
+@Component
+public class RefineRouter {
+
+    /** Refines one module (the whole call: prompt, upstream, parsing) */
+    @FunctionalInterface
+    public interface ModuleRefiner {
+        ModuleDto refine(ModuleDto module) throws Exception;
+    }
+
+    private static final Pattern WORD_SPLIT = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final int LEXICON_SCORE = 2;
+    private static final int TAG_SCORE = 1;
+
+    /** Category keywords by module name; multi-word entries match as bigrams */
+    private static final Map<String, List<String>> LEXICON = Map.of(
+            "style", List.of("style", "anime", "manga", "realistic", "photorealistic", "painting", "painted",
+                    "watercolor", "sketch", "oil", "artist", "render", "3d", "pixel", "cel", "illustration",
+                    "lineart", "chibi", "cartoon", "风格", "画风"),
+            "subject", List.of("hair", "hairstyle", "eye", "face", "skin", "girl", "boy", "man", "woman",
+                    "character", "expression", "smile", "ear", "tail", "body", "age", "头发", "发型", "眼睛", "表情",
+                    "角色"),
+            "pose", List.of("pose", "sitting", "standing", "running", "walking", "jumping", "lying", "kneeling",
+                    "hand", "arm", "leg", "holding", "gesture", "action", "looking", "姿势", "动作"),
+            "costume", List.of("dress", "shirt", "clothes", "clothing", "outfit", "hat", "jacket", "coat", "armor",
+                    "skirt", "shoe", "boot", "accessory", "jewelry", "necklace", "scarf", "glasses", "uniform",
+                    "kimono", "gloves", "服装", "衣服", "裙子", "帽子"),
+            "background", List.of("background", "scene", "sky", "city", "forest", "room", "indoor", "outdoor",
+                    "beach", "street", "landscape", "setting", "location", "ocean", "mountain", "building", "背景",
+                    "场景"),
+            "composition", List.of("composition", "angle", "shot", "close up", "closeup", "framing", "view",
+                    "camera", "portrait", "full body", "upper body", "perspective", "zoom", "centered", "构图",
+                    "视角", "镜头"),
+            "atmosphere", List.of("lighting", "light", "mood", "atmosphere", "dark", "bright", "sunset", "night",
+                    "glow", "shadow", "color", "colour", "palette", "warm", "cold", "fog", "cinematic", "光",
+                    "氛围", "色调"));
+
+    /** Instructions about the prompt as a whole always get the full refine */
+    private static final Set<String> GLOBAL_WORDS = Set.of("everything", "overall", "whole", "entire", "all",
+            "整体", "全部", "所有");
+
+    private static final Set<String> STOP_WORDS = Set.of("the", "a", "an", "of", "with", "and", "in", "on", "at",
+            "to", "for", "make", "more", "less", "add", "remove", "change", "it", "her", "his", "their", "some",
+            "very", "into", "from", "by", "be", "is", "should", "would", "please");
+
+    /** Stemmed keyword -> module names */
+    private final Map<String, Set<String>> keywords = new HashMap<>();
+    /** CJK keywords, matched as substrings since there are no word boundaries */
+    private final Map<String, String> cjkKeywords = new HashMap<>();
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int maxModules;
+    private final ThreadPoolExecutor executor;
+
+    public RefineRouter(MeterRegistry meterRegistry,
+            @Value("${voidweaver.refine.routing.enabled:true}") boolean enabled,
+            @Value("${voidweaver.refine.routing.max-modules:3}") int maxModules,
+            @Value("${voidweaver.refine.routing.threads:32}") int maxThreads) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxModules = maxModules;
+
+        LEXICON.forEach((module, words) -> {
+            for (String word : words) {
+                if (word.codePoints().anyMatch(RefineRouter::isCjk)) {
+                    cjkKeywords.put(word, module);
+                } else {
+                    keywords.computeIfAbsent(String.join(" ", tokenize(word)), k -> new HashSet<>()).add(module);
+                }
+            }
+        });
+
+        // Per-module calls only wait on Gemini; the gemini-text bulkhead bounds real load
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "refine-router-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Modules the instruction is about, in their original order
+     *
+     * @return empty if the instruction should get the full refine instead
+     */
+    public List<ModuleDto> route(List<ModuleDto> modules, String instruction) {
+        if (!enabled || modules.size() < 2 || instruction == null) {
+            return List.of();
+        }
+
+        String lower = instruction.toLowerCase(Locale.ROOT);
+        List<String> tokens = tokenize(lower);
+        if (tokens.stream().anyMatch(GLOBAL_WORDS::contains)
+                || GLOBAL_WORDS.stream().filter(word -> word.codePoints().anyMatch(RefineRouter::isCjk))
+                        .anyMatch(lower::contains)) {
+            return fallback("global");
+        }
+
+        Map<String, Integer> scores = new LinkedHashMap<>();
+        boolean keywordHit = false;
+        for (String term : terms(tokens)) {
+            for (String module : keywords.getOrDefault(term, Set.of())) {
+                scores.merge(module, LEXICON_SCORE, Integer::sum);
+                keywordHit = true;
+            }
+        }
+        for (Map.Entry<String, String> cjk : cjkKeywords.entrySet()) {
+            if (lower.contains(cjk.getKey())) {
+                scores.merge(cjk.getValue(), LEXICON_SCORE, Integer::sum);
+                keywordHit = true;
+            }
+        }
+        if (!keywordHit) {
+            // Tag overlap alone ("more blue") is too weak to leave modules out
+            return fallback("unmatched");
+        }
+
+        Set<String> instructionWords = new HashSet<>(tokens);
+        instructionWords.removeAll(STOP_WORDS);
+        for (ModuleDto module : modules) {
+            if (overlapsTags(module, instructionWords)) {
+                scores.merge(module.getName(), TAG_SCORE, Integer::sum);
+            }
+        }
+
+        int best = modules.stream().mapToInt(module -> scores.getOrDefault(module.getName(), 0)).max().orElse(0);
+        if (best == 0) {
+            // Only categories that are locked or not in the request matched
+            return fallback("unmatched");
+        }
+        List<ModuleDto> routed = modules.stream()
+                .filter(module -> scores.getOrDefault(module.getName(), 0) * 2 >= best)
+                .toList();
+        if (routed.size() > maxModules || routed.size() == modules.size()) {
+            return fallback("broad");
+        }
+
+        meterRegistry.counter("voidweaver.refine.routing", "outcome", "routed").increment();
+        log.info("Refine routed to {} of {} modules: {}", routed.size(), modules.size(),
+                routed.stream().map(ModuleDto::getName).toList());
+        return routed;
+    }
+
+    /**
+     * Refine the routed modules concurrently
+     *
+     * @return the refined modules, in the order given
+     */
+    public List<ModuleDto> refineEach(List<ModuleDto> modules, ModuleRefiner refiner) {
+        List<CompletableFuture<ModuleDto>> futures = new ArrayList<>(modules.size());
+        for (ModuleDto module : modules) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return refiner.refine(module);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof ApiException apiException) {
+                throw apiException;
+            }
+            throw new RuntimeException("Gemini Refine failed: " + cause.getMessage(), cause);
+        }
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    private List<ModuleDto> fallback(String reason) {
+        meterRegistry.counter("voidweaver.refine.routing", "outcome", reason).increment();
+        return List.of();
+    }
+
+    private static boolean overlapsTags(ModuleDto module, Set<String> words) {
+        if (module.getTags() == null || words.isEmpty()) {
+            return false;
+        }
+        for (TagDto tag : module.getTags()) {
+            if (tag.getText() != null
+                    && tokenize(tag.getText().toLowerCase(Locale.ROOT)).stream().anyMatch(words::contains)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Tokens plus adjacent bigrams, for multi-word keywords like "full body" */
+    private static List<String> terms(List<String> tokens) {
+        List<String> terms = new ArrayList<>(tokens);
+        for (int i = 0; i + 1 < tokens.size(); i++) {
+            terms.add(tokens.get(i) + " " + tokens.get(i + 1));
+        }
+        return terms;
+    }
+
+    /** Lower-case input; crude plural folding so "boots" hits "boot" */
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String word : WORD_SPLIT.split(text.toLowerCase(Locale.ROOT))) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (word.length() > 3 && word.endsWith("s") && !word.endsWith("ss")) {
+                word = word.substring(0, word.length() - 1);
+            }
+            tokens.add(word);
+        }
+        return tokens;
+    }
+
+    private static boolean isCjk(int codePoint) {
+        return Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HAN;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
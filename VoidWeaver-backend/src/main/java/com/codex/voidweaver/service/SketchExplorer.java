@@ -0,0 +1,152 @@
+package com.codex.voidweaver.service;
+
+import com.codex.voidweaver.exception.ApiException;
+import com.codex.voidweaver.model.dto.SketchCritiqueDto;
+import com.codex.voidweaver.upstream.CancellationToken;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Best-of-N sketch phase for Deep Thinking
+ *
+ * Generates and scores N candidate sketches concurrently, each under its own child
+ * cancellation token. Results are taken in completion order: the first sketch that
+ * reaches the accept score wins outright and the others are cancelled mid-flight;
+ * otherwise the best scored one wins once all have finished. Wall-clock time stays
+ * close to a single sketch plus critique, which Deep Thinking does anyway.
+ */
+@Slf4j
+@Component
+public class SketchExplorer {
+
+    /** Produces one sketch (base64) under the given token */
+    @FunctionalInterface
+    public interface Sketcher {
+        String sketch(CancellationToken token) throws Exception;
+    }
+
+    /** Scores one sketch under the given token */
+    @FunctionalInterface
+    public interface Scorer {
+        SketchCritiqueDto score(String sketch, CancellationToken token) throws Exception;
+    }
+
+    public record Candidate(int index, String sketch, SketchCritiqueDto critique) {
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final int acceptScore;
+    private final ThreadPoolExecutor executor;
+
+    public SketchExplorer(MeterRegistry meterRegistry,
+            @Value("${voidweaver.deep-thinking.accept-score:8}") int acceptScore,
+            @Value("${voidweaver.deep-thinking.explorer-threads:32}") int maxThreads) {
+        this.meterRegistry = meterRegistry;
+        this.acceptScore = acceptScore;
+        // Candidates only wait on upstream calls; the image bulkhead is what bounds real load
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "sketch-explorer-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @param progress receives one line per finished candidate, on the calling thread
+     * @throws ApiException IMAGEN_ERROR if no candidate produced a scored sketch
+     */
+    public Candidate explore(int count, CancellationToken token, Sketcher sketcher, Scorer scorer,
+            Consumer<String> progress) {
+        CompletionService<Candidate> completion = new ExecutorCompletionService<>(executor);
+        List<CancellationToken> branches = new ArrayList<>();
+        List<Future<Candidate>> futures = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            int index = i;
+            CancellationToken branch = token.child();
+            try {
+                futures.add(completion.submit(() -> {
+                    String sketch = sketcher.sketch(branch);
+                    branch.throwIfCancelled();
+                    return new Candidate(index, sketch, scorer.score(sketch, branch));
+                }));
+                branches.add(branch);
+            } catch (RejectedExecutionException e) {
+                log.warn("Sketch explorer saturated, running with {} of {} candidates", index - 1, count);
+                break;
+            }
+        }
+
+        Candidate best = null;
+        try {
+            for (int received = 0; received < futures.size(); received++) {
+                Candidate candidate;
+                try {
+                    candidate = completion.take().get();
+                } catch (ExecutionException e) {
+                    token.throwIfCancelled();
+                    record("failed");
+                    progress.accept("A sketch candidate failed: " + e.getCause().getMessage());
+                    continue;
+                }
+
+                int score = candidate.critique().getScore();
+                progress.accept(String.format("Sketch %d of %d scored %d/10", candidate.index(), futures.size(),
+                        score));
+                if (best == null || score > best.critique().getScore()) {
+                    best = candidate;
+                }
+                if (score >= acceptScore) {
+                    log.debug("Sketch {} reached accept score {}, cancelling the rest", candidate.index(), score);
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException("Interrupted while exploring sketches", "INTERNAL_ERROR");
+        } finally {
+            // Losers are cancelled mid-flight; nothing of theirs is used
+            for (int i = 0; i < branches.size(); i++) {
+                if (best == null || i != best.index() - 1) {
+                    if (!futures.get(i).isDone()) {
+                        record("cancelled");
+                    }
+                    branches.get(i).cancel();
+                }
+            }
+        }
+
+        token.throwIfCancelled();
+        if (best == null) {
+            throw new ApiException("All " + futures.size() + " sketch candidates failed", "IMAGEN_ERROR");
+        }
+        record("selected");
+        return best;
+    }
+
+    private void record(String outcome) {
+        meterRegistry.counter("voidweaver.deep-thinking.sketches", "outcome", outcome).increment();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
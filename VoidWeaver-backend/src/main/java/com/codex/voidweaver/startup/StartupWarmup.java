@@ -0,0 +1,276 @@
+package com.codex.voidweaver.startup;
+
+import com.codex.voidweaver.config.NativeHintsConfig;
+import com.codex.voidweaver.config.UpstreamProperties;
+import com.codex.voidweaver.imaging.MedianCut;
+import com.codex.voidweaver.imaging.PerceptualHash;
+import com.codex.voidweaver.model.dto.AnalyzeResponse;
+import com.codex.voidweaver.model.dto.ModuleDto;
+import com.codex.voidweaver.model.dto.TagDto;
+import com.codex.voidweaver.model.dto.TagOperationDto;
+import com.codex.voidweaver.model.enums.EngineType;
+import com.codex.voidweaver.service.PromptService;
+import com.codex.voidweaver.utils.ModulePatcher;
+import com.codex.voidweaver.utils.ModuleStreamParser;
+import com.codex.voidweaver.utils.PromptFormatter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warm-up before the instance reports ready
+ *
+ * Application runners finish before Spring publishes ApplicationReadyEvent, which is
+ * what flips the readiness probe to ACCEPTING_TRAFFIC, so everything done here is paid
+ * by the deploy instead of the first users:
+ * <ul>
+ * <li>TLS connections to the upstream hosts are opened into OkHttp's pool (an
+ * unauthenticated HEAD; the status does not matter)</li>
+ * <li>Jackson builds its serializers and deserializers, and bean validation its
+ * metadata, for every DTO registered in {@link NativeHintsConfig}</li>
+ * <li>one loopback request initializes the servlet, MVC and history (H2) paths</li>
+ * <li>prompt formatting (including the Gemini weight rewrite), Gemini response parsing,
+ * module stream parsing, patching, palettes and fingerprints run on synthetic data until the JIT has compiled them</li>
+ * </ul>
+ * Each step is best effort and the whole phase is bounded by max-ms; a failure is
+ * logged and the instance starts anyway.
+ */
+@Slf4j
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+    // Same shape as the deep-thinking refined prompt, so every weight branch is taken
+    private static final String WEIGHTED_PROMPT =
+            "1girl, silver hair, 2::dramatic lighting::, 1.5::oil painting::, 1.2::red eyes::, 0.85::fog::, 0.5::crowd::";
+
+    private final OkHttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final UpstreamProperties upstreamProperties;
+    private final PromptService promptService;
+    private final Validator validator;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final int iterations;
+    private final long maxMs;
+
+    public StartupWarmup(OkHttpClient httpClient, ObjectMapper objectMapper, UpstreamProperties upstreamProperties,
+            PromptService promptService, Validator validator, Environment environment, MeterRegistry meterRegistry,
+            @Value("${voidweaver.warmup.enabled:true}") boolean enabled,
+            @Value("${voidweaver.warmup.iterations:3000}") int iterations,
+            @Value("${voidweaver.warmup.max-ms:20000}") long maxMs) {
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.upstreamProperties = upstreamProperties;
+        this.promptService = promptService;
+        this.validator = validator;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.iterations = iterations;
+        this.maxMs = maxMs;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxMs);
+
+        // Handshakes are network-bound; they complete while the CPU steps run
+        CountDownLatch connections = openConnections(List.of(upstreamProperties.getGeminiBaseUrl(),
+                upstreamProperties.getNovelaiBaseUrl()));
+
+        step("serializers", this::primeSerializers);
+        step("hot paths", () -> exerciseHotPaths(deadline));
+        step("loopback request", this::callSelf);
+
+        try {
+            if (!connections.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                log.warn("Warm-up: upstream connections not established within {} ms", maxMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        meterRegistry.timer("voidweaver.warmup").record(elapsed, TimeUnit.MILLISECONDS);
+        log.info("Warm-up finished in {} ms, reporting ready", elapsed);
+    }
+
+    private void step(String name, Runnable work) {
+        long start = System.nanoTime();
+        try {
+            work.run();
+            log.info("Warm-up: {} in {} ms", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            log.warn("Warm-up: {} failed: {}", name, e.getMessage());
+        }
+    }
+
+    private CountDownLatch openConnections(List<String> baseUrls) {
+        CountDownLatch done = new CountDownLatch(baseUrls.size());
+        for (String baseUrl : baseUrls) {
+            long start = System.nanoTime();
+            Request request = new Request.Builder().url(baseUrl + "/").head().build();
+            Call call = httpClient.newCall(request);
+            call.timeout().timeout(maxMs, TimeUnit.MILLISECONDS);
+            call.enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) {
+                    // Closing the (empty) response returns the connection to the pool
+                    response.close();
+                    log.info("Warm-up: connected to {} in {} ms", baseUrl,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    log.warn("Warm-up: could not connect to {}: {}", baseUrl, e.getMessage());
+                    done.countDown();
+                }
+            });
+        }
+        return done;
+    }
+
+    /** The web server is already listening; readiness still refuses traffic meanwhile */
+    private void callSelf() {
+        String port = environment.getProperty("local.server.port");
+        if (port == null) {
+            return;
+        }
+        Request request = new Request.Builder().url("http://localhost:" + port + "/api/history?limit=1").build();
+        Call call = httpClient.newCall(request);
+        call.timeout().timeout(5, TimeUnit.SECONDS);
+        try (Response response = call.execute()) {
+            response.body().string();
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /** Round-trip one instance of every registered DTO, so no request builds a (de)serializer */
+    private void primeSerializers() {
+        Class<?>[] types = NativeHintsConfig.class.getAnnotation(RegisterReflectionForBinding.class).value();
+        for (Class<?> type : types) {
+            try {
+                Object instance = type.isEnum() ? type.getEnumConstants()[0]
+                        : type.getDeclaredConstructor().newInstance();
+                objectMapper.readValue(objectMapper.writeValueAsString(instance), type);
+                if (!type.isEnum()) {
+                    validator.validate(instance);
+                }
+            } catch (Exception e) {
+                log.debug("Warm-up: could not round-trip {}: {}", type.getSimpleName(), e.getMessage());
+            }
+        }
+    }
+
+    private void exerciseHotPaths(long deadline) {
+        List<ModuleDto> modules = syntheticModules();
+        String modulesJson;
+        String geminiResponse;
+        try {
+            modulesJson = objectMapper.writeValueAsString(Map.of("modules", modules, "rawPrompt", ""));
+            geminiResponse = objectMapper.writeValueAsString(Map.of("candidates", List.of(Map.of("content",
+                    Map.of("parts", List.of(Map.of("text", modulesJson)))))));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        List<TagOperationDto> operations = List.of(
+                TagOperationDto.builder().op(TagOperationDto.ADD).module("costume").text("red scarf").build(),
+                TagOperationDto.builder().op(TagOperationDto.REWEIGHT)
+                        .tagId(modules.get(1).getTags().get(0).getId()).weight(1.2).build());
+        BufferedImage image = syntheticImage();
+
+        for (int i = 0; i < iterations && System.nanoTime() < deadline; i++) {
+            PromptFormatter.formatPrompt(modules, EngineType.NOVELAI);
+            PromptFormatter.formatPrompt(modules, EngineType.GOOGLE_IMAGEN);
+            PromptFormatter.generateRawPrompt(modules);
+            PromptFormatter.processGeminiPrompt(WEIGHTED_PROMPT);
+            promptService.buildFullPrompt(modules);
+            ModulePatcher.applyPatch(modules, operations);
+
+            // Gemini streams module JSON in arbitrary fragments
+            ModuleStreamParser parser = new ModuleStreamParser();
+            for (int offset = 0; offset < modulesJson.length(); offset += 97) {
+                parser.feed(modulesJson.substring(offset, Math.min(modulesJson.length(), offset + 97)));
+            }
+            try {
+                JsonNode root = objectMapper.readTree(geminiResponse);
+                String text = root.path("candidates").path(0).path("content").path("parts").path(0).path("text")
+                        .asText();
+                objectMapper.readValue(text, AnalyzeResponse.class);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+
+            // Image paths are far heavier per call; a few dozen runs compile them
+            if (i % 50 == 0) {
+                PerceptualHash.dHash(image);
+                PerceptualHash.colorSignature(image);
+                MedianCut.palette(image, 6, 0.02);
+            }
+        }
+    }
+
+    private static List<ModuleDto> syntheticModules() {
+        String[][] tags = {
+                { "style", "anime coloring", "cel shading", "official art" },
+                { "subject", "1girl", "silver hair", "red eyes" },
+                { "pose", "standing", "looking at viewer", "hand on hip" },
+                { "costume", "black dress", "white gloves", "ribbon" },
+                { "background", "night sky", "city lights", "rooftop" },
+                { "composition", "cowboy shot", "from below", "centered" },
+                { "atmosphere", "moonlight", "cinematic lighting", "cold palette" },
+                { "extra", "sparkles", "wind", "depth of field" } };
+        List<ModuleDto> modules = new ArrayList<>();
+        for (String[] module : tags) {
+            List<TagDto> moduleTags = new ArrayList<>();
+            for (int i = 1; i < module.length; i++) {
+                moduleTags.add(TagDto.builder()
+                        .id(module[0] + "-" + i)
+                        .text(module[i])
+                        .weight(i == 1 ? 1.2 : 1.0)
+                        .build());
+            }
+            modules.add(ModuleDto.builder().name(module[0]).displayName(module[0]).tags(moduleTags).build());
+        }
+        return modules;
+    }
+
+    private static BufferedImage syntheticImage() {
+        BufferedImage image = new BufferedImage(512, 512, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x / 2) << 16 | (y / 2) << 8 | ((x + y) / 4));
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,137 @@
+package com.codex.voidweaver.upstream;
+
+import com.codex.voidweaver.exception.ApiException;
+import com.codex.voidweaver.model.dto.KeyUsageDto;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-managed API keys for one upstream
+ *
+ * Each call is routed to the key with the fewest calls in flight (ties rotate),
+ * skipping keys that were recently rate limited. A 429 quarantines the key for
+ * the upstream's Retry-After, or for a default that doubles with every consecutive
+ * 429 and resets after the next successful call.
+ */
+@Slf4j
+public class ApiKeyPool {
+
+    @Getter
+    private final String name;
+    private final List<PooledKey> keys;
+    private final long quarantineMs;
+    private final long maxQuarantineMs;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    static final class PooledKey {
+        final String id;
+        final String key;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong rateLimited = new AtomicLong();
+        volatile long quarantinedUntil;
+        volatile int consecutiveRateLimits;
+
+        PooledKey(String id, String key) {
+            this.id = id;
+            this.key = key;
+        }
+    }
+
+    public ApiKeyPool(String name, List<String> keys, long quarantineMs, long maxQuarantineMs) {
+        this.name = name;
+        this.quarantineMs = quarantineMs;
+        this.maxQuarantineMs = maxQuarantineMs;
+        List<PooledKey> pooled = new ArrayList<>();
+        for (String key : keys) {
+            pooled.add(new PooledKey(name + "-" + pooled.size(), key));
+        }
+        this.keys = Collections.unmodifiableList(pooled);
+    }
+
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Lease the least-loaded key that is not quarantined
+     *
+     * @throws ApiException RATE_LIMITED if every key is quarantined
+     */
+    public KeyLease acquire() {
+        long now = System.currentTimeMillis();
+        int start = Math.floorMod(cursor.getAndIncrement(), keys.size());
+        PooledKey best = null;
+        long earliestRelease = Long.MAX_VALUE;
+        for (int i = 0; i < keys.size(); i++) {
+            PooledKey candidate = keys.get((start + i) % keys.size());
+            if (candidate.quarantinedUntil > now) {
+                earliestRelease = Math.min(earliestRelease, candidate.quarantinedUntil);
+                continue;
+            }
+            if (best == null || candidate.inFlight.get() < best.inFlight.get()) {
+                best = candidate;
+            }
+        }
+
+        if (best == null) {
+            throw new ApiException(String.format("All %d pooled %s keys are rate limited, retry in %d s",
+                    keys.size(), name, Math.max(1, (earliestRelease - now) / 1000)), "RATE_LIMITED");
+        }
+        best.inFlight.incrementAndGet();
+        best.requests.incrementAndGet();
+        return new KeyLease(this, best, best.key);
+    }
+
+    void release(PooledKey key) {
+        key.inFlight.decrementAndGet();
+    }
+
+    void onSuccess(PooledKey key) {
+        key.consecutiveRateLimits = 0;
+    }
+
+    void onRateLimited(PooledKey key, long retryAfterMs) {
+        key.rateLimited.incrementAndGet();
+        int strikes = ++key.consecutiveRateLimits;
+        long backoff = retryAfterMs > 0 ? retryAfterMs
+                : Math.min(maxQuarantineMs, quarantineMs << Math.min(strikes - 1, 16));
+        key.quarantinedUntil = System.currentTimeMillis() + backoff;
+        log.warn("Key {} rate limited, quarantined for {} ms", key.id, backoff);
+    }
+
+    public List<KeyUsageDto> usage() {
+        long now = System.currentTimeMillis();
+        List<KeyUsageDto> usage = new ArrayList<>();
+        for (PooledKey key : keys) {
+            usage.add(KeyUsageDto.builder()
+                    .id(key.id)
+                    .hint(hint(key.key))
+                    .inFlight(key.inFlight.get())
+                    .requests(key.requests.get())
+                    .rateLimited(key.rateLimited.get())
+                    .quarantinedForMs(Math.max(0, key.quarantinedUntil - now))
+                    .build());
+        }
+        return usage;
+    }
+
+    List<PooledKey> keys() {
+        return keys;
+    }
+
+    /** Last four characters only; the pool never reports full keys */
+    private static String hint(String key) {
+        return key.length() <= 8 ? "****" : "..." + key.substring(key.length() - 4);
+    }
+}
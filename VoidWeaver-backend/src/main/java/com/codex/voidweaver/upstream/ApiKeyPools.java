@@ -0,0 +1,96 @@
+package com.codex.voidweaver.upstream;
+
+import com.codex.voidweaver.exception.ApiException;
+import com.codex.voidweaver.model.dto.KeyUsageDto;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Key pools per upstream ("gemini", "novelai")
+ *
+ * Requests that bring their own key keep using it; requests that leave it blank
+ * are served from the pool. With no pool configured a blank key is rejected as before.
+ */
+@Slf4j
+@Component
+public class ApiKeyPools {
+
+    private final Map<String, ApiKeyPool> pools = new LinkedHashMap<>();
+
+    public ApiKeyPools(MeterRegistry meterRegistry,
+            @Value("${voidweaver.key-pool.gemini.keys:}") String geminiKeys,
+            @Value("${voidweaver.key-pool.novelai.keys:}") String novelaiKeys,
+            @Value("${voidweaver.key-pool.quarantine-ms:60000}") long quarantineMs,
+            @Value("${voidweaver.key-pool.max-quarantine-ms:600000}") long maxQuarantineMs) {
+        register(meterRegistry, new ApiKeyPool("gemini", split(geminiKeys), quarantineMs, maxQuarantineMs));
+        register(meterRegistry, new ApiKeyPool("novelai", split(novelaiKeys), quarantineMs, maxQuarantineMs));
+    }
+
+    /**
+     * Key for one call of the operation: the caller's own key if given, else a pooled one.
+     * Close the lease when the call is done.
+     *
+     * @throws ApiException INVALID_API_KEY if no key was given and the pool is empty
+     */
+    public KeyLease lease(UpstreamOperation operation, String callerKey) {
+        if (callerKey != null && !callerKey.isBlank()) {
+            return KeyLease.ofCallerKey(callerKey);
+        }
+        ApiKeyPool pool = pools.get(operation.getUpstream());
+        if (pool == null || pool.isEmpty()) {
+            throw new ApiException(operation.getUpstream() + " API key is required", "INVALID_API_KEY");
+        }
+        return pool.acquire();
+    }
+
+    /** Whether a blank key can be served for this upstream */
+    public boolean hasPool(String upstream) {
+        ApiKeyPool pool = pools.get(upstream);
+        return pool != null && !pool.isEmpty();
+    }
+
+    public Map<String, List<KeyUsageDto>> usage() {
+        Map<String, List<KeyUsageDto>> usage = new LinkedHashMap<>();
+        pools.forEach((name, pool) -> usage.put(name, pool.usage()));
+        return usage;
+    }
+
+    private void register(MeterRegistry meterRegistry, ApiKeyPool pool) {
+        pools.put(pool.getName(), pool);
+        if (pool.isEmpty()) {
+            return;
+        }
+        log.info("Key pool '{}' configured with {} keys", pool.getName(), pool.size());
+        for (ApiKeyPool.PooledKey key : pool.keys()) {
+            Gauge.builder("voidweaver.keypool.in_flight", key, k -> k.inFlight.get())
+                    .tag("key", key.id)
+                    .register(meterRegistry);
+            Gauge.builder("voidweaver.keypool.quarantined", key,
+                    k -> k.quarantinedUntil > System.currentTimeMillis() ? 1 : 0)
+                    .tag("key", key.id)
+                    .register(meterRegistry);
+            FunctionCounter.builder("voidweaver.keypool.requests", key, k -> k.requests.get())
+                    .tag("key", key.id)
+                    .register(meterRegistry);
+            FunctionCounter.builder("voidweaver.keypool.rate_limited", key, k -> k.rateLimited.get())
+                    .tag("key", key.id)
+                    .register(meterRegistry);
+        }
+    }
+
+    private static List<String> split(String keys) {
+        return Arrays.stream(keys.split(","))
+                .map(String::trim)
+                .filter(key -> !key.isEmpty())
+                .toList();
+    }
+}
@@ -0,0 +1,75 @@
+package com.codex.voidweaver.upstream;
+
+import com.codex.voidweaver.exception.ApiException;
+import okhttp3.Call;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cancellation handle for one generation
+ *
+ * OkHttp calls made for the generation register here; {@link #cancel()} cancels all
+ * of them and makes every later {@link #throwIfCancelled()} fail, so a workflow whose
+ * client has gone away stops at the next phase boundary.
+ */
+public class CancellationToken {
+
+    public static final String CANCELLED = "CANCELLED";
+
+    private final Set<Call> calls = ConcurrentHashMap.newKeySet();
+    private final Set<CancellationToken> children = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled = false;
+
+    public void register(Call call) {
+        calls.add(call);
+        if (cancelled) {
+            call.cancel();
+        }
+    }
+
+    /**
+     * Execute the call synchronously while keeping it cancellable through this token
+     * (including while the caller is still reading the response body)
+     */
+    public Response execute(Call call) throws IOException {
+        register(call);
+        return call.execute();
+    }
+
+    /**
+     * Token for one branch of this generation: cancelled along with this token, but
+     * cancelling it leaves this token and its other branches running
+     */
+    public CancellationToken child() {
+        CancellationToken child = new CancellationToken();
+        children.add(child);
+        if (cancelled) {
+            child.cancel();
+        }
+        return child;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (Call call : calls) {
+            call.cancel();
+        }
+        for (CancellationToken child : children) {
+            child.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new ApiException("Generation cancelled", CANCELLED);
+        }
+    }
+}
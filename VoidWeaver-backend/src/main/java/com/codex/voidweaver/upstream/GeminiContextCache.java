@@ -0,0 +1,254 @@
+package com.codex.voidweaver.upstream;
+
+import com.codex.voidweaver.config.UpstreamProperties;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Gemini context caching for the long, static system instructions
+ *
+ * Cached contents belong to the project behind an API key, so entries are kept per
+ * (key digest, instruction digest). Lookups never block: a miss starts an async
+ * create and the caller sends the instruction inline this time. Entries are
+ * extended before they expire while they are in use; idle ones are left to lapse.
+ * When creation fails (e.g. the instruction is below the model's minimum cacheable
+ * size, or the endpoint is unavailable) the miss is remembered for a while so we
+ * do not retry on every call. At most max-entries slots are tracked, least recently
+ * used evicted first; an evicted cache simply lapses upstream at its TTL.
+ */
+@Slf4j
+@Component
+public class GeminiContextCache {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final OkHttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final UpstreamProperties upstreamProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final long ttlSeconds;
+    private final long refreshAheadMs;
+    private final long negativeTtlMs;
+
+    private final Map<String, Entry> entries;
+
+    /** One cache slot; name is null while creating or after a failed create */
+    private static final class Entry {
+        volatile String name;
+        volatile long expiresAt;
+        volatile boolean pending;
+        volatile long retryAfter;
+    }
+
+    public GeminiContextCache(OkHttpClient httpClient, ObjectMapper objectMapper,
+            UpstreamProperties upstreamProperties, MeterRegistry meterRegistry,
+            @Value("${voidweaver.context-cache.enabled:true}") boolean enabled,
+            @Value("${voidweaver.context-cache.ttl-seconds:3600}") long ttlSeconds,
+            @Value("${voidweaver.context-cache.refresh-ahead-ms:300000}") long refreshAheadMs,
+            @Value("${voidweaver.context-cache.negative-ttl-ms:600000}") long negativeTtlMs,
+            @Value("${voidweaver.context-cache.max-entries:1024}") int maxEntries) {
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.upstreamProperties = upstreamProperties;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.ttlSeconds = ttlSeconds;
+        this.refreshAheadMs = refreshAheadMs;
+        this.negativeTtlMs = negativeTtlMs;
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Cached content name for this instruction under this key, if one is ready.
+     * Starts creation or a TTL extension in the background as needed.
+     */
+    public Optional<String> lookup(String apiKey, String systemInstruction) {
+        if (!enabled || apiKey == null || apiKey.isBlank()) {
+            return Optional.empty();
+        }
+        Entry entry = entries.computeIfAbsent(slot(apiKey, systemInstruction), k -> new Entry());
+        long now = System.currentTimeMillis();
+
+        String name = entry.name;
+        if (name != null && now < entry.expiresAt) {
+            if (entry.expiresAt - now < refreshAheadMs) {
+                startRefresh(entry, apiKey, name);
+            }
+            meterRegistry.counter("voidweaver.context-cache.lookups", "result", "hit").increment();
+            return Optional.of(name);
+        }
+
+        if (now >= entry.retryAfter) {
+            startCreate(entry, apiKey, systemInstruction);
+        }
+        meterRegistry.counter("voidweaver.context-cache.lookups", "result", "miss").increment();
+        return Optional.empty();
+    }
+
+    /**
+     * The upstream rejected a request referencing this cache (deleted or expired early);
+     * forget it so the next lookup recreates it
+     */
+    public void invalidate(String apiKey, String systemInstruction) {
+        Entry entry = entries.get(slot(apiKey, systemInstruction));
+        if (entry != null) {
+            entry.name = null;
+        }
+    }
+
+    private void startCreate(Entry entry, String apiKey, String systemInstruction) {
+        synchronized (entry) {
+            if (entry.pending) {
+                return;
+            }
+            entry.pending = true;
+        }
+
+        Map<String, Object> body = Map.of(
+                "model", "models/" + upstreamProperties.getGeminiTextModel(),
+                "systemInstruction", Map.of("parts", List.of(Map.of("text", systemInstruction))),
+                "ttl", ttlSeconds + "s");
+        Request request;
+        try {
+            request = new Request.Builder()
+                    .url(upstreamProperties.geminiCachedContentsUrl())
+                    .addHeader("x-goog-api-key", apiKey)
+                    .post(RequestBody.create(objectMapper.writeValueAsBytes(body), JSON))
+                    .build();
+        } catch (IOException e) {
+            onCreateFailed(entry, e.getMessage());
+            entry.pending = false;
+            return;
+        }
+
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        onCreateFailed(entry, "HTTP " + response.code());
+                        return;
+                    }
+                    store(entry, objectMapper.readTree(response.body().byteStream()));
+                    log.info("Created Gemini context cache {}", entry.name);
+                    meterRegistry.counter("voidweaver.context-cache.creates", "result", "ok").increment();
+                } catch (Exception e) {
+                    onCreateFailed(entry, e.getMessage());
+                } finally {
+                    entry.pending = false;
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                onCreateFailed(entry, e.getMessage());
+                entry.pending = false;
+            }
+        });
+    }
+
+    private void startRefresh(Entry entry, String apiKey, String name) {
+        synchronized (entry) {
+            if (entry.pending) {
+                return;
+            }
+            entry.pending = true;
+        }
+
+        Request request;
+        try {
+            request = new Request.Builder()
+                    .url(upstreamProperties.geminiResourceUrl(name) + "?updateMask=ttl")
+                    .addHeader("x-goog-api-key", apiKey)
+                    .patch(RequestBody.create(objectMapper.writeValueAsBytes(Map.of("ttl", ttlSeconds + "s")), JSON))
+                    .build();
+        } catch (IOException e) {
+            entry.pending = false;
+            return;
+        }
+
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try (response) {
+                    if (response.isSuccessful()) {
+                        store(entry, objectMapper.readTree(response.body().byteStream()));
+                        log.debug("Extended Gemini context cache {}", name);
+                    } else {
+                        // Let it lapse; the next lookup after expiry creates a fresh one
+                        log.warn("Failed to extend Gemini context cache {}: HTTP {}", name, response.code());
+                    }
+                } catch (Exception e) {
+                    log.warn("Failed to extend Gemini context cache {}: {}", name, e.getMessage());
+                } finally {
+                    entry.pending = false;
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                log.warn("Failed to extend Gemini context cache {}: {}", name, e.getMessage());
+                entry.pending = false;
+            }
+        });
+    }
+
+    private void store(Entry entry, JsonNode cachedContent) {
+        String expireTime = cachedContent.path("expireTime").asText(null);
+        entry.expiresAt = expireTime != null ? Instant.parse(expireTime).toEpochMilli()
+                : System.currentTimeMillis() + ttlSeconds * 1000;
+        entry.name = cachedContent.path("name").asText();
+    }
+
+    private void onCreateFailed(Entry entry, String reason) {
+        log.warn("Gemini context cache unavailable ({}), sending instructions inline for {} s", reason,
+                negativeTtlMs / 1000);
+        entry.name = null;
+        entry.retryAfter = System.currentTimeMillis() + negativeTtlMs;
+        meterRegistry.counter("voidweaver.context-cache.creates", "result", "failed").increment();
+    }
+
+    private static String slot(String apiKey, String systemInstruction) {
+        return digest(apiKey) + ":" + digest(systemInstruction);
+    }
+
+    private static String digest(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
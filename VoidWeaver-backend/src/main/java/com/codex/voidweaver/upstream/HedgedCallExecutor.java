@@ -0,0 +1,233 @@
+package com.codex.voidweaver.upstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hedged request execution for short, latency-critical upstream calls
+ *
+ * Sends the request once; if it has not answered after the configured percentile
+ * of recently observed latency, an identical second request is sent and whichever
+ * answers first wins. The loser is cancelled with {@link Call#cancel()}. A token
+ * budget caps hedges to a fraction of traffic so a slow upstream is not doubled.
+ */
+@Slf4j
+@Component
+public class HedgedCallExecutor {
+
+    private final LatencyTracker latencyTracker;
+    private final TimeoutPolicy timeoutPolicy;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final double budgetRatio;
+    private final long minDelayMs;
+    private final int minSamples;
+
+    /** Hedge budget in thousandths of a token, refilled by budgetRatio per request */
+    private long budgetMilliTokens;
+    private static final long MAX_BUDGET_MILLI_TOKENS = 10_000;
+
+    public HedgedCallExecutor(LatencyTracker latencyTracker, TimeoutPolicy timeoutPolicy, MeterRegistry meterRegistry,
+            @Value("${voidweaver.hedging.enabled:false}") boolean enabled,
+            @Value("${voidweaver.hedging.percentile:0.95}") double percentile,
+            @Value("${voidweaver.hedging.budget-ratio:0.05}") double budgetRatio,
+            @Value("${voidweaver.hedging.min-delay-ms:200}") long minDelayMs,
+            @Value("${voidweaver.hedging.min-samples:20}") int minSamples) {
+        this.latencyTracker = latencyTracker;
+        this.timeoutPolicy = timeoutPolicy;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+        this.minDelayMs = minDelayMs;
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Execute the request, hedging it if enabled and the budget allows.
+     * The caller owns (and must close) the returned response.
+     */
+    public Response execute(OkHttpClient client, Request request, UpstreamOperation operation) throws IOException {
+        return execute(client, request, operation, null);
+    }
+
+    /**
+     * Same as above; every call sent (primary and hedge) is registered with the token
+     */
+    public Response execute(OkHttpClient client, Request request, UpstreamOperation operation,
+            CancellationToken token) throws IOException {
+        counter("voidweaver.hedge.requests", operation).increment();
+        refillBudget();
+
+        long delayMs = hedgeDelay(operation);
+        if (!enabled || delayMs < 0) {
+            long start = System.nanoTime();
+            Call call = timeoutPolicy.newCall(client, request, operation);
+            Response response = token != null ? token.execute(call) : call.execute();
+            latencyTracker.record(operation, elapsedMs(start));
+            return response;
+        }
+
+        long start = System.nanoTime();
+        Race race = new Race(operation, start, token);
+        race.launch(client, request, false);
+
+        try {
+            return race.result.get(delayMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (tryAcquireBudget()) {
+                log.debug("Hedging {} after {} ms", operation.getKey(), delayMs);
+                counter("voidweaver.hedge.sent", operation).increment();
+                race.launch(client, request, true);
+            }
+            return await(race);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            race.cancelAll();
+            throw new InterruptedIOException("Interrupted while waiting for " + operation.getKey());
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private Response await(Race race) throws IOException {
+        try {
+            return race.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            race.cancelAll();
+            throw new InterruptedIOException("Interrupted while waiting for " + race.operation.getKey());
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /** Hedge delay from the latency window, or -1 if there is not enough data yet */
+    private long hedgeDelay(UpstreamOperation operation) {
+        long observed = latencyTracker.percentile(operation, percentile, minSamples);
+        return observed < 0 ? -1 : Math.max(minDelayMs, observed);
+    }
+
+    private synchronized void refillBudget() {
+        budgetMilliTokens = Math.min(MAX_BUDGET_MILLI_TOKENS, budgetMilliTokens + Math.round(budgetRatio * 1000));
+    }
+
+    private synchronized boolean tryAcquireBudget() {
+        if (budgetMilliTokens < 1000) {
+            return false;
+        }
+        budgetMilliTokens -= 1000;
+        return true;
+    }
+
+    private Counter counter(String name, UpstreamOperation operation) {
+        return meterRegistry.counter(name, "operation", operation.getKey());
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        return e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+    }
+
+    /**
+     * One primary and at most one hedge call racing for the same result
+     */
+    private final class Race {
+        private final UpstreamOperation operation;
+        private final long start;
+        private final CancellationToken token;
+        private final CompletableFuture<Response> result = new CompletableFuture<>();
+        private final List<Call> calls = new CopyOnWriteArrayList<>();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        Race(UpstreamOperation operation, long start, CancellationToken token) {
+            this.operation = operation;
+            this.start = start;
+            this.token = token;
+        }
+
+        void launch(OkHttpClient client, Request request, boolean hedge) {
+            Call call = timeoutPolicy.newCall(client, request, operation);
+            calls.add(call);
+            if (token != null) {
+                token.register(call);
+            }
+            pending.incrementAndGet();
+            call.enqueue(new Callback() {
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    pending.decrementAndGet();
+                    if (!result.complete(response)) {
+                        response.close();
+                        return;
+                    }
+                    long elapsed = elapsedMs(start);
+                    if (hedge) {
+                        onHedgeWon(elapsed);
+                    } else {
+                        latencyTracker.record(operation, elapsed);
+                    }
+                    cancelOthers(call);
+                }
+
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    if (pending.decrementAndGet() == 0) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        }
+
+        private void onHedgeWon(long elapsed) {
+            counter("voidweaver.hedge.wins", operation).increment();
+            // The primary was cancelled, so its true latency is unknown; estimate the saving
+            // against the tail of the observed distribution
+            long tail = latencyTracker.percentile(operation, 0.99, minSamples);
+            Timer.builder("voidweaver.hedge.latency.saved")
+                    .tag("operation", operation.getKey())
+                    .register(meterRegistry)
+                    .record(Duration.ofMillis(Math.max(0, tail - elapsed)));
+            // Record the primary as at least this slow so the window keeps seeing the tail
+            latencyTracker.record(operation, elapsed);
+        }
+
+        private void cancelOthers(Call winner) {
+            for (Call call : calls) {
+                if (call != winner) {
+                    call.cancel();
+                }
+            }
+        }
+
+        void cancelAll() {
+            calls.forEach(Call::cancel);
+        }
+    }
+}
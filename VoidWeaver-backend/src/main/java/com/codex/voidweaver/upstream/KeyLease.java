@@ -0,0 +1,67 @@
+package com.codex.voidweaver.upstream;
+
+import okhttp3.Response;
+
+/**
+ * The API key one upstream call is made with
+ *
+ * Either borrowed from an {@link ApiKeyPool} (counted as in flight until closed,
+ * quarantined on 429) or the caller's own key, which is passed through untouched.
+ */
+public final class KeyLease implements AutoCloseable {
+
+    private final ApiKeyPool pool;
+    private final ApiKeyPool.PooledKey pooled;
+    private final String key;
+    private boolean closed;
+
+    KeyLease(ApiKeyPool pool, ApiKeyPool.PooledKey pooled, String key) {
+        this.pool = pool;
+        this.pooled = pooled;
+        this.key = key;
+    }
+
+    static KeyLease ofCallerKey(String key) {
+        return new KeyLease(null, null, key);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public boolean isPooled() {
+        return pooled != null;
+    }
+
+    /** Feed the upstream's answer back into the pool (quota feedback) */
+    void onResponse(Response response) {
+        if (pooled == null) {
+            return;
+        }
+        if (response.code() == 429) {
+            pool.onRateLimited(pooled, retryAfterMs(response.header("Retry-After")));
+        } else if (response.isSuccessful()) {
+            pool.onSuccess(pooled);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (pooled != null && !closed) {
+            closed = true;
+            pool.release(pooled);
+        }
+    }
+
+    /** Retry-After in delay-seconds form; HTTP dates fall back to the pool's default */
+    private static long retryAfterMs(String retryAfter) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(retryAfter.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.codex.voidweaver.upstream;
+
+import com.codex.voidweaver.model.dto.KeyUsageDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GET /actuator/keypool: per-key load, request and 429 counts, quarantine state
+ */
+@Component
+@Endpoint(id = "keypool")
+@RequiredArgsConstructor
+public class KeyPoolEndpoint {
+
+    private final ApiKeyPools apiKeyPools;
+
+    @ReadOperation
+    public Map<String, List<KeyUsageDto>> usage() {
+        return apiKeyPools.usage();
+    }
+}
@@ -0,0 +1,72 @@
+package com.codex.voidweaver.upstream;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Rolling latency window per upstream operation
+ * Keeps the most recent samples in a fixed ring buffer and answers percentile queries
+ */
+@Component
+public class LatencyTracker {
+
+    private static final int WINDOW_SIZE = 512;
+
+    private final Map<UpstreamOperation, Window> windows = new EnumMap<>(UpstreamOperation.class);
+
+    public LatencyTracker() {
+        for (UpstreamOperation operation : UpstreamOperation.values()) {
+            windows.put(operation, new Window());
+        }
+    }
+
+    public void record(UpstreamOperation operation, long millis) {
+        windows.get(operation).add(millis);
+    }
+
+    /**
+     * @return the given percentile (0.0 - 1.0) of the window, or -1 if fewer than
+     *         minSamples latencies have been recorded
+     */
+    public long percentile(UpstreamOperation operation, double percentile, int minSamples) {
+        return windows.get(operation).percentile(percentile, minSamples);
+    }
+
+    public int sampleCount(UpstreamOperation operation) {
+        return windows.get(operation).count();
+    }
+
+    private static final class Window {
+        private final long[] samples = new long[WINDOW_SIZE];
+        private int next = 0;
+        private int size = 0;
+
+        synchronized void add(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % WINDOW_SIZE;
+            if (size < WINDOW_SIZE) {
+                size++;
+            }
+        }
+
+        synchronized int count() {
+            return size;
+        }
+
+        long percentile(double percentile, int minSamples) {
+            long[] copy;
+            synchronized (this) {
+                if (size == 0 || size < minSamples) {
+                    return -1;
+                }
+                copy = Arrays.copyOf(samples, size);
+            }
+            Arrays.sort(copy);
+            int index = (int) Math.ceil(percentile * copy.length) - 1;
+            return copy[Math.max(0, Math.min(copy.length - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.codex.voidweaver.upstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Logging of upstream payloads (prompts, responses, error bodies)
+ *
+ * Callers only hand over a reference to the payload; a single background writer
+ * truncates it, collapses inline base64, redacts credentials and writes it through the
+ * caller's logger, tagged with the full length and a hash of the full body so repeats
+ * can be matched. Entries wait in a bounded ring buffer that drops the oldest when
+ * full, so logging never blocks or slows a request thread.
+ */
+@Slf4j
+@Component
+public class PayloadLogger {
+
+    /** Base64 runs at least this long are images or other binary; only their length is kept */
+    private static final int BASE64_RUN = 256;
+
+    // Open-ended so a key cut off by truncation is still masked
+    private static final Pattern GOOGLE_API_KEY = Pattern.compile("AIza[0-9A-Za-z_\\-]*");
+    private static final Pattern KEY_PARAM = Pattern.compile("([?&]key=)[^&\\s\"]+");
+    private static final Pattern BEARER = Pattern.compile("(Bearer\\s+)[A-Za-z0-9._~+/=\\-]+");
+
+    private record Entry(Logger logger, Level level, String label, String payload) {
+    }
+
+    private final int maxChars;
+    private final double sampleRate;
+    private final ArrayBlockingQueue<Entry> queue;
+    private final Counter dropped;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public PayloadLogger(MeterRegistry meterRegistry,
+            @Value("${voidweaver.payload-log.max-chars:2048}") int maxChars,
+            @Value("${voidweaver.payload-log.sample-rate:1.0}") double sampleRate,
+            @Value("${voidweaver.payload-log.queue-capacity:1024}") int queueCapacity) {
+        this.maxChars = maxChars;
+        this.sampleRate = sampleRate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.dropped = meterRegistry.counter("voidweaver.payload-log.dropped");
+        this.writer = new Thread(this::drain, "payload-logger");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Log a payload at DEBUG if the logger has it enabled, subject to the sample rate
+     */
+    public void debug(Logger logger, String label, String payload) {
+        if (!logger.isDebugEnabled() || (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+        enqueue(new Entry(logger, Level.DEBUG, label, payload));
+    }
+
+    /**
+     * Log a payload at ERROR; not sampled
+     */
+    public void error(Logger logger, String label, String payload) {
+        if (logger.isErrorEnabled()) {
+            enqueue(new Entry(logger, Level.ERROR, label, payload));
+        }
+    }
+
+    /**
+     * Short redacted excerpt, cheap enough for exception messages built on the request thread
+     */
+    public static String excerpt(String payload, int maxChars) {
+        return payload == null ? "null" : redact(truncate(payload, maxChars));
+    }
+
+    private void enqueue(Entry entry) {
+        // Ring buffer: make room by discarding the oldest entry
+        while (!queue.offer(entry)) {
+            if (queue.poll() != null) {
+                dropped.increment();
+            }
+        }
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                write(queue.take());
+            } catch (InterruptedException e) {
+                if (!running) {
+                    break;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to write payload log entry: {}", e.getMessage());
+            }
+        }
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            write(entry);
+        }
+    }
+
+    private void write(Entry entry) {
+        String payload = entry.payload() != null ? entry.payload() : "null";
+        String message = String.format("%s [%d chars, sha256:%s]: %s", entry.label(), payload.length(),
+                hash(payload), excerpt(payload, maxChars));
+        entry.logger().atLevel(entry.level()).log(message);
+    }
+
+    /**
+     * First maxChars characters of the payload, with long base64 runs replaced by their length.
+     * Only scans as far as needed to fill the excerpt (plus the run being collapsed).
+     */
+    private static String truncate(String payload, int maxChars) {
+        StringBuilder out = new StringBuilder(Math.min(payload.length(), maxChars) + 32);
+        int i = 0;
+        while (i < payload.length() && out.length() < maxChars) {
+            int end = i;
+            while (end < payload.length() && isBase64(payload.charAt(end))) {
+                end++;
+            }
+            if (end - i >= BASE64_RUN) {
+                out.append("<base64 ").append(end - i).append(" chars>");
+                i = end;
+            } else if (end > i) {
+                int take = Math.min(end - i, maxChars - out.length());
+                out.append(payload, i, i + take);
+                i += take;
+            } else {
+                out.append(payload.charAt(i++));
+            }
+        }
+        if (i < payload.length()) {
+            out.append("... (").append(payload.length() - i).append(" more chars)");
+        }
+        return out.toString();
+    }
+
+    private static boolean isBase64(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '+' || c == '/'
+                || c == '=';
+    }
+
+    private static String redact(String text) {
+        String redacted = GOOGLE_API_KEY.matcher(text).replaceAll("AIza***");
+        redacted = KEY_PARAM.matcher(redacted).replaceAll("$1***");
+        return BEARER.matcher(redacted).replaceAll("$1***");
+    }
+
+    private static String hash(String payload) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(payload.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(5000);
+    }
+}
@@ -0,0 +1,91 @@
+package com.codex.voidweaver.upstream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-operation deadlines for upstream calls
+ *
+ * Each call gets an OkHttp call timeout (connect, send and the whole response body)
+ * of the operation's recent completion-time percentile times a multiplier, clamped
+ * to the bounds of its engine group. Until an operation has enough samples it gets
+ * the upper bound. A hung two-second text call then fails in seconds while image
+ * renders, whose own distribution is far slower, keep their long deadline.
+ *
+ * Completion times are kept apart from the hedging window, which measures time to
+ * first byte. Calls that time out are recorded at their deadline so a slower
+ * upstream raises the percentile instead of timing out forever.
+ */
+@Component
+public class TimeoutPolicy {
+
+    private final LatencyTracker completions = new LatencyTracker();
+
+    private final boolean enabled;
+    private final double percentile;
+    private final double multiplier;
+    private final int minSamples;
+    /** {min, max} in ms per bulkhead group */
+    private final Map<String, long[]> bounds;
+
+    public TimeoutPolicy(MeterRegistry meterRegistry,
+            @Value("${voidweaver.timeouts.enabled:true}") boolean enabled,
+            @Value("${voidweaver.timeouts.percentile:0.99}") double percentile,
+            @Value("${voidweaver.timeouts.multiplier:3.0}") double multiplier,
+            @Value("${voidweaver.timeouts.min-samples:20}") int minSamples,
+            @Value("${voidweaver.timeouts.gemini-text.min-ms:10000}") long textMinMs,
+            @Value("${voidweaver.timeouts.gemini-text.max-ms:120000}") long textMaxMs,
+            @Value("${voidweaver.timeouts.gemini-image.min-ms:30000}") long imageMinMs,
+            @Value("${voidweaver.timeouts.gemini-image.max-ms:300000}") long imageMaxMs,
+            @Value("${voidweaver.timeouts.novelai.min-ms:20000}") long novelaiMinMs,
+            @Value("${voidweaver.timeouts.novelai.max-ms:300000}") long novelaiMaxMs) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.multiplier = multiplier;
+        this.minSamples = minSamples;
+        this.bounds = Map.of(
+                "gemini-text", new long[] { textMinMs, textMaxMs },
+                "gemini-image", new long[] { imageMinMs, imageMaxMs },
+                "novelai", new long[] { novelaiMinMs, novelaiMaxMs });
+
+        for (UpstreamOperation operation : UpstreamOperation.values()) {
+            Gauge.builder("voidweaver.upstream.deadline", this, policy -> policy.deadlineMs(operation))
+                    .tag("operation", operation.getKey())
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * New call for the request with the operation's current deadline applied
+     */
+    public Call newCall(OkHttpClient client, Request request, UpstreamOperation operation) {
+        Call call = client.newCall(request);
+        if (enabled) {
+            call.timeout().timeout(deadlineMs(operation), TimeUnit.MILLISECONDS);
+        }
+        return call;
+    }
+
+    public long deadlineMs(UpstreamOperation operation) {
+        long[] bound = bounds.get(operation.getBulkhead());
+        long observed = completions.percentile(operation, percentile, minSamples);
+        if (observed < 0) {
+            return bound[1];
+        }
+        return Math.max(bound[0], Math.min(bound[1], Math.round(observed * multiplier)));
+    }
+
+    /** Record the time from sending a call to having consumed its response */
+    public void record(UpstreamOperation operation, long millis) {
+        completions.record(operation, millis);
+    }
+}
@@ -0,0 +1,224 @@
+package com.codex.voidweaver.upstream;
+
+import com.codex.voidweaver.exception.ApiException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Isolates upstream providers from each other
+ *
+ * Every call goes through a circuit breaker for its operation and a bulkhead for
+ * its engine. An open breaker or a full bulkhead fails fast with an
+ * {@link ApiException} instead of tying up another request thread.
+ */
+@Slf4j
+@Component
+public class UpstreamGuard {
+
+    public static final String UPSTREAM_UNAVAILABLE = "UPSTREAM_UNAVAILABLE";
+    public static final String UPSTREAM_BUSY = "UPSTREAM_BUSY";
+    public static final String UPSTREAM_TIMEOUT = "UPSTREAM_TIMEOUT";
+
+    /** Sends the HTTP request (the caller decides how: plain, hedged, ...) */
+    @FunctionalInterface
+    public interface Exchange {
+        Response execute() throws IOException;
+    }
+
+    /** Sends the HTTP request with the API key chosen for this call */
+    @FunctionalInterface
+    public interface KeyedExchange {
+        Response execute(String apiKey) throws IOException;
+    }
+
+    /** Consumes the response inside the guard; the guard closes it afterwards */
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+        T handle(Response response) throws Exception;
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final ApiKeyPools apiKeyPools;
+    private final TimeoutPolicy timeoutPolicy;
+    private final long bulkheadMaxWaitMs;
+    private final Map<UpstreamOperation, CircuitBreaker> breakers = new EnumMap<>(UpstreamOperation.class);
+    private final Map<String, Bulkhead> bulkheads = new HashMap<>();
+
+    public UpstreamGuard(MeterRegistry meterRegistry, ApiKeyPools apiKeyPools, TimeoutPolicy timeoutPolicy,
+            @Value("${voidweaver.circuit-breaker.window-size:20}") int windowSize,
+            @Value("${voidweaver.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${voidweaver.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+            @Value("${voidweaver.circuit-breaker.open-duration-ms:30000}") long openDurationMs,
+            @Value("${voidweaver.bulkhead.gemini-text.max-concurrent:32}") int geminiTextConcurrency,
+            @Value("${voidweaver.bulkhead.gemini-image.max-concurrent:8}") int geminiImageConcurrency,
+            @Value("${voidweaver.bulkhead.novelai.max-concurrent:4}") int novelaiConcurrency,
+            @Value("${voidweaver.bulkhead.max-wait-ms:2000}") long bulkheadMaxWaitMs) {
+        this.meterRegistry = meterRegistry;
+        this.apiKeyPools = apiKeyPools;
+        this.timeoutPolicy = timeoutPolicy;
+        this.bulkheadMaxWaitMs = bulkheadMaxWaitMs;
+
+        registerBulkhead(new Bulkhead("gemini-text", geminiTextConcurrency));
+        registerBulkhead(new Bulkhead("gemini-image", geminiImageConcurrency));
+        registerBulkhead(new Bulkhead("novelai", novelaiConcurrency));
+
+        for (UpstreamOperation operation : UpstreamOperation.values()) {
+            CircuitBreaker breaker = new CircuitBreaker(operation.getKey(), windowSize, minimumCalls,
+                    failureRateThreshold, openDurationMs);
+            breakers.put(operation, breaker);
+            Gauge.builder("voidweaver.circuit.open", breaker, b -> b.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                    .tag("operation", operation.getKey())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Run one upstream exchange under the operation's breaker and engine bulkhead.
+     * Network errors and 5xx responses count as failures; 4xx responses (bad key,
+     * quota) are the caller's problem, not the provider's, and count as successes.
+     * The handler typically throws for non-2xx responses. A call that runs past its
+     * {@link TimeoutPolicy} deadline fails with UPSTREAM_TIMEOUT.
+     */
+    public <T> T execute(UpstreamOperation operation, Exchange exchange, ResponseHandler<T> handler)
+            throws Exception {
+        return execute(operation, null, exchange, handler);
+    }
+
+    /**
+     * Same as above for a cancellable generation. Failures caused by cancelling the
+     * token are not held against the upstream.
+     */
+    public <T> T execute(UpstreamOperation operation, CancellationToken token, Exchange exchange,
+            ResponseHandler<T> handler) throws Exception {
+        return execute(operation, token, null, exchange, handler);
+    }
+
+    /**
+     * Same as above, with the API key resolved per call: the caller's key if given,
+     * otherwise the least-loaded key of the upstream's pool. 429 answers quarantine
+     * the pooled key.
+     */
+    public <T> T execute(UpstreamOperation operation, CancellationToken token, String callerKey,
+            KeyedExchange exchange, ResponseHandler<T> handler) throws Exception {
+        try (KeyLease lease = apiKeyPools.lease(operation, callerKey)) {
+            return execute(operation, token, lease, () -> exchange.execute(lease.getKey()), handler);
+        }
+    }
+
+    private <T> T execute(UpstreamOperation operation, CancellationToken token, KeyLease lease, Exchange exchange,
+            ResponseHandler<T> handler) throws Exception {
+        if (token != null) {
+            token.throwIfCancelled();
+        }
+
+        CircuitBreaker breaker = breakers.get(operation);
+        if (!breaker.tryAcquirePermission()) {
+            meterRegistry.counter("voidweaver.circuit.rejected", "operation", operation.getKey()).increment();
+            throw new ApiException(String.format("%s %s is temporarily unavailable, retry in %d s",
+                    operation.getUpstream(), operation.getOperation(),
+                    Math.max(1, breaker.getRemainingOpenMs() / 1000)), UPSTREAM_UNAVAILABLE);
+        }
+
+        Bulkhead bulkhead = bulkheads.get(operation.getBulkhead());
+        boolean admitted;
+        try {
+            admitted = bulkhead.tryAcquire(bulkheadMaxWaitMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            breaker.onIgnored();
+            throw new ApiException("Interrupted while waiting for " + operation.getKey(), "INTERNAL_ERROR", e);
+        }
+        if (!admitted) {
+            // Not the provider's fault, just our own concurrency cap
+            breaker.onIgnored();
+            meterRegistry.counter("voidweaver.bulkhead.rejected", "bulkhead", bulkhead.getName()).increment();
+            throw new ApiException(String.format("Too many concurrent %s requests, please retry shortly",
+                    bulkhead.getName()), UPSTREAM_BUSY);
+        }
+
+        long start = System.nanoTime();
+        try {
+            Response response;
+            try {
+                response = exchange.execute();
+            } catch (IOException | RuntimeException e) {
+                if (token != null && token.isCancelled()) {
+                    breaker.onIgnored();
+                    token.throwIfCancelled();
+                }
+                breaker.onFailure();
+                if (e instanceof InterruptedIOException timeout) {
+                    throw timedOut(operation, start, timeout);
+                }
+                throw e;
+            }
+
+            if (lease != null) {
+                lease.onResponse(response);
+            }
+            boolean failed = response.code() >= 500;
+            try (response) {
+                T result = handler.handle(response);
+                if (!failed) {
+                    timeoutPolicy.record(operation, elapsedMs(start));
+                }
+                return result;
+            } catch (IOException e) {
+                if (token != null) {
+                    // Cancelled mid-body: the upstream did answer, so no failure is recorded
+                    token.throwIfCancelled();
+                }
+                // Body read failed or timed out mid-stream
+                failed = true;
+                if (e instanceof InterruptedIOException timeout) {
+                    throw timedOut(operation, start, timeout);
+                }
+                throw e;
+            } finally {
+                if (failed) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+            }
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    private ApiException timedOut(UpstreamOperation operation, long start, InterruptedIOException e) {
+        long elapsed = elapsedMs(start);
+        // Counted at the deadline so the window learns that the upstream got slower
+        timeoutPolicy.record(operation, elapsed);
+        meterRegistry.counter("voidweaver.upstream.timeouts", "operation", operation.getKey()).increment();
+        log.warn("{} timed out after {} ms", operation.getKey(), elapsed);
+        return new ApiException(String.format("%s %s timed out after %d s", operation.getUpstream(),
+                operation.getOperation(), Math.max(1, elapsed / 1000)), UPSTREAM_TIMEOUT, e);
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    public CircuitBreaker.State getState(UpstreamOperation operation) {
+        return breakers.get(operation).getState();
+    }
+
+    private void registerBulkhead(Bulkhead bulkhead) {
+        bulkheads.put(bulkhead.getName(), bulkhead);
+        Gauge.builder("voidweaver.bulkhead.in_flight", bulkhead, Bulkhead::getInFlight)
+                .tag("bulkhead", bulkhead.getName())
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,43 @@
+package com.codex.voidweaver.upstream;
+
+/**
+ * Upstream AI API operations
+ * Used as the key for latency tracking and per-operation policies
+ */
+public enum UpstreamOperation {
+    GEMINI_ANALYZE("gemini", "analyze", "gemini-text"),
+    GEMINI_ANALYZE_BATCH("gemini", "analyze-batch", "gemini-text"),
+    GEMINI_REFINE("gemini", "refine", "gemini-text"),
+    GEMINI_CRITIQUE("gemini", "critique", "gemini-text"),
+    GEMINI_SUGGEST("gemini", "suggest", "gemini-text"),
+    GEMINI_IMAGE("gemini", "image", "gemini-image"),
+    NOVELAI_GENERATE("novelai", "generate", "novelai");
+
+    private final String upstream;
+    private final String operation;
+    private final String bulkhead;
+
+    UpstreamOperation(String upstream, String operation, String bulkhead) {
+        this.upstream = upstream;
+        this.operation = operation;
+        this.bulkhead = bulkhead;
+    }
+
+    public String getUpstream() {
+        return upstream;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /** Engine-level concurrency group this operation is admitted through */
+    public String getBulkhead() {
+        return bulkhead;
+    }
+
+    /** e.g. "gemini.critique", used as metric tag */
+    public String getKey() {
+        return upstream + "." + operation;
+    }
+}
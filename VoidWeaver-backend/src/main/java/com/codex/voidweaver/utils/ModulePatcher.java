@@ -0,0 +1,154 @@
+package com.codex.voidweaver.utils;
+
+import com.codex.voidweaver.model.dto.ModuleDto;
+import com.codex.voidweaver.model.dto.TagDto;
+import com.codex.voidweaver.model.dto.TagOperationDto;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 模块增量合并工具
+ * Applies tag operations from a patch-mode refine onto the original module list
+ */
+@Slf4j
+public class ModulePatcher {
+
+    /**
+     * 将增量操作应用到原始模块上，返回完整的新模块列表 (含锁定模块)
+     * 原始列表不会被修改；针对锁定模块或未知标签的操作会被忽略
+     */
+    public static List<ModuleDto> applyPatch(List<ModuleDto> original, List<TagOperationDto> operations) {
+        List<ModuleDto> result = new ArrayList<>(original.size());
+        Map<String, ModuleDto> modulesByName = new HashMap<>();
+        Map<String, ModuleDto> moduleByTagId = new HashMap<>();
+
+        for (ModuleDto module : original) {
+            ModuleDto copy = copyModule(module);
+            result.add(copy);
+            modulesByName.putIfAbsent(copy.getName(), copy);
+            for (TagDto tag : copy.getTags()) {
+                if (tag.getId() != null) {
+                    moduleByTagId.put(tag.getId(), copy);
+                }
+            }
+        }
+
+        if (operations == null) {
+            return result;
+        }
+
+        for (TagOperationDto operation : operations) {
+            if (operation == null || operation.getOp() == null) {
+                continue;
+            }
+            switch (operation.getOp().toLowerCase()) {
+                case TagOperationDto.ADD -> applyAdd(modulesByName, moduleByTagId, operation);
+                case TagOperationDto.REMOVE -> applyRemove(moduleByTagId, operation);
+                case TagOperationDto.REWEIGHT -> applyReweight(moduleByTagId, operation);
+                default -> log.warn("Ignoring unknown patch operation: {}", operation.getOp());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 将整模块精炼结果合并回原始模块列表，返回完整列表 (含锁定与未改动的模块)
+     * 按名称替换未锁定模块；锁定模块与原始列表中没有的模块名均被忽略
+     */
+    public static List<ModuleDto> mergeRefined(List<ModuleDto> original, List<ModuleDto> refined) {
+        Map<String, ModuleDto> refinedByName = new HashMap<>();
+        if (refined != null) {
+            for (ModuleDto module : refined) {
+                if (module != null && module.getName() != null) {
+                    refinedByName.putIfAbsent(module.getName(), module);
+                }
+            }
+        }
+
+        List<ModuleDto> result = new ArrayList<>(original.size());
+        for (ModuleDto module : original) {
+            ModuleDto replacement = isLocked(module) ? null : refinedByName.get(module.getName());
+            if (replacement == null) {
+                result.add(copyModule(module));
+                continue;
+            }
+            ModuleDto copy = copyModule(replacement);
+            // Identity stays the submitted module's; only the tags are Gemini's
+            copy.setDisplayName(module.getDisplayName());
+            copy.setLocked(module.getLocked());
+            result.add(copy);
+        }
+        return result;
+    }
+
+    private static void applyAdd(Map<String, ModuleDto> modulesByName, Map<String, ModuleDto> moduleByTagId,
+            TagOperationDto operation) {
+        ModuleDto module = modulesByName.get(operation.getModule());
+        if (module == null || isLocked(module) || operation.getText() == null || operation.getText().isBlank()) {
+            log.warn("Ignoring add operation for module: {}", operation.getModule());
+            return;
+        }
+
+        TagDto tag = TagDto.builder()
+                .id(UUID.randomUUID().toString())
+                .text(operation.getText().trim())
+                .weight(operation.getWeight() != null ? operation.getWeight() : 1.0)
+                .hidden(Boolean.TRUE.equals(operation.getHidden()))
+                .build();
+        module.getTags().add(tag);
+        moduleByTagId.put(tag.getId(), module);
+    }
+
+    private static void applyRemove(Map<String, ModuleDto> moduleByTagId, TagOperationDto operation) {
+        ModuleDto module = moduleByTagId.get(operation.getTagId());
+        if (module == null || isLocked(module)) {
+            log.warn("Ignoring remove operation for tag: {}", operation.getTagId());
+            return;
+        }
+        module.getTags().removeIf(tag -> operation.getTagId().equals(tag.getId()));
+        moduleByTagId.remove(operation.getTagId());
+    }
+
+    private static void applyReweight(Map<String, ModuleDto> moduleByTagId, TagOperationDto operation) {
+        ModuleDto module = moduleByTagId.get(operation.getTagId());
+        if (module == null || isLocked(module) || operation.getWeight() == null) {
+            log.warn("Ignoring reweight operation for tag: {}", operation.getTagId());
+            return;
+        }
+        for (TagDto tag : module.getTags()) {
+            if (operation.getTagId().equals(tag.getId())) {
+                tag.setWeight(operation.getWeight());
+            }
+        }
+    }
+
+    private static boolean isLocked(ModuleDto module) {
+        return Boolean.TRUE.equals(module.getLocked());
+    }
+
+    private static ModuleDto copyModule(ModuleDto module) {
+        List<TagDto> tags = new ArrayList<>();
+        if (module.getTags() != null) {
+            for (TagDto tag : module.getTags()) {
+                tags.add(TagDto.builder()
+                        .id(tag.getId())
+                        .text(tag.getText())
+                        .weight(tag.getWeight())
+                        .hidden(tag.getHidden())
+                        .build());
+            }
+        }
+        return ModuleDto.builder()
+                .name(module.getName())
+                .displayName(module.getDisplayName())
+                .locked(module.getLocked())
+                .tags(tags)
+                .build();
+    }
+}
@@ -0,0 +1,81 @@
+package com.codex.voidweaver.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量 JSON 模块解析器
+ * Consumes Gemini's streamed JSON text fragment by fragment and hands back each
+ * module object of the top-level "modules" array as soon as its closing brace
+ * arrives. Only tracks nesting and string state, it does not validate JSON.
+ */
+public class ModuleStreamParser {
+
+    private final StringBuilder buffer = new StringBuilder();
+    private final StringBuilder stack = new StringBuilder();
+    private int scanned = 0;
+    private int moduleStart = -1;
+    private boolean inString = false;
+    private boolean escaped = false;
+
+    /**
+     * 追加一段文本，返回本次新完成的模块 JSON 字符串
+     */
+    public List<String> feed(String fragment) {
+        List<String> completed = new ArrayList<>();
+        if (fragment == null || fragment.isEmpty()) {
+            return completed;
+        }
+        buffer.append(fragment);
+
+        for (; scanned < buffer.length(); scanned++) {
+            char c = buffer.charAt(scanned);
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+
+            switch (c) {
+                case '"' -> inString = true;
+                case '{', '[' -> {
+                    if (c == '{' && isModuleLevel()) {
+                        moduleStart = scanned;
+                    }
+                    stack.append(c);
+                }
+                case '}', ']' -> {
+                    if (stack.length() > 0) {
+                        stack.setLength(stack.length() - 1);
+                    }
+                    if (c == '}' && moduleStart >= 0 && isModuleLevel()) {
+                        completed.add(buffer.substring(moduleStart, scanned + 1));
+                        moduleStart = -1;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+
+        return completed;
+    }
+
+    /**
+     * 已接收的完整文本
+     */
+    public String getText() {
+        return buffer.toString();
+    }
+
+    /** Inside the root object's array, i.e. where module objects start and end */
+    private boolean isModuleLevel() {
+        return stack.length() == 2 && stack.charAt(0) == '{' && stack.charAt(1) == '[';
+    }
+}
@@ -6,6 +6,8 @@ import com.codex.voidweaver.model.enums.EngineType;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -15,6 +17,9 @@ import java.util.stream.Collectors;
 @Slf4j
 public class PromptFormatter {
 
+    // "weight::text::" — groups: 1 = weight (number), 2 = text
+    private static final Pattern WEIGHTED_SEGMENT = Pattern.compile("(\\d+(?:\\.\\d+)?)::(.*?)::");
+
     /**
      * 将模块列表格式化为完整提示词
      */
@@ -73,4 +78,56 @@ public class PromptFormatter {
                 .map(TagDto::getText)
                 .collect(Collectors.joining(", "));
     }
+
+    /**
+     * Gemini 提示词预处理: 将 "weight::text::" 转换为自然语言描述
+     * Example: "1.5::cat::" -> "highly detailed, cat"
+     */
+    public static String processGeminiPrompt(String prompt) {
+        if (prompt == null || prompt.isEmpty()) {
+            return prompt;
+        }
+
+        Matcher matcher = WEIGHTED_SEGMENT.matcher(prompt);
+
+        StringBuilder sb = new StringBuilder();
+        int lastEnd = 0;
+
+        while (matcher.find()) {
+            // Append text before the match
+            sb.append(prompt, lastEnd, matcher.start());
+
+            try {
+                double weight = Double.parseDouble(matcher.group(1));
+                String text = matcher.group(2).trim();
+                String descriptors = "";
+
+                if (weight >= 2.0) {
+                    descriptors = "extremely detailed, emphasized " + text;
+                } else if (weight >= 1.5) {
+                    descriptors = "highly detailed, " + text;
+                } else if (weight >= 1.2) {
+                    descriptors = "detailed, " + text;
+                } else if (weight >= 0.9) {
+                    descriptors = text; // Normal weight
+                } else if (weight >= 0.8) {
+                    descriptors = "subtle " + text;
+                } else {
+                    descriptors = "faint, slightly visible " + text;
+                }
+                sb.append(descriptors);
+
+            } catch (NumberFormatException e) {
+                // If weight parsing fails, just append original text
+                sb.append(matcher.group(0));
+            }
+
+            lastEnd = matcher.end();
+        }
+
+        // Append remaining text
+        sb.append(prompt.substring(lastEnd));
+
+        return sb.toString();
+    }
 }
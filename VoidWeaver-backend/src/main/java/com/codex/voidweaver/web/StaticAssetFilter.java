@@ -0,0 +1,149 @@
+package com.codex.voidweaver.web;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.NonNull;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the bundled frontend straight from {@link StaticAssetManifest}
+ *
+ * - hashed Vite assets: cached for a year as immutable
+ * - everything else (index.html, favicon, ...): no-cache, revalidated by ETag
+ * - unknown non-API paths fall back to index.html for client-side routing
+ * - brotli / gzip variants are chosen from Accept-Encoding, each with its own ETag
+ */
+@RequiredArgsConstructor
+public class StaticAssetFilter extends OncePerRequestFilter {
+
+    private static final String IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable()
+            .getHeaderValue();
+    private static final String REVALIDATE = CacheControl.noCache().cachePublic().getHeaderValue();
+
+    private final StaticAssetManifest manifest;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+        return manifest.isEmpty()
+                || !("GET".equals(method) || "HEAD".equals(method))
+                || path.startsWith("/api/") || path.equals("/api")
+                || path.startsWith("/actuator")
+                || path.equals("/error");
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+            @NonNull FilterChain chain) throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length() + 1);
+        StaticAssetManifest.Asset asset = path.isEmpty() ? manifest.getIndex() : manifest.get(path);
+        if (asset == null) {
+            // For SPA routes, return index.html
+            asset = manifest.getIndex();
+        }
+        if (asset == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        serve(asset, request, response);
+    }
+
+    private void serve(StaticAssetManifest.Asset asset, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        // Pick the representation first: each content-coding is its own variant with its own ETag
+        byte[] body = asset.getIdentity();
+        String encoding = null;
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (asset.getBrotli() != null && accepts(acceptEncoding, "br")) {
+            body = asset.getBrotli();
+            encoding = "br";
+        } else if (asset.getGzip() != null && accepts(acceptEncoding, "gzip")) {
+            body = asset.getGzip();
+            encoding = "gzip";
+        }
+
+        String eTag = eTag(asset, encoding);
+        response.setHeader(HttpHeaders.ETAG, eTag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, asset.isHashed() ? IMMUTABLE : REVALIDATE);
+        if (asset.hasEncodings()) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), eTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        if (encoding != null) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(asset.getMediaType().toString());
+        response.setContentLength(body.length);
+        if (!"HEAD".equals(request.getMethod())) {
+            response.getOutputStream().write(body);
+        }
+    }
+
+    /** "hash" for the identity body, "hash-br" / "hash-gz" for the compressed variants */
+    private static String eTag(StaticAssetManifest.Asset asset, String encoding) {
+        if ("br".equals(encoding)) {
+            return "\"" + asset.getETag() + "-br\"";
+        }
+        if ("gzip".equals(encoding)) {
+            return "\"" + asset.getETag() + "-gz\"";
+        }
+        return "\"" + asset.getETag() + "\"";
+    }
+
+    /** If-None-Match may list several tags, possibly weak (W/"...") after a proxy re-encoded the body */
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(eTag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Accept-Encoding contains the coding with a non-zero q-value */
+    private static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            if (!tokens[0].trim().equalsIgnoreCase(coding)) {
+                continue;
+            }
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
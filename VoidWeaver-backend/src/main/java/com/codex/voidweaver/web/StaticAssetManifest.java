@@ -0,0 +1,196 @@
+package com.codex.voidweaver.web;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-memory manifest of the bundled frontend (classpath:/static/)
+ *
+ * Built once at startup: every file is read into memory together with its
+ * precompressed .br / .gz siblings (produced by the Docker build), so serving
+ * a request never touches the classpath. Compressible files without a .gz
+ * sibling are gzipped here once.
+ */
+@Slf4j
+@Component
+public class StaticAssetManifest {
+
+    public static final String INDEX = "index.html";
+
+    /** Vite output: assets/{name}-{8 char content hash}.{ext} */
+    private static final Pattern HASHED = Pattern.compile("^assets/.+-[A-Za-z0-9_-]{8}\\.[A-Za-z0-9]+$");
+    private static final Set<String> COMPRESSIBLE = Set.of("html", "js", "mjs", "css", "svg", "json", "txt",
+            "map", "xml", "webmanifest");
+
+    private final Map<String, Asset> assets;
+    private final long totalBytes;
+
+    @Getter
+    public static final class Asset {
+        private final String path;
+        private final MediaType mediaType;
+        private final boolean hashed;
+        /** Hash of the identity bytes; the filter suffixes it per content-coding */
+        private final String eTag;
+        private final byte[] identity;
+        private final byte[] gzip;
+        private final byte[] brotli;
+
+        Asset(String path, MediaType mediaType, boolean hashed, String eTag, byte[] identity, byte[] gzip,
+                byte[] brotli) {
+            this.path = path;
+            this.mediaType = mediaType;
+            this.hashed = hashed;
+            this.eTag = eTag;
+            this.identity = identity;
+            this.gzip = gzip;
+            this.brotli = brotli;
+        }
+
+        public boolean hasEncodings() {
+            return gzip != null || brotli != null;
+        }
+    }
+
+    public StaticAssetManifest(@Value("${voidweaver.static.location:classpath:/static/}") String location)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        Map<String, Resource> files = scan(location);
+
+        Map<String, Asset> loaded = new HashMap<>();
+        long bytes = 0;
+        for (Map.Entry<String, Resource> file : files.entrySet()) {
+            String path = file.getKey();
+            if (path.endsWith(".gz") || path.endsWith(".br")) {
+                continue;
+            }
+            Asset asset = load(path, file.getValue(), files.get(path + ".gz"), files.get(path + ".br"));
+            loaded.put(path, asset);
+            bytes += asset.identity.length + length(asset.gzip) + length(asset.brotli);
+        }
+        this.assets = Collections.unmodifiableMap(loaded);
+        this.totalBytes = bytes;
+
+        if (assets.isEmpty()) {
+            log.info("No bundled frontend found at {}, static serving disabled", location);
+        } else {
+            log.info("Loaded {} static assets ({} KB incl. encodings) in {} ms", assets.size(), totalBytes / 1024,
+                    System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * @param path request path without the leading slash
+     */
+    public Asset get(String path) {
+        return assets.get(path);
+    }
+
+    public Asset getIndex() {
+        return assets.get(INDEX);
+    }
+
+    public boolean isEmpty() {
+        return assets.isEmpty();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private static Map<String, Resource> scan(String location) throws IOException {
+        String base = location.endsWith("/") ? location : location + "/";
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+        Resource root = resolver.getResource(base);
+        Map<String, Resource> files = new HashMap<>();
+        if (!root.exists()) {
+            return files;
+        }
+        String rootUrl = root.getURL().toString();
+        for (Resource resource : resolver.getResources(base + "**/*")) {
+            if (!resource.isReadable()) {
+                continue; // directories
+            }
+            String url = resource.getURL().toString();
+            if (url.startsWith(rootUrl)) {
+                files.put(url.substring(rootUrl.length()), resource);
+            }
+        }
+        return files;
+    }
+
+    private static Asset load(String path, Resource resource, Resource gzip, Resource brotli) throws IOException {
+        byte[] identity = read(resource);
+        byte[] gzipped = gzip != null ? read(gzip) : null;
+        if (gzipped == null && COMPRESSIBLE.contains(extension(path))) {
+            gzipped = gzip(identity);
+            if (gzipped.length >= identity.length) {
+                gzipped = null;
+            }
+        }
+        MediaType mediaType = MediaTypeFactory.getMediaType(path).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        if (COMPRESSIBLE.contains(extension(path)) && mediaType.getCharset() == null) {
+            // Vite emits UTF-8; say so rather than leave browsers guessing
+            mediaType = new MediaType(mediaType, StandardCharsets.UTF_8);
+        }
+        return new Asset(path, mediaType, HASHED.matcher(path).matches(), sha256Prefix(identity), identity, gzipped,
+                brotli != null ? read(brotli) : null);
+    }
+
+    private static byte[] read(Resource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return StreamUtils.copyToByteArray(in);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 3 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out) {
+            {
+                def.setLevel(9);
+            }
+        }) {
+            gz.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static String extension(String path) {
+        int dot = path.lastIndexOf('.');
+        return dot < 0 ? "" : path.substring(dot + 1).toLowerCase();
+    }
+
+    private static int length(byte[] data) {
+        return data != null ? data.length : 0;
+    }
+
+    private static String sha256Prefix(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+-- Generation history index (image bytes live in the content-addressed store on disk)
+CREATE TABLE IF NOT EXISTS generation_history (
+    id            BIGINT AUTO_INCREMENT PRIMARY KEY,
+    created_at    TIMESTAMP     NOT NULL,
+    engine        VARCHAR(32)   NOT NULL,
+    prompt        VARCHAR(1000000),
+    resolution    VARCHAR(32),
+    steps         INT,
+    scale         INT,
+    strength      DOUBLE,
+    deep_thinking BOOLEAN       NOT NULL,
+    img2img       BOOLEAN       NOT NULL,
+    image_hash    CHAR(64)      NOT NULL,
+    sketch_hash   CHAR(64),
+    image_size    INT           NOT NULL
+);
+
+-- Seeded generations: result cache key (canonical parameter hash), see ResultCache
+ALTER TABLE generation_history ADD COLUMN IF NOT EXISTS seed BIGINT;
+ALTER TABLE generation_history ADD COLUMN IF NOT EXISTS cache_key CHAR(64);
+CREATE INDEX IF NOT EXISTS idx_generation_history_cache_key ON generation_history (cache_key);
+
+-- Analyses keyed by perceptual hash (dHash), for reusing modules on near-duplicate uploads
+CREATE TABLE IF NOT EXISTS analysis_cache (
+    id            BIGINT AUTO_INCREMENT PRIMARY KEY,
+    created_at    TIMESTAMP     NOT NULL,
+    dhash         BIGINT        NOT NULL,
+    response      CLOB          NOT NULL
+);
+
+-- Analyses are only reused for the same prompt/model version and a similar colour layout
+ALTER TABLE analysis_cache ADD COLUMN IF NOT EXISTS color_signature BIGINT;
+ALTER TABLE analysis_cache ADD COLUMN IF NOT EXISTS version CHAR(16);
@@ -0,0 +1,170 @@
+package com.codex.voidweaver.benchmark;
+
+import com.codex.voidweaver.model.dto.AnalyzeResponse;
+import com.codex.voidweaver.model.dto.GenerateResponse;
+import com.codex.voidweaver.model.dto.ModuleDto;
+import com.codex.voidweaver.model.dto.TagDto;
+import com.codex.voidweaver.model.json.DtoSerializationModule;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response serialization: previous configuration (bean serialization, indent-output,
+ * base64 String built per response) against the production setup (Blackbird +
+ * DtoSerializationModule, image written from bytes, compact output).
+ *
+ * The "bytes" counter is reported as a rate (JSON bytes/s); run with -prof gc and
+ * read gc.alloc.rate.norm for allocation per response.
+ *
+ * mvn -q test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main JsonSerializationBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    private static final String[] MODULES = { "style", "subject", "pose", "costume", "background",
+            "composition", "atmosphere", "extra" };
+
+    private ObjectMapper legacyMapper;
+    private ObjectMapper productionMapper;
+
+    /** 832x1216 PNG renders are typically 1.5 - 2 MB */
+    private byte[] image;
+    private AnalyzeResponse analyzeResponse;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Output {
+        public long bytes;
+
+        private final CountingSink sink = new CountingSink();
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        legacyMapper = new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        productionMapper = new ObjectMapper()
+                .registerModule(new BlackbirdModule())
+                .registerModule(new DtoSerializationModule())
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+        image = new byte[1_800_000];
+        new Random(42).nextBytes(image);
+
+        Random random = new Random(7);
+        List<ModuleDto> modules = new ArrayList<>();
+        for (String name : MODULES) {
+            List<TagDto> tags = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                tags.add(TagDto.builder()
+                        .id(UUID.randomUUID().toString())
+                        .text("tag " + name + " " + random.nextInt(1000))
+                        .weight(0.5 + random.nextInt(11) / 10.0)
+                        .build());
+            }
+            modules.add(ModuleDto.builder().name(name).displayName(name.toUpperCase()).tags(tags).build());
+        }
+        analyzeResponse = AnalyzeResponse.builder()
+                .modules(modules)
+                .rawPrompt("masterpiece, best quality, 1girl, silver hair, red eyes, gothic dress, city at night")
+                .build();
+    }
+
+    @Benchmark
+    public long generateLegacy(Output output) throws IOException {
+        // The NovelAI path used to base64-encode into a String before Jackson copied it out again
+        GenerateResponse response = GenerateResponse.builder()
+                .imageData(Base64.getEncoder().encodeToString(image))
+                .build();
+        return write(legacyMapper, response, output);
+    }
+
+    @Benchmark
+    public long generateProduction(Output output) throws IOException {
+        GenerateResponse response = GenerateResponse.builder()
+                .imageBytes(image)
+                .build();
+        return write(productionMapper, response, output);
+    }
+
+    @Benchmark
+    public long analyzeLegacy(Output output) throws IOException {
+        return write(legacyMapper, analyzeResponse, output);
+    }
+
+    @Benchmark
+    public long analyzeProduction(Output output) throws IOException {
+        return write(productionMapper, analyzeResponse, output);
+    }
+
+    private static long write(ObjectMapper mapper, Object value, Output output) throws IOException {
+        output.sink.count = 0;
+        mapper.writeValue(output.sink, value);
+        output.bytes += output.sink.count;
+        return output.sink.count;
+    }
+
+    /** Discards the JSON but counts it, standing in for the servlet output stream */
+    private static final class CountingSink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void close() {
+            // ObjectMapper closes the target; keep the sink reusable
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(JsonSerializationBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
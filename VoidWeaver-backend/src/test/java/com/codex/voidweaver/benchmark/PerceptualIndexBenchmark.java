@@ -0,0 +1,104 @@
+package com.codex.voidweaver.benchmark;
+
+import com.codex.voidweaver.imaging.MultiIndexHashTable;
+import com.codex.voidweaver.imaging.PerceptualHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Near-duplicate lookup cost: MultiIndexHashTable queries at the default max distance
+ * over a large index (a hit a few bits away, and a miss), plus the dHash of a
+ * full-size render, which is computed once per analyze request.
+ *
+ * mvn -q test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main PerceptualIndexBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PerceptualIndexBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({ "500000" })
+    public int entries;
+
+    @Param({ "5" })
+    public int maxDistance;
+
+    private MultiIndexHashTable index;
+    private long[] nearQueries;
+    private long[] farQueries;
+    private BufferedImage render;
+    private int next;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        index = new MultiIndexHashTable(maxDistance);
+        long[] stored = new long[entries];
+        for (int i = 0; i < entries; i++) {
+            stored[i] = random.nextLong();
+            index.add(stored[i], i);
+        }
+
+        nearQueries = new long[QUERIES];
+        farQueries = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            long hash = stored[random.nextInt(entries)];
+            for (int flip = 0; flip < maxDistance - 1; flip++) {
+                hash ^= 1L << random.nextInt(64);
+            }
+            nearQueries[i] = hash;
+            farQueries[i] = random.nextLong();
+        }
+
+        render = new BufferedImage(832, 1216, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = render.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, new Color(40, 20, 90), 832, 1216, new Color(220, 120, 60)));
+        g.fillRect(0, 0, 832, 1216);
+        g.dispose();
+    }
+
+    @Benchmark
+    public long lookupHit() {
+        return index.findNearest(nearQueries[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public long lookupMiss() {
+        return index.findNearest(farQueries[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public long dHash() {
+        return PerceptualHash.dHash(render);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(PerceptualIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
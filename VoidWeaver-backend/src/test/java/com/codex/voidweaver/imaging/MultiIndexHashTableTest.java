@@ -0,0 +1,121 @@
+package com.codex.voidweaver.imaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MultiIndexHashTableTest {
+
+    /** First bit of each of the three ranges (22 + 21 + 21 bits) */
+    private static final int[] RANGE_STARTS = { 0, 22, 43 };
+    private static final int[] RANGE_WIDTHS = { 22, 21, 21 };
+
+    /** Flip k bits spread as evenly as possible over the ranges: the pigeonhole worst case */
+    private static long flipSpread(long hash, int k) {
+        int[] used = new int[3];
+        for (int i = 0; i < k; i++) {
+            int range = i % 3;
+            // Walk down from the top of each range so range boundaries are exercised too
+            int bit = RANGE_STARTS[range] + RANGE_WIDTHS[range] - 1 - used[range]++;
+            hash ^= 1L << bit;
+        }
+        return hash;
+    }
+
+    /** Reference answer: closest within maxDistance, newest on ties */
+    private static long bruteForce(long[] hashes, int count, long query, int maxDistance) {
+        long best = -1;
+        int bestDistance = maxDistance + 1;
+        for (int i = 0; i < count; i++) {
+            int distance = Long.bitCount(hashes[i] ^ query);
+            if (distance <= bestDistance && distance <= maxDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    void rejectsDistancesOutsideTheSupportedRange() {
+        assertThrows(IllegalArgumentException.class, () -> new MultiIndexHashTable(-1));
+        assertThrows(IllegalArgumentException.class, () -> new MultiIndexHashTable(12));
+    }
+
+    @Test
+    void emptyTableFindsNothing() {
+        assertEquals(-1, new MultiIndexHashTable(5).findNearest(42L));
+    }
+
+    @Test
+    void findsEntriesAtExactlyMaxDistanceForEveryK() {
+        long hash = 0x5DEECE66DL * 0x9E3779B97F4A7C15L;
+        for (int k = 0; k <= 11; k++) {
+            MultiIndexHashTable index = new MultiIndexHashTable(k);
+            index.add(hash, 7);
+
+            assertEquals(7, index.findNearest(flipSpread(hash, k)), "k = " + k + " spread over ranges");
+            // All flips in one range: found through the other two
+            long clustered = hash ^ ((1L << k) - 1);
+            assertEquals(7, index.findNearest(clustered), "k = " + k + " in one range");
+            assertEquals(-1, index.findNearest(flipSpread(hash, k + 1)), "k + 1 = " + (k + 1));
+        }
+    }
+
+    @Test
+    void closestEntryWinsAndTiesGoToTheNewest() {
+        MultiIndexHashTable index = new MultiIndexHashTable(5);
+        long query = 0xCAFEBABEL;
+        index.add(flipSpread(query, 4), 1);
+        index.add(flipSpread(query, 2), 2);
+        index.add(flipSpread(query, 5), 3);
+        assertEquals(2, index.findNearest(query));
+
+        index.add(query ^ (1L << 63) ^ (1L << 10), 4);
+        assertEquals(4, index.findNearest(query));
+    }
+
+    @Test
+    void tagFilterSkipsRejectedEntries() {
+        MultiIndexHashTable index = new MultiIndexHashTable(5);
+        long query = 0x0123456789ABCDEFL;
+        index.add(query, 100, 1);
+        index.add(flipSpread(query, 3), 200, 2);
+
+        assertEquals(1, index.findNearest(query));
+        assertEquals(2, index.findNearest(query, tag -> tag == 200));
+        assertEquals(-1, index.findNearest(query, tag -> tag == 300));
+        // Untagged adds carry tag 0
+        index.add(flipSpread(query, 1), 3);
+        assertEquals(3, index.findNearest(query, tag -> tag == 0));
+    }
+
+    @Test
+    void agreesWithBruteForceAcrossGrowth() {
+        Random random = new Random(17);
+        for (int maxDistance : new int[] { 0, 3, 5, 8, 11 }) {
+            MultiIndexHashTable index = new MultiIndexHashTable(maxDistance);
+            long[] hashes = new long[5000];
+            for (int i = 0; i < hashes.length; i++) {
+                // Some near-duplicates of earlier entries, so ties and close pairs occur
+                hashes[i] = i > 0 && random.nextInt(4) == 0
+                        ? flipSpread(hashes[random.nextInt(i)], random.nextInt(4))
+                        : random.nextLong();
+                index.add(hashes[i], i);
+
+                if (i % 97 == 0 || i == hashes.length - 1) {
+                    for (int q = 0; q < 20; q++) {
+                        long query = flipSpread(hashes[random.nextInt(i + 1)], random.nextInt(maxDistance + 2))
+                                ^ (random.nextInt(3) == 0 ? random.nextLong() : 0);
+                        assertEquals(bruteForce(hashes, i + 1, query, maxDistance), index.findNearest(query),
+                                "maxDistance " + maxDistance + " after " + (i + 1) + " entries");
+                    }
+                }
+            }
+            assertEquals(hashes.length, index.size());
+        }
+    }
+}
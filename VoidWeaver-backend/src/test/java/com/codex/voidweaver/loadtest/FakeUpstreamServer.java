@@ -0,0 +1,355 @@
+package com.codex.voidweaver.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Local stand-in for the Gemini and NovelAI APIs
+ *
+ * Serves realistic payloads (module JSON, base64 PNGs, NovelAI ZIP archives) with
+ * log-normally distributed latency and configurable 5xx / 429 rates, so the
+ * backend can be load-tested without spending real quota.
+ *
+ * Start it, then run the backend with
+ * --voidweaver.upstream.gemini-base-url=http://localhost:PORT
+ * --voidweaver.upstream.novelai-base-url=http://localhost:PORT
+ *
+ * Gemini context caching (cachedContents create / ttl update, and generateContent
+ * with cachedContent) is emulated in memory; cache-min-chars rejects instructions
+ * shorter than the real API's minimum cacheable size.
+ *
+ * Options (all --name=value): port, text-latency-ms, image-latency-ms,
+ * novelai-latency-ms, latency-sigma, error-rate, rate-limit-rate, threads, cache-min-chars
+ */
+public class FakeUpstreamServer {
+
+    private static final String[] MODULES = { "style", "subject", "pose", "costume", "background",
+            "composition", "atmosphere", "extra" };
+    private static final String[] WORDS = { "silver hair", "red eyes", "dynamic pose", "gothic dress",
+            "city at night", "close-up", "soft lighting", "watercolor", "cinematic", "rim light", "bokeh",
+            "floating petals", "long coat", "looking at viewer", "wide shot", "pastel palette" };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, byte[]> pngCache = new ConcurrentHashMap<>();
+    /** cachedContents/{id} -> system instruction text */
+    private final Map<String, String> cachedContents = new ConcurrentHashMap<>();
+
+    private final int port;
+    private final long textLatencyMs;
+    private final long imageLatencyMs;
+    private final long novelaiLatencyMs;
+    private final double latencySigma;
+    private final double errorRate;
+    private final double rateLimitRate;
+    private final int threads;
+    private final int cacheMinChars;
+
+    private HttpServer server;
+
+    public FakeUpstreamServer(Map<String, String> options) {
+        this.port = Integer.parseInt(options.getOrDefault("port", "9999"));
+        this.textLatencyMs = Long.parseLong(options.getOrDefault("text-latency-ms", "1500"));
+        this.imageLatencyMs = Long.parseLong(options.getOrDefault("image-latency-ms", "8000"));
+        this.novelaiLatencyMs = Long.parseLong(options.getOrDefault("novelai-latency-ms", "6000"));
+        this.latencySigma = Double.parseDouble(options.getOrDefault("latency-sigma", "0.4"));
+        this.errorRate = Double.parseDouble(options.getOrDefault("error-rate", "0.0"));
+        this.rateLimitRate = Double.parseDouble(options.getOrDefault("rate-limit-rate", "0.0"));
+        this.threads = Integer.parseInt(options.getOrDefault("threads", "256"));
+        this.cacheMinChars = Integer.parseInt(options.getOrDefault("cache-min-chars", "0"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        FakeUpstreamServer server = new FakeUpstreamServer(parseOptions(args));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(Executors.newFixedThreadPool(threads));
+        server.createContext("/v1beta/models/", this::handleGemini);
+        server.createContext("/v1beta/cachedContents", this::handleCachedContents);
+        server.createContext("/ai/generate-image", this::handleNovelAI);
+        server.start();
+        System.out.printf("Fake upstream listening on http://localhost:%d (text %d ms, image %d ms, novelai %d ms, "
+                + "sigma %.2f, errors %.1f%%, 429 %.1f%%)%n", port, textLatencyMs, imageLatencyMs, novelaiLatencyMs,
+                latencySigma, errorRate * 100, rateLimitRate * 100);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    public int getPort() {
+        return server != null ? server.getAddress().getPort() : port;
+    }
+
+    // ---------------------------------------------------------------- Gemini
+
+    private void handleGemini(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String model = path.substring(path.lastIndexOf('/') + 1, path.indexOf(':'));
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            boolean image = model.contains("image");
+
+            String instruction = "";
+            if (request.has("cachedContent")) {
+                instruction = cachedContents.get(request.path("cachedContent").asText());
+                if (instruction == null) {
+                    sendJson(exchange, 403, Map.of("error", Map.of("code", 403,
+                            "message", "CachedContent not found (or permission denied)",
+                            "status", "PERMISSION_DENIED")));
+                    return;
+                }
+            }
+
+            sleep(image ? imageLatencyMs : textLatencyMs);
+            if (injectFailure(exchange)) {
+                return;
+            }
+
+            if (image) {
+                String base64 = Base64.getEncoder().encodeToString(png(1024, 1024));
+                sendJson(exchange, 200, candidate(Map.of("inlineData", Map.of("mimeType", "image/png", "data", base64))));
+                return;
+            }
+
+            String text = textFor(instruction + request, request.findValues("inlineData").size());
+            if (path.endsWith(":streamGenerateContent")) {
+                streamText(exchange, text);
+            } else {
+                sendJson(exchange, 200, candidate(Map.of("text", text)));
+            }
+        }
+    }
+
+    private String textFor(String prompt, int images) throws IOException {
+        boolean json = prompt.contains("\"responseMimeType\":\"application/json\"");
+        if (!json) {
+            return prompt.contains("Danbooru") ? "masterpiece, best quality, absurdres, detailed background, soft lighting"
+                    : "Fix the distorted hand, Correct the limb proportions, Improve lighting balance";
+        }
+        if (prompt.contains("\\\"score\\\"")) {
+            return objectMapper.writeValueAsString(Map.of("score", 3 + ThreadLocalRandom.current().nextInt(7),
+                    "fixes", List.of("Fix the distorted hand", "Correct the limb proportions", "Improve lighting balance")));
+        }
+        if (prompt.contains("\\\"operations\\\"")) {
+            return objectMapper.writeValueAsString(Map.of("operations", List.of(
+                    Map.of("op", "add", "module", "costume", "text", "red scarf", "weight", 1.0))));
+        }
+        if (prompt.contains("\\\"results\\\"")) {
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (int i = 1; i <= images; i++) {
+                Map<String, Object> result = new LinkedHashMap<>(analysis());
+                result.put("image", i);
+                results.add(result);
+            }
+            return objectMapper.writeValueAsString(Map.of("results", results));
+        }
+        return objectMapper.writeValueAsString(analysis());
+    }
+
+    private Map<String, Object> analysis() {
+        List<Map<String, Object>> modules = new ArrayList<>();
+        for (String name : MODULES) {
+            List<Map<String, Object>> tags = new ArrayList<>();
+            int count = 3 + ThreadLocalRandom.current().nextInt(4);
+            for (int i = 0; i < count; i++) {
+                tags.add(Map.of("id", UUID.randomUUID().toString(),
+                        "text", WORDS[ThreadLocalRandom.current().nextInt(WORDS.length)],
+                        "weight", 1.0));
+            }
+            Map<String, Object> module = new LinkedHashMap<>();
+            module.put("name", name);
+            module.put("displayName", Character.toUpperCase(name.charAt(0)) + name.substring(1));
+            module.put("locked", false);
+            module.put("tags", tags);
+            modules.add(module);
+        }
+        return Map.of("modules", modules, "rawPrompt", String.join(", ", WORDS));
+    }
+
+    /** streamGenerateContent?alt=sse: the text split into small chunks, one SSE data line each */
+    private void streamText(HttpExchange exchange, String text) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        int chunkSize = 64;
+        for (int i = 0; i < text.length(); i += chunkSize) {
+            String chunk = text.substring(i, Math.min(text.length(), i + chunkSize));
+            String event = "data: " + objectMapper.writeValueAsString(candidate(Map.of("text", chunk))) + "\r\n\r\n";
+            out.write(event.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            sleep(Math.max(1, textLatencyMs / 50));
+        }
+    }
+
+    private Map<String, Object> candidate(Map<String, Object> part) {
+        return Map.of("candidates", List.of(Map.of("content", Map.of("role", "model", "parts", List.of(part)))));
+    }
+
+    /** POST cachedContents creates; PATCH cachedContents/{id} extends the TTL */
+    private void handleCachedContents(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            String ttl = request.path("ttl").asText("3600s");
+            long ttlSeconds = Long.parseLong(ttl.substring(0, ttl.length() - 1));
+            String expireTime = Instant.now().plusSeconds(ttlSeconds).toString();
+
+            if ("PATCH".equals(exchange.getRequestMethod())) {
+                String name = path.substring("/v1beta/".length());
+                if (!cachedContents.containsKey(name)) {
+                    sendJson(exchange, 404, Map.of("error", Map.of("code", 404, "message", "Not found",
+                            "status", "NOT_FOUND")));
+                    return;
+                }
+                sendJson(exchange, 200, Map.of("name", name, "expireTime", expireTime));
+                return;
+            }
+
+            String instruction = request.path("systemInstruction").toString();
+            if (instruction.length() < cacheMinChars) {
+                sendJson(exchange, 400, Map.of("error", Map.of("code", 400,
+                        "message", "Cached content is too small", "status", "INVALID_ARGUMENT")));
+                return;
+            }
+            String name = "cachedContents/" + UUID.randomUUID().toString().replace("-", "");
+            cachedContents.put(name, instruction);
+            sendJson(exchange, 200, Map.of("name", name, "model", request.path("model").asText(),
+                    "expireTime", expireTime));
+        }
+    }
+
+    // ---------------------------------------------------------------- NovelAI
+
+    private void handleNovelAI(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonNode parameters = objectMapper.readTree(exchange.getRequestBody()).path("parameters");
+            int width = parameters.path("width").asInt(832);
+            int height = parameters.path("height").asInt(1216);
+
+            sleep(novelaiLatencyMs);
+            if (injectFailure(exchange)) {
+                return;
+            }
+
+            ByteArrayOutputStream zip = new ByteArrayOutputStream();
+            try (ZipOutputStream zos = new ZipOutputStream(zip)) {
+                zos.putNextEntry(new ZipEntry("image_0.png"));
+                zos.write(png(width, height));
+                zos.closeEntry();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/x-zip-compressed");
+            send(exchange, 200, zip.toByteArray());
+        }
+    }
+
+    // ---------------------------------------------------------------- helpers
+
+    private boolean injectFailure(HttpExchange exchange) throws IOException {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < rateLimitRate) {
+            sendJson(exchange, 429, Map.of("error", Map.of("code", 429, "message", "Resource has been exhausted",
+                    "status", "RESOURCE_EXHAUSTED")));
+            return true;
+        }
+        if (roll < rateLimitRate + errorRate) {
+            sendJson(exchange, 500, Map.of("error", Map.of("code", 500, "message", "Internal error",
+                    "status", "INTERNAL")));
+            return true;
+        }
+        return false;
+    }
+
+    /** Log-normal latency around the given median */
+    private void sleep(long medianMs) {
+        double factor = Math.exp(latencySigma * ThreadLocalRandom.current().nextGaussian());
+        try {
+            Thread.sleep(Math.max(0, Math.round(medianMs * factor)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Noisy gradient PNG, so payload sizes resemble real renders; cached per size */
+    private byte[] png(int width, int height) {
+        return pngCache.computeIfAbsent(width + "x" + height, key -> {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setPaint(new GradientPaint(0, 0, new Color(40, 20, 90), width, height, new Color(220, 120, 60)));
+            g.fillRect(0, 0, width, height);
+            g.dispose();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int rgb = image.getRGB(x, y);
+                    int noise = random.nextInt(24) - 12;
+                    int r = clamp(((rgb >> 16) & 0xFF) + noise);
+                    int gr = clamp(((rgb >> 8) & 0xFF) + noise);
+                    int b = clamp((rgb & 0xFF) + noise);
+                    image.setRGB(x, y, (r << 16) | (gr << 8) | b);
+                }
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(image, "png", out);
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        send(exchange, status, objectMapper.writeValueAsBytes(body));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return options;
+    }
+}
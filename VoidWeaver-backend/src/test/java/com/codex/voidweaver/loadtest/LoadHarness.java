@@ -0,0 +1,233 @@
+package com.codex.voidweaver.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load generator for the backend API
+ *
+ * Runs a fixed number of workers, each sending requests back to back to one
+ * endpoint for the given duration, then prints throughput and latency
+ * percentiles. For /generate/stream the time to the first SSE event is reported too.
+ *
+ * Options (all --name=value): target (default http://localhost:8080),
+ * endpoint (analyze | generate | generate-stream), concurrency, duration-s,
+ * warmup-s, engine (novelai | google-imagen), deep-thinking (true | false),
+ * api-key (empty to exercise the server-side key pool), distinct-images (true | false)
+ *
+ * Analyze requests send a freshly drawn image each time by default, so every one is
+ * a miss in the near-duplicate analysis cache and measures the Gemini path;
+ * distinct-images=false repeats one image to measure cache hits instead.
+ */
+public class LoadHarness {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final String target;
+    private final String endpoint;
+    private final int concurrency;
+    private final long durationMs;
+    private final long warmupMs;
+    private final String engine;
+    private final boolean deepThinking;
+    private final String apiKey;
+    private final boolean distinctImages;
+
+    private final List<Sample> samples = new ArrayList<>();
+
+    private record Sample(long latencyMs, long firstEventMs, int status) {
+    }
+
+    public LoadHarness(Map<String, String> options) {
+        this.target = options.getOrDefault("target", "http://localhost:8080");
+        this.endpoint = options.getOrDefault("endpoint", "analyze");
+        this.concurrency = Integer.parseInt(options.getOrDefault("concurrency", "8"));
+        this.durationMs = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("duration-s", "60")));
+        this.warmupMs = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("warmup-s", "5")));
+        this.engine = options.getOrDefault("engine", "google-imagen");
+        this.deepThinking = Boolean.parseBoolean(options.getOrDefault("deep-thinking", "true"));
+        this.apiKey = options.getOrDefault("api-key", "load-test-key");
+        this.distinctImages = Boolean.parseBoolean(options.getOrDefault("distinct-images", "true"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadHarness(FakeUpstreamServer.parseOptions(args)).run();
+    }
+
+    public void run() throws Exception {
+        byte[] body = objectMapper.writeValueAsBytes(requestBody());
+        boolean freshBodies = distinctImages && "analyze".equals(endpoint);
+        String path = switch (endpoint) {
+            case "analyze" -> "/api/analyze";
+            case "generate" -> "/api/generate";
+            case "generate-stream" -> "/api/generate/stream";
+            default -> throw new IllegalArgumentException("Unknown endpoint: " + endpoint);
+        };
+        URI uri = URI.create(target + path);
+
+        System.out.printf("Driving %s with %d workers for %d s (+%d s warm-up), payload %d KB%n",
+                uri, concurrency, durationMs / 1000, warmupMs / 1000, body.length / 1024);
+
+        long start = System.currentTimeMillis();
+        long measureFrom = start + warmupMs;
+        long end = measureFrom + durationMs;
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.submit(() -> {
+                while (System.currentTimeMillis() < end) {
+                    byte[] requestBody = freshBodies ? freshBody() : body;
+                    long sentAt = System.currentTimeMillis();
+                    Sample sample = send(uri, requestBody);
+                    if (sentAt >= measureFrom && System.currentTimeMillis() <= end) {
+                        synchronized (samples) {
+                            samples.add(sample);
+                        }
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(durationMs + warmupMs + TimeUnit.MINUTES.toMillis(10), TimeUnit.MILLISECONDS);
+
+        report();
+    }
+
+    private Sample send(URI uri, byte[] body) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMinutes(6))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        long start = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            long firstEvent = -1;
+            try (InputStream in = response.body()) {
+                byte[] buffer = new byte[16 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (firstEvent < 0 && read > 0) {
+                        firstEvent = elapsedMs(start);
+                    }
+                }
+            }
+            return new Sample(elapsedMs(start), firstEvent, response.statusCode());
+        } catch (IOException | InterruptedException e) {
+            return new Sample(elapsedMs(start), -1, -1);
+        }
+    }
+
+    private void report() {
+        List<Sample> snapshot;
+        synchronized (samples) {
+            snapshot = new ArrayList<>(samples);
+        }
+        if (snapshot.isEmpty()) {
+            System.out.println("No requests completed inside the measurement window");
+            return;
+        }
+
+        Map<Integer, Integer> statuses = new TreeMap<>();
+        snapshot.forEach(s -> statuses.merge(s.status(), 1, Integer::sum));
+        long[] latencies = snapshot.stream().filter(s -> s.status() == 200).mapToLong(Sample::latencyMs).toArray();
+        long[] firstEvents = snapshot.stream().filter(s -> s.status() == 200 && s.firstEventMs() >= 0)
+                .mapToLong(Sample::firstEventMs).toArray();
+
+        System.out.println();
+        System.out.printf("Requests:    %d (%s)%n", snapshot.size(), statuses);
+        System.out.printf("Throughput:  %.2f req/s (%.2f ok/s)%n",
+                snapshot.size() * 1000.0 / durationMs, latencies.length * 1000.0 / durationMs);
+        printPercentiles("Latency", latencies);
+        if ("generate-stream".equals(endpoint)) {
+            printPercentiles("First byte", firstEvents);
+        }
+    }
+
+    private static void printPercentiles(String label, long[] values) {
+        if (values.length == 0) {
+            System.out.printf("%-12s no successful requests%n", label + ":");
+            return;
+        }
+        Arrays.sort(values);
+        System.out.printf("%-12s p50 %d ms, p90 %d ms, p99 %d ms, max %d ms%n", label + ":",
+                percentile(values, 0.50), percentile(values, 0.90), percentile(values, 0.99),
+                values[values.length - 1]);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private byte[] freshBody() {
+        try {
+            return objectMapper.writeValueAsBytes(requestBody());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Object requestBody() throws IOException {
+        return switch (endpoint) {
+            case "analyze" -> Map.of("imageData", Base64.getEncoder().encodeToString(samplePng()),
+                    "geminiApiKey", apiKey);
+            default -> Map.of("prompt", "1girl, silver hair, 1.2::red eyes::, gothic dress, city at night",
+                    "engine", engine,
+                    "novelaiApiKey", apiKey,
+                    "googleCredentials", apiKey,
+                    "resolution", "832x1216",
+                    "steps", 28,
+                    "scale", 6,
+                    "deepThinking", deepThinking);
+        };
+    }
+
+    /** Random 8x8 block layout plus noise: each call is far from earlier ones in dHash */
+    private static byte[] samplePng() throws IOException {
+        BufferedImage image = new BufferedImage(768, 768, BufferedImage.TYPE_INT_RGB);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] blocks = new int[64];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = random.nextInt(0x1000000);
+        }
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int block = blocks[(y / 96) * 8 + x / 96];
+                image.setRGB(x, y, block ^ random.nextInt(64));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,154 @@
+package com.codex.voidweaver.utils;
+
+import com.codex.voidweaver.model.dto.ModuleDto;
+import com.codex.voidweaver.model.dto.TagDto;
+import com.codex.voidweaver.model.dto.TagOperationDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModulePatcherTest {
+
+    private static TagDto tag(String id, String text, double weight) {
+        return TagDto.builder().id(id).text(text).weight(weight).hidden(false).build();
+    }
+
+    private static ModuleDto module(String name, boolean locked, TagDto... tags) {
+        return ModuleDto.builder()
+                .name(name)
+                .displayName(name.toUpperCase())
+                .locked(locked)
+                .tags(new ArrayList<>(List.of(tags)))
+                .build();
+    }
+
+    private static List<ModuleDto> modules() {
+        return List.of(
+                module("subject", false, tag("s1", "1girl", 1.0), tag("s2", "silver hair", 1.2)),
+                module("costume", true, tag("c1", "gothic dress", 1.0)),
+                module("background", false, tag("b1", "city at night", 1.0)));
+    }
+
+    private static List<String> texts(ModuleDto module) {
+        return module.getTags().stream().map(TagDto::getText).toList();
+    }
+
+    @Test
+    void addAppendsTagWithDefaults() {
+        List<ModuleDto> result = ModulePatcher.applyPatch(modules(), List.of(
+                TagOperationDto.builder().op("add").module("subject").text("  red eyes ").build()));
+
+        ModuleDto subject = result.get(0);
+        assertEquals(List.of("1girl", "silver hair", "red eyes"), texts(subject));
+        TagDto added = subject.getTags().get(2);
+        assertNotNull(added.getId());
+        assertEquals(1.0, added.getWeight());
+        assertFalse(added.getHidden());
+    }
+
+    @Test
+    void removeAndReweightFindTagsById() {
+        List<ModuleDto> result = ModulePatcher.applyPatch(modules(), List.of(
+                TagOperationDto.builder().op("remove").tagId("s1").build(),
+                TagOperationDto.builder().op("reweight").tagId("b1").weight(1.4).build()));
+
+        assertEquals(List.of("silver hair"), texts(result.get(0)));
+        assertEquals(1.4, result.get(2).getTags().get(0).getWeight());
+    }
+
+    @Test
+    void operationsOnLockedModulesAreIgnored() {
+        List<ModuleDto> result = ModulePatcher.applyPatch(modules(), List.of(
+                TagOperationDto.builder().op("add").module("costume").text("hat").build(),
+                TagOperationDto.builder().op("remove").tagId("c1").build(),
+                TagOperationDto.builder().op("reweight").tagId("c1").weight(0.5).build()));
+
+        ModuleDto costume = result.get(1);
+        assertEquals(List.of("gothic dress"), texts(costume));
+        assertEquals(1.0, costume.getTags().get(0).getWeight());
+    }
+
+    @Test
+    void operationsOnMissingModulesOrTagsAreIgnored() {
+        List<ModuleDto> original = modules();
+        List<ModuleDto> result = ModulePatcher.applyPatch(original, List.of(
+                TagOperationDto.builder().op("add").module("pose").text("sitting").build(),
+                TagOperationDto.builder().op("add").module("subject").text("   ").build(),
+                TagOperationDto.builder().op("remove").tagId("missing").build(),
+                TagOperationDto.builder().op("reweight").tagId("s1").build(),
+                TagOperationDto.builder().op("rename").tagId("s1").text("x").build(),
+                TagOperationDto.builder().build()));
+
+        assertEquals(3, result.size());
+        for (int i = 0; i < original.size(); i++) {
+            assertEquals(texts(original.get(i)), texts(result.get(i)));
+        }
+        assertEquals(1.0, result.get(0).getTags().get(0).getWeight());
+    }
+
+    @Test
+    void tagAddedInPatchCanBeRemovedOnlyByItsNewId() {
+        List<ModuleDto> result = ModulePatcher.applyPatch(modules(), List.of(
+                TagOperationDto.builder().op("ADD").module("background").text("rain").build()));
+        String newId = result.get(2).getTags().get(1).getId();
+
+        List<ModuleDto> removed = ModulePatcher.applyPatch(result, List.of(
+                TagOperationDto.builder().op("remove").tagId(newId).build()));
+        assertEquals(List.of("city at night"), texts(removed.get(2)));
+    }
+
+    @Test
+    void originalListIsNotModified() {
+        List<ModuleDto> original = modules();
+        List<ModuleDto> result = ModulePatcher.applyPatch(original, List.of(
+                TagOperationDto.builder().op("remove").tagId("s2").build(),
+                TagOperationDto.builder().op("reweight").tagId("s1").weight(0.7).build()));
+
+        assertEquals(List.of("1girl", "silver hair"), texts(original.get(0)));
+        assertEquals(1.0, original.get(0).getTags().get(0).getWeight());
+        assertNotSame(original.get(0), result.get(0));
+    }
+
+    @Test
+    void nullOperationsAndNullTagsGiveACopy() {
+        ModuleDto empty = ModuleDto.builder().name("pose").locked(false).build();
+        List<ModuleDto> result = ModulePatcher.applyPatch(List.of(empty), null);
+
+        assertEquals(1, result.size());
+        assertTrue(result.get(0).getTags().isEmpty());
+    }
+
+    @Test
+    void mergeRefinedReplacesUnlockedModulesByName() {
+        List<ModuleDto> refined = List.of(
+                module("background", true, tag("n1", "forest", 1.0)),
+                module("costume", false, tag("n2", "kimono", 1.0)),
+                module("unknown", false, tag("n3", "ignored", 1.0)));
+
+        List<ModuleDto> result = ModulePatcher.mergeRefined(modules(), refined);
+
+        assertEquals(List.of("subject", "costume", "background"),
+                result.stream().map(ModuleDto::getName).toList());
+        assertEquals(List.of("1girl", "silver hair"), texts(result.get(0)));
+        assertEquals(List.of("gothic dress"), texts(result.get(1)));
+        assertEquals(List.of("forest"), texts(result.get(2)));
+        // Identity comes from the submitted module, not from Gemini
+        assertEquals("BACKGROUND", result.get(2).getDisplayName());
+        assertFalse(result.get(2).getLocked());
+    }
+
+    @Test
+    void mergeRefinedWithNothingRefinedReturnsTheSubmittedModules() {
+        List<ModuleDto> result = ModulePatcher.mergeRefined(modules(), null);
+
+        assertEquals(3, result.size());
+        assertEquals(List.of("city at night"), texts(result.get(2)));
+    }
+}
@@ -0,0 +1,93 @@
+package com.codex.voidweaver.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModuleStreamParserTest {
+
+    private static final String SUBJECT = "{\"name\":\"subject\",\"tags\":[{\"id\":\"1\",\"text\":\"1girl\"},"
+            + "{\"id\":\"2\",\"text\":\"silver hair\"}]}";
+    private static final String STYLE = "{\"name\":\"style\",\"tags\":[{\"id\":\"3\",\"text\":\"anime\"}]}";
+    private static final String RESPONSE = "{\"modules\":[" + SUBJECT + ", " + STYLE + "]}";
+
+    private static List<String> feedInChunks(ModuleStreamParser parser, String text, int chunkSize) {
+        List<String> modules = new ArrayList<>();
+        for (int i = 0; i < text.length(); i += chunkSize) {
+            modules.addAll(parser.feed(text.substring(i, Math.min(text.length(), i + chunkSize))));
+        }
+        return modules;
+    }
+
+    @Test
+    void wholeResponseInOneFragment() {
+        ModuleStreamParser parser = new ModuleStreamParser();
+
+        assertEquals(List.of(SUBJECT, STYLE), parser.feed(RESPONSE));
+        assertEquals(RESPONSE, parser.getText());
+    }
+
+    @Test
+    void anySplitPointGivesTheSameModules() {
+        for (int chunkSize = 1; chunkSize <= RESPONSE.length(); chunkSize++) {
+            ModuleStreamParser parser = new ModuleStreamParser();
+            assertEquals(List.of(SUBJECT, STYLE), feedInChunks(parser, RESPONSE, chunkSize),
+                    "chunk size " + chunkSize);
+            assertEquals(RESPONSE, parser.getText());
+        }
+    }
+
+    @Test
+    void moduleIsReturnedAsSoonAsItCloses() {
+        ModuleStreamParser parser = new ModuleStreamParser();
+        int subjectEnd = RESPONSE.indexOf(SUBJECT) + SUBJECT.length();
+
+        assertTrue(parser.feed(RESPONSE.substring(0, subjectEnd - 1)).isEmpty());
+        assertEquals(List.of(SUBJECT), parser.feed(RESPONSE.substring(subjectEnd - 1, subjectEnd)));
+        assertEquals(List.of(STYLE), parser.feed(RESPONSE.substring(subjectEnd)));
+    }
+
+    @Test
+    void bracesAndEscapedQuotesInsideStringsAreText() {
+        String tricky = "{\"name\":\"subject\",\"tags\":[{\"id\":\"1\",\"text\":\"sign saying \\\"}]{\\\" \"},"
+                + "{\"id\":\"2\",\"text\":\"back\\\\slash\\\\\"}]}";
+        String response = "{\"modules\":[" + tricky + "," + STYLE + "]}";
+
+        for (int chunkSize = 1; chunkSize <= 7; chunkSize++) {
+            assertEquals(List.of(tricky, STYLE), feedInChunks(new ModuleStreamParser(), response, chunkSize),
+                    "chunk size " + chunkSize);
+        }
+    }
+
+    @Test
+    void escapeSplitAcrossFragments() {
+        ModuleStreamParser parser = new ModuleStreamParser();
+        String module = "{\"name\":\"a\\\"}\"}";
+
+        assertTrue(parser.feed("{\"modules\":[{\"name\":\"a\\").isEmpty());
+        assertTrue(parser.feed("\"}").isEmpty());
+        assertEquals(List.of(module), parser.feed("\"}]}"));
+    }
+
+    @Test
+    void nullAndEmptyFragmentsAreIgnored() {
+        ModuleStreamParser parser = new ModuleStreamParser();
+
+        assertTrue(parser.feed(null).isEmpty());
+        assertTrue(parser.feed("").isEmpty());
+        assertEquals(List.of(SUBJECT, STYLE), parser.feed(RESPONSE));
+    }
+
+    @Test
+    void unfinishedModuleIsNotReturned() {
+        ModuleStreamParser parser = new ModuleStreamParser();
+        String truncated = RESPONSE.substring(0, RESPONSE.indexOf(STYLE) + STYLE.length() - 2);
+
+        assertEquals(List.of(SUBJECT), parser.feed(truncated));
+        assertEquals(truncated, parser.getText());
+    }
+}
@@ -0,0 +1,32 @@
+package com.codex.voidweaver.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PromptFormatterTest {
+
+    @Test
+    void processGeminiPromptRewritesEachWeightBand() {
+        assertEquals("extremely detailed, emphasized glow", PromptFormatter.processGeminiPrompt("2::glow::"));
+        assertEquals("highly detailed, cat", PromptFormatter.processGeminiPrompt("1.5:: cat ::"));
+        assertEquals("detailed, eyes", PromptFormatter.processGeminiPrompt("1.2::eyes::"));
+        assertEquals("hair", PromptFormatter.processGeminiPrompt("1.0::hair::"));
+        assertEquals("subtle fog", PromptFormatter.processGeminiPrompt("0.85::fog::"));
+        assertEquals("faint, slightly visible crowd", PromptFormatter.processGeminiPrompt("0.5::crowd::"));
+    }
+
+    @Test
+    void processGeminiPromptKeepsSurroundingText() {
+        assertEquals("1girl, highly detailed, oil painting. Avoid: CGI",
+                PromptFormatter.processGeminiPrompt("1girl, 1.5::oil painting::. Avoid: CGI"));
+        assertEquals("no weights here", PromptFormatter.processGeminiPrompt("no weights here"));
+    }
+
+    @Test
+    void processGeminiPromptPassesEmptyInputThrough() {
+        assertNull(PromptFormatter.processGeminiPrompt(null));
+        assertEquals("", PromptFormatter.processGeminiPrompt(""));
+    }
+}